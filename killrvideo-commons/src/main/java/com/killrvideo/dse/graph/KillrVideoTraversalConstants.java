@@ -27,4 +27,7 @@ public interface KillrVideoTraversalConstants {
    String KEY_TAGGED_DATE   = "tagged_date";
    String KEY_DESCRIPTION   = "description";
    String KEY_PREVIEW_IMAGE_LOCATION = "preview_image_location";
+
+   // Key of DSE edge ids
+   String EDGE_LOCAL_ID     = "local_id";
 }
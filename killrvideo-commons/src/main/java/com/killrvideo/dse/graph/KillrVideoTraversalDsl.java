@@ -2,6 +2,7 @@ package com.killrvideo.dse.graph;
 
 import static org.apache.tinkerpop.gremlin.process.traversal.Operator.assign;
 import static org.apache.tinkerpop.gremlin.process.traversal.Order.decr;
+import static org.apache.tinkerpop.gremlin.process.traversal.P.eq;
 import static org.apache.tinkerpop.gremlin.process.traversal.P.gt;
 import static org.apache.tinkerpop.gremlin.process.traversal.P.gte;
 import static org.apache.tinkerpop.gremlin.process.traversal.P.lt;
@@ -84,8 +85,9 @@ public interface KillrVideoTraversalDsl<S, E> extends GraphTraversal.Admin<S, E>
     }
 
     /**
-     * Creates a "rated" edge with "rating" property from a "user" to a "video"
-     * ASSUMES incoming traversal from User vertex
+     * Creates a "rated" edge with "rating" property from a "user" to a "video", or updates the rating if the user
+     * already rated the video (events may be delivered more than once, users may rate again).
+     * ASSUMES incoming traversal from Video vertex
      *
      * @param userId
      * @param rating
@@ -100,16 +102,36 @@ public interface KillrVideoTraversalDsl<S, E> extends GraphTraversal.Admin<S, E>
          * As mentioned in the javadocs this step assumes an incoming "video" vertex. it is immediately labelled as
          * "^video". the addition of the caret prefix has no meaning except to provide for a unique labelling space
          * within the DSL itself.
-         * Also note there is no check to see if the rating already exists for the video, user, and rating passed in.
-         * This is because ratings have multiple cardinality and we can have as many ratings from a user for a video
-         * as we want, no check needed.
+         * The edge is looked up from the user, who has far fewer "rated" edges than a popular video. Edges have
+         * multiple cardinality, without this check every replayed event adds an edge and inflates the sums of
+         * recommendByUserRating().
          */
-        return ((KillrVideoTraversal) as("^video")).coalesce(__
-                .user(userId)
-                .addE(EDGE_RATED)
-                .property(KEY_RATING, rating)
-                .to("^video")
-                .inV());
+        return ((KillrVideoTraversal) as("^video")).coalesce(
+                __.user(userId)
+                  .outE(EDGE_RATED).filter(__.inV().where(eq("^video")))
+                  .property(KEY_RATING, rating)
+                  .inV(),
+                __.user(userId)
+                  .addE(EDGE_RATED)
+                  .property(KEY_RATING, rating)
+                  .to("^video")
+                  .inV());
+    }
+
+    /**
+     * Drops duplicate "rated" edges to a "video" (written before ratings were upserted), the edge with the highest
+     * 'local_id' is kept per user: concurrent compactions of the same video keep the same edge and never drop all of
+     * them. DSE edge ids are maps, not comparable, their 'local_id' (uuid) is unique among the edges of a vertex.
+     * Emits the ids of the users who had duplicates, the rating of the edge kept is arbitrary.
+     * ASSUMES incoming traversal from Video vertex
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public default GraphTraversal<S, Object> compactRatings() {
+        return (GraphTraversal) inE(EDGE_RATED)
+                .group().by(__.outV().values(KEY_USER_ID)).unfold()
+                .filter(__.select(values).count(Scope.local).is(gt(1)))
+                .sideEffect(__.select(values).order(Scope.local).by(__.id().select(EDGE_LOCAL_ID), decr).range(Scope.local, 1, -1).unfold().drop())
+                .select(keys);
     }
 
     /**
@@ -121,6 +143,25 @@ public interface KillrVideoTraversalDsl<S, E> extends GraphTraversal.Admin<S, E>
         return rated();
     }
 
+    /**
+     * Users who also rated highly the videos this user rated highly, the neighbourhood used by
+     * {@link #recommendByUserRating(int, int, int, int)}: their recommendations change when this user rates a video.
+     * ASSUMES incoming traversal from User vertex
+     *
+     * @param minRating the minimum rating to allow for
+     * @param limit the maximum number of users to return
+     */
+    public default GraphTraversal<S, Vertex> similarUsers(int minRating, int limit) {
+        Assert.isTrue(minRating > 0, "minRating must be greater than zero");
+        Assert.isTrue(limit > 0, "limit must be greater than zero");
+        return as("^self")
+                .outE(EDGE_RATED).has(KEY_RATING, gte(minRating)).inV()
+                .inE(EDGE_RATED).has(KEY_RATING, gte(minRating)).outV()
+                .where(neq("^self"))
+                .dedup()
+                .limit(limit);
+    }
+
     /**
      * Traverses from a "video" to a "user" over the "uploaded" edge.
      * ASSUMES incoming traversal from Video vertex
@@ -154,11 +195,29 @@ public interface KillrVideoTraversalDsl<S, E> extends GraphTraversal.Admin<S, E>
         /**
          * As mentioned in the javadocs this step assumes an incoming "video" vertex. it is immediately labelled as
          * "^video". the addition of the caret prefix has no meaning except to provide for a unique labelling space
-         * within the DSL itself.
+         * within the DSL itself. user() already starts with V(), a single lookup of the user vertex.
          */
         return ((KillrVideoTraversal) as("^video")).coalesce(
                  __.uploaders().has(KEY_USER_ID, userId),
-                 __.V().user(userId).addE(EDGE_UPLOADED).to("^video").inV());
+                 __.user(userId).addE(EDGE_UPLOADED).to("^video").inV());
+    }
+
+    /**
+     * Creates an "uploaded" edge from a "user" known to exist to a "video", the user vertex is read by its id
+     * (no lookup by key, see {@link #uploaded(UUID)}).
+     * ASSUMES incoming traversal from Video vertex
+     *
+     * @param userId
+     * @param userVertexId
+     * @return
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public default GraphTraversal<S, Vertex> uploadedByExisting(UUID userId, Object userVertexId) {
+        Assert.notNull(userId, "The userId must not be null");
+        Assert.notNull(userVertexId, "The userVertexId must not be null");
+        return ((KillrVideoTraversal) as("^video")).coalesce(
+                 __.uploaders().has(KEY_USER_ID, userId),
+                 __.V(userVertexId).addE(EDGE_UPLOADED).to("^video").inV());
     }
 
     /**
@@ -216,6 +275,25 @@ public interface KillrVideoTraversalDsl<S, E> extends GraphTraversal.Admin<S, E>
                                  .addE(EDGE_TAGGED_WITH).from("^video").inV());
     }
 
+    /**
+     * Creates a "taggedWith" edge from a "video" to a "tag" known to exist (no lookup of the tag vertex before
+     * creating it, see {@link #taggedWith(String, Date)}). The tag vertex is read by its id.
+     * ASSUMES incoming traversal from Video vertex
+     *
+     * @param name
+     * @param tagVertexId
+     * @return
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public default GraphTraversal<S, Vertex> taggedWithExisting(String name, Object tagVertexId) {
+        Assert.hasLength(name, "The name of the tag must not be null or empty");
+        Assert.notNull(tagVertexId, "The tagVertexId must not be null");
+        return ((KillrVideoTraversal) as("^video")).
+                coalesce(__.taggers().has(KEY_NAME, name),
+                         __.V(tagVertexId)
+                                 .addE(EDGE_TAGGED_WITH).from("^video").inV());
+    }
+
     /** This step is an alias for the {@code sideEffect()} step. As an alias, it makes certain aspects of the DSL more
      * readable.
      */
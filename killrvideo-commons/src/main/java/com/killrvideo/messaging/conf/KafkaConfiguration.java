@@ -1,13 +1,21 @@
 package com.killrvideo.messaging.conf;
 
+import static org.apache.kafka.clients.consumer.ConsumerConfig.AUTO_OFFSET_RESET_CONFIG;
+import static org.apache.kafka.clients.consumer.ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG;
+import static org.apache.kafka.clients.consumer.ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG;
+import static org.apache.kafka.clients.consumer.ConsumerConfig.FETCH_MIN_BYTES_CONFIG;
 import static org.apache.kafka.clients.consumer.ConsumerConfig.GROUP_ID_CONFIG;
 import static org.apache.kafka.clients.consumer.ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG;
+import static org.apache.kafka.clients.consumer.ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG;
+import static org.apache.kafka.clients.consumer.ConsumerConfig.MAX_POLL_RECORDS_CONFIG;
 import static org.apache.kafka.clients.consumer.ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.ACKS_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.BOOTSTRAP_SERVERS_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG;
 import static org.apache.kafka.clients.producer.ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.Properties;
 
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -49,6 +57,23 @@ public class KafkaConfiguration {
     @Value("${kafka.consumerGroup: killrvideo }")
     private String consumerGroup;
     
+    /** Identifies this node in per-node consumer groups, host name if empty: must not change across restarts. */
+    @Value("${killrvideo.messaging.kafka.instanceId: }")
+    private String instanceId;
+    
+    /** Records returned by a poll, processed before the next one (see KafkaConsumerLoop). */
+    @Value("${killrvideo.messaging.kafka.consumer.maxPollRecords: 100}")
+    private int maxPollRecords;
+    
+    @Value("${killrvideo.messaging.kafka.consumer.fetchMinBytes: 1}")
+    private int fetchMinBytes;
+    
+    @Value("${killrvideo.messaging.kafka.consumer.fetchMaxWaitMillis: 500}")
+    private int fetchMaxWaitMillis;
+    
+    @Value("${killrvideo.messaging.kafka.consumer.maxPartitionFetchBytes: 1048576}")
+    private int maxPartitionFetchBytes;
+    
     @Autowired
     private ServiceDiscoveryDao discoveryDao;
     
@@ -75,44 +100,91 @@ public class KafkaConfiguration {
         return new KafkaProducer<String, byte[]>(props);
     }
 
+    /**
+     * Offsets are committed by the poll loop once records are processed, not periodically.
+     */
+    private Properties consumerProperties(String groupId) {
+        Properties props = new Properties();
+        props.put(BOOTSTRAP_SERVERS_CONFIG,         getKafkaServerConnectionUrl());
+        props.put(GROUP_ID_CONFIG,                  groupId);
+        props.put(KEY_DESERIALIZER_CLASS_CONFIG,    StringDeserializer.class.getName());
+        props.put(VALUE_DESERIALIZER_CLASS_CONFIG,  ByteArrayDeserializer.class.getName());
+        props.put(ENABLE_AUTO_COMMIT_CONFIG,        "false");
+        props.put(MAX_POLL_RECORDS_CONFIG,          String.valueOf(Math.max(1, maxPollRecords)));
+        props.put(FETCH_MIN_BYTES_CONFIG,           String.valueOf(Math.max(1, fetchMinBytes)));
+        props.put(FETCH_MAX_WAIT_MS_CONFIG,         String.valueOf(Math.max(0, fetchMaxWaitMillis)));
+        props.put(MAX_PARTITION_FETCH_BYTES_CONFIG, String.valueOf(Math.max(1, maxPartitionFetchBytes)));
+        return props;
+    }
+    
+    /**
+     * Group of a consumer that must see every record of a topic on every node (local caches, filters, indexes). 
+     * The name is stable for a node, it resumes from its committed offsets after a restart.
+     */
+    private String nodeConsumerGroup(String purpose) {
+        String node = (instanceId == null) ? "" : instanceId.trim();
+        if (node.isEmpty()) {
+            try {
+                node = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException("Cannot resolve host name, set 'killrvideo.messaging.kafka.instanceId'", e);
+            }
+        }
+        return consumerGroup + "-" + purpose + "-" + node;
+    }
+    
     @Bean("kafka.consumer.videoRating")
     public KafkaConsumer<String, byte[]> videoRatingConsumer() {
-        Properties props = new Properties();
-        props.put(BOOTSTRAP_SERVERS_CONFIG,        getKafkaServerConnectionUrl());
-        props.put(GROUP_ID_CONFIG,                 consumerGroup);
-        props.put(KEY_DESERIALIZER_CLASS_CONFIG,   StringDeserializer.class.getName());
-        props.put(VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
-        return new KafkaConsumer<String,byte[]>(props);
+        return new KafkaConsumer<String,byte[]>(consumerProperties(consumerGroup));
     }
     
     @Bean("kafka.consumer.userCreating")
     public KafkaConsumer<String, byte[]> userCreatingConsumer() {
-        Properties props = new Properties();
-        props.put(BOOTSTRAP_SERVERS_CONFIG,        getKafkaServerConnectionUrl());
-        props.put(GROUP_ID_CONFIG,                 consumerGroup);
-        props.put(KEY_DESERIALIZER_CLASS_CONFIG,   StringDeserializer.class.getName());
-        props.put(VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
-        return new KafkaConsumer<String,byte[]>(props);
+        return new KafkaConsumer<String,byte[]>(consumerProperties(consumerGroup));
     }
     
     @Bean("kafka.consumer.videoCreating")
     public KafkaConsumer<String, byte[]> videoCreatingConsumer() {
-        Properties props = new Properties();
-        props.put(BOOTSTRAP_SERVERS_CONFIG,        getKafkaServerConnectionUrl());
-        props.put(GROUP_ID_CONFIG,                 consumerGroup);
-        props.put(KEY_DESERIALIZER_CLASS_CONFIG,   StringDeserializer.class.getName());
-        props.put(VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        return new KafkaConsumer<String,byte[]>(consumerProperties(consumerGroup));
+    }
+    
+    /**
+     * Search nodes keep local indexes and need all video creations, not a share of them: one group per node.
+     * History is loaded from DSE at startup, a new node only consumes new events, a restarted node resumes
+     * from its committed offsets.
+     */
+    @Bean("kafka.consumer.videoCreating.search")
+    public KafkaConsumer<String, byte[]> videoCreatingSearchConsumer() {
+        Properties props = consumerProperties(nodeConsumerGroup("search"));
+        props.put(AUTO_OFFSET_RESET_CONFIG,        "latest");
+        return new KafkaConsumer<String,byte[]>(props);
+    }
+    
+    /**
+     * Every user service node keeps a filter of known emails and needs all user creations. History is loaded 
+     * from DSE at startup, a new node only consumes new events.
+     */
+    @Bean("kafka.consumer.userCreating.users")
+    public KafkaConsumer<String, byte[]> userCreatingUsersConsumer() {
+        Properties props = consumerProperties(nodeConsumerGroup("users"));
+        props.put(AUTO_OFFSET_RESET_CONFIG,        "latest");
+        return new KafkaConsumer<String,byte[]>(props);
+    }
+    
+    /**
+     * In-memory recommenders of every suggested videos node need all ratings, whatever the outcome of the graph
+     * update done by the shared group. History is loaded from DSE at startup, a new node only consumes new events.
+     */
+    @Bean("kafka.consumer.videoRating.recommendations")
+    public KafkaConsumer<String, byte[]> videoRatingRecommendationsConsumer() {
+        Properties props = consumerProperties(nodeConsumerGroup("recommendations"));
+        props.put(AUTO_OFFSET_RESET_CONFIG,        "latest");
         return new KafkaConsumer<String,byte[]>(props);
     }
     
     @Bean("kafka.consumer.error")
     public KafkaConsumer<String, byte[]> errorConsumer() {
-        Properties props = new Properties();
-        props.put(BOOTSTRAP_SERVERS_CONFIG,        getKafkaServerConnectionUrl());
-        props.put(GROUP_ID_CONFIG,                 consumerGroup);
-        props.put(KEY_DESERIALIZER_CLASS_CONFIG,   StringDeserializer.class.getName());
-        props.put(VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
-        return new KafkaConsumer<String,byte[]>(props);
+        return new KafkaConsumer<String,byte[]>(consumerProperties(consumerGroup));
     }
     
 }
@@ -0,0 +1,454 @@
+package com.killrvideo.messaging.dao;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.kafka.clients.consumer.CommitFailedException;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+
+/**
+ * Poll loop of a Kafka consumer on a dedicated thread (consumers are not thread safe, only this thread uses it).
+ *
+ * - records are processed on the polling thread, or dispatched to {@link WorkerLanes} by key: records of a
+ *   same key are processed in order, others in parallel
+ * - the polling thread never waits for records in progress: beyond 'maxInProgress' the assigned partitions are
+ *   paused (poll goes on, the consumer stays in its group) and resumed once half of them are done
+ * - offsets are committed (auto commit is disabled, see KafkaConfiguration) up to the first record of each
+ *   partition not processed yet: a record is delivered again if the service stops before it is processed
+ * - a record failing is logged and skipped, it does not block the partition
+ * - an error of the consumer itself (poll, commit) is logged and the loop goes on after a backoff: the consumer
+ *   only stops with {@link #stop()}. A failed commit (group rebalanced) only means records are delivered again
+ * - when partitions are revoked, records in progress are waited for (bounded) and committed
+ * - lag per partition (end offset - position) is refreshed every 'lagRefresh', exposed with JMX by
+ *   {@link KafkaConsumerRuntime}
+ * - {@link #stop()} wakes the consumer up, the loop waits for records in progress, commits and closes it
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class KafkaConsumerLoop {
+
+    /** Loger for that class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaConsumerLoop.class);
+
+    /** Wait for records in progress when partitions are revoked or when stopping. */
+    private static final long DRAIN_TIMEOUT_MILLIS = 10000;
+
+    /** Wait after an error of the consumer, doubled at each successive error. */
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 10000;
+
+    /** Consumer, only used by the polling thread (and wakeup). */
+    private final KafkaConsumer<String, byte[]> consumer;
+
+    /** Subscribed topic. */
+    private final String topic;
+
+    /** Parsing of a record into a task. */
+    private final Function<ConsumerRecord<String, byte[]>, KeyedTask> dispatcher;
+
+    /** Lanes, null to process records on the polling thread. */
+    private final WorkerLanes lanes;
+
+    /** Poll timeout. */
+    private final Duration pollTimeout;
+
+    /** Records in progress before pausing partitions. */
+    private final int maxInProgress;
+
+    /** Period of lag computation. */
+    private final long lagRefreshMillis;
+
+    /** Polling thread. */
+    private final ExecutorService pollingThread;
+
+    private volatile boolean running;
+
+    /** Offsets in progress by partition assigned. */
+    private final Map<TopicPartition, PartitionOffsets> offsets = new ConcurrentHashMap<>();
+
+    /** Records dispatched and not processed, all partitions. */
+    private final AtomicInteger inProgressCounter = new AtomicInteger();
+
+    /** Lag by partition assigned, replaced at each refresh. */
+    private volatile Map<TopicPartition, Long> lags = Collections.emptyMap();
+
+    /** Counters. */
+    private final AtomicLong processedCounter = new AtomicLong();
+    private final AtomicLong failedCounter    = new AtomicLong();
+    private final AtomicLong errorCounter     = new AtomicLong();
+
+    /**
+     * Loop processing records on the polling thread, not started.
+     *
+     * @param consumer
+     *      consumer dedicated to this loop
+     * @param topic
+     *      topic to subscribe to
+     * @param handler
+     *      processing of a record
+     * @param pollTimeout
+     *      maximum wait for records
+     * @param lagRefresh
+     *      period of lag computation
+     */
+    public KafkaConsumerLoop(KafkaConsumer<String, byte[]> consumer, String topic,
+            Consumer<ConsumerRecord<String, byte[]>> handler, Duration pollTimeout, Duration lagRefresh) {
+        this(consumer, topic, record -> KeyedTask.of(null, () -> {
+            handler.accept(record);
+            return CompletableFuture.completedFuture(null);
+        }), null, Integer.MAX_VALUE, pollTimeout, lagRefresh);
+    }
+
+    /**
+     * Loop dispatching records to lanes, not started.
+     *
+     * @param consumer
+     *      consumer dedicated to this loop
+     * @param topic
+     *      topic to subscribe to
+     * @param dispatcher
+     *      parsing of a record into a keyed task (called on the polling thread)
+     * @param lanes
+     *      lanes running the tasks, null to run them on the polling thread
+     * @param maxInProgress
+     *      records in progress before pausing partitions
+     * @param pollTimeout
+     *      maximum wait for records
+     * @param lagRefresh
+     *      period of lag computation
+     */
+    public KafkaConsumerLoop(KafkaConsumer<String, byte[]> consumer, String topic,
+            Function<ConsumerRecord<String, byte[]>, KeyedTask> dispatcher, WorkerLanes lanes,
+            int maxInProgress, Duration pollTimeout, Duration lagRefresh) {
+        this.consumer         = consumer;
+        this.topic            = topic;
+        this.dispatcher       = dispatcher;
+        this.lanes            = lanes;
+        this.maxInProgress    = Math.max(1, maxInProgress);
+        this.pollTimeout      = pollTimeout;
+        this.lagRefreshMillis = lagRefresh.toMillis();
+        this.pollingThread    = Executors.newSingleThreadExecutor(new KillrVideoThreadFactory());
+    }
+
+    /**
+     * Subscribe and start polling.
+     */
+    public void start() {
+        LOGGER.info("Start consuming events from topic '{}' ..", topic);
+        running = true;
+        pollingThread.submit(this::pollLoop);
+    }
+
+    /**
+     * Stop polling, waits for the records being processed.
+     */
+    public void stop() {
+        running = false;
+        consumer.wakeup();
+        pollingThread.shutdown();
+        try {
+            pollingThread.awaitTermination(DRAIN_TIMEOUT_MILLIS + 5000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (lanes != null) {
+            lanes.shutdown(DRAIN_TIMEOUT_MILLIS);
+        }
+    }
+
+    private void pollLoop() {
+        long nextLagRefresh = 0;
+        long backoff        = 0;
+        try {
+            consumer.subscribe(Collections.singletonList(topic), new ConsumerRebalanceListener() {
+                /** Called during poll, on this thread. */
+                @Override
+                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                    awaitInProgress(partitions);
+                    commitProcessed(partitions);
+                    partitions.forEach(offsets::remove);
+                }
+                @Override
+                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {}
+            });
+            while (running) {
+                try {
+                    ConsumerRecords<String, byte[]> records = consumer.poll(pollTimeout);
+                    for (ConsumerRecord<String, byte[]> record : records) {
+                        dispatch(record);
+                    }
+                    applyBackpressure();
+                    commitProcessed(offsets.keySet());
+                    if (System.currentTimeMillis() >= nextLagRefresh) {
+                        refreshLags();
+                        nextLagRefresh = System.currentTimeMillis() + lagRefreshMillis;
+                    }
+                    backoff = 0;
+                } catch (CommitFailedException e) {
+                    // Partitions have been reassigned, their new owner starts from the last commit
+                    errorCounter.incrementAndGet();
+                    LOGGER.warn("Cannot commit offsets of topic '{}', records will be delivered again : {}", topic, e.getMessage());
+                } catch (WakeupException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    errorCounter.incrementAndGet();
+                    backoff = Math.min(MAX_BACKOFF_MILLIS, Math.max(MIN_BACKOFF_MILLIS, backoff * 2));
+                    LOGGER.error("Error consuming topic '{}', retrying in {} millis", topic, backoff, e);
+                    Thread.sleep(backoff);
+                }
+            }
+        } catch (WakeupException e) {
+            // stop() was called
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                awaitInProgress(offsets.keySet());
+                commitProcessed(offsets.keySet());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Cannot commit offsets of topic '{}' when stopping, records will be delivered again", topic, e);
+            }
+            consumer.close();
+            LOGGER.info("Stop consuming events from topic '{}'", topic);
+        }
+    }
+
+    /**
+     * Pause all assigned partitions while too many records are in progress (partitions assigned during a
+     * rebalance are not paused, they are at next poll).
+     */
+    private void applyBackpressure() {
+        int current = inProgressCounter.get();
+        if (current >= maxInProgress) {
+            if (consumer.paused().size() < consumer.assignment().size()) {
+                LOGGER.debug("{} records of topic '{}' in progress, pausing partitions", current, topic);
+                consumer.pause(consumer.assignment());
+            }
+        } else if (current <= maxInProgress / 2 && !consumer.paused().isEmpty()) {
+            LOGGER.debug("{} records of topic '{}' in progress, resuming partitions", current, topic);
+            consumer.resume(consumer.paused());
+        }
+    }
+
+    /**
+     * Records of a partition are dispatched in offset order, so the first offset in progress bounds the commit.
+     */
+    private void dispatch(ConsumerRecord<String, byte[]> record) {
+        TopicPartition   partition = new TopicPartition(record.topic(), record.partition());
+        PartitionOffsets inProgress = offsets.computeIfAbsent(partition, p -> new PartitionOffsets());
+        inProgress.started(record.offset());
+        inProgressCounter.incrementAndGet();
+        try {
+            KeyedTask task = dispatcher.apply(record);
+            CompletableFuture<Void> processing = (lanes == null)
+                    ? CompletableFuture.allOf(task.getTask().get())
+                    : lanes.submit(task.getKey(), task.getTask());
+            processing.whenComplete((v, error) -> {
+                if (error != null) {
+                    onFailure(record, error);
+                } else {
+                    processedCounter.incrementAndGet();
+                }
+                inProgress.done(record.offset());
+                inProgressCounter.decrementAndGet();
+            });
+        } catch (RuntimeException e) {
+            onFailure(record, e);
+            inProgress.done(record.offset());
+            inProgressCounter.decrementAndGet();
+        }
+    }
+
+    private void onFailure(ConsumerRecord<String, byte[]> record, Throwable error) {
+        failedCounter.incrementAndGet();
+        LOGGER.error("Cannot process record {} of topic '{}' partition {}, skipped",
+                record.offset(), record.topic(), record.partition(), error);
+    }
+
+    private void awaitInProgress(Collection<TopicPartition> partitions) {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline && partitions.stream()
+                .map(offsets::get)
+                .anyMatch(inProgress -> inProgress != null && inProgress.hasPending())) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void commitProcessed(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> committable = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            PartitionOffsets inProgress = offsets.get(partition);
+            if (inProgress != null) {
+                long next = inProgress.committable();
+                if (next > inProgress.committed) {
+                    committable.put(partition, new OffsetAndMetadata(next));
+                }
+            }
+        }
+        if (committable.isEmpty()) {
+            return;
+        }
+        try {
+            consumer.commitSync(committable);
+        } catch (WakeupException e) {
+            // Stopping while committing: commit before leaving the loop
+            consumer.commitSync(committable);
+            markCommitted(committable);
+            throw e;
+        }
+        markCommitted(committable);
+    }
+
+    private void markCommitted(Map<TopicPartition, OffsetAndMetadata> committable) {
+        committable.forEach((partition, offset) -> offsets.get(partition).committed = offset.offset());
+    }
+
+    private void refreshLags() {
+        Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.isEmpty()) {
+            lags = Collections.emptyMap();
+            return;
+        }
+        Map<TopicPartition, Long> refreshed = new ConcurrentHashMap<>();
+        consumer.endOffsets(assignment).forEach((partition, endOffset) ->
+            refreshed.put(partition, Math.max(0, endOffset - consumer.position(partition))));
+        lags = refreshed;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Consumer lag of topic '{}': {}, processed={}, failed={}, inProgress={}, paused={}", topic,
+                    refreshed, processedCounter.get(), failedCounter.get(), inProgressCounter.get(), consumer.paused());
+        }
+    }
+
+    /**
+     * Getter for metric 'lag'.
+     *
+     * @return
+     *       records not consumed yet by partition assigned, as of last refresh
+     */
+    public Map<TopicPartition, Long> getLags() {
+        return Collections.unmodifiableMap(lags);
+    }
+
+    /**
+     * Getter for metric 'processedCount'.
+     *
+     * @return
+     *       records processed
+     */
+    public long getProcessedCount() {
+        return processedCounter.get();
+    }
+
+    /**
+     * Getter for metric 'failedCount'.
+     *
+     * @return
+     *       records which processing failed
+     */
+    public long getFailedCount() {
+        return failedCounter.get();
+    }
+
+    /**
+     * Getter for metric 'errorCount'.
+     *
+     * @return
+     *       errors of the consumer (poll, commit), the loop went on
+     */
+    public long getErrorCount() {
+        return errorCounter.get();
+    }
+
+    /**
+     * Getter for metric 'inProgress'.
+     *
+     * @return
+     *       records dispatched and not processed yet
+     */
+    public int getInProgress() {
+        return inProgressCounter.get();
+    }
+
+    /**
+     * Getter for attribute 'topic'.
+     *
+     * @return
+     *       subscribed topic
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Offsets dispatched and not processed yet of a partition.
+     */
+    private static final class PartitionOffsets {
+
+        /** Offsets in progress, completed by lanes. */
+        private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+
+        /** Next offset after the last dispatched one. */
+        private volatile long next = -1;
+
+        /** Last offset committed, polling thread only. */
+        private long committed = -1;
+
+        private void started(long offset) {
+            pending.add(offset);
+            next = offset + 1;
+        }
+
+        private void done(long offset) {
+            pending.remove(offset);
+        }
+
+        private boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        /**
+         * All offsets below are processed.
+         */
+        private long committable() {
+            long nextDispatched = next;
+            Long firstPending;
+            try {
+                firstPending = pending.first();
+            } catch (NoSuchElementException e) {
+                firstPending = null;
+            }
+            return (firstPending == null) ? nextDispatched : Math.min(firstPending, nextDispatched);
+        }
+    }
+
+}
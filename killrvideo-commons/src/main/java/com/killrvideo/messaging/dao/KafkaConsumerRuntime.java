@@ -0,0 +1,181 @@
+package com.killrvideo.messaging.dao;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.killrvideo.conf.KillrVideoConfiguration;
+
+/**
+ * Starts the poll loops of the services ({@link KafkaConsumerLoop}) and exposes their metrics with JMX
+ * (bean 'killrvideo:type=KafkaConsumers'). Each owner stops its loops before being destroyed.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Component
+@Profile(KillrVideoConfiguration.PROFILE_MESSAGING_KAFKA)
+@ManagedResource(objectName = "killrvideo:type=KafkaConsumers", description = "Poll loops of Kafka consumers")
+public class KafkaConsumerRuntime {
+
+    @Value("${killrvideo.messaging.kafka.consumer.pollTimeoutMillis: 1000}")
+    private long pollTimeoutMillis;
+
+    @Value("${killrvideo.messaging.kafka.consumer.lagRefreshSeconds: 30}")
+    private long lagRefreshSeconds;
+
+    /** Lanes per keyed loop, 0 for one per core. */
+    @Value("${killrvideo.messaging.kafka.consumer.lanes: 0}")
+    private int laneCount;
+
+    /** Records in progress per keyed loop before its partitions are paused. */
+    @Value("${killrvideo.messaging.kafka.consumer.maxInProgress: 1000}")
+    private int maxInProgress;
+
+    /** Loops started. */
+    private final List<KafkaConsumerLoop> loops = new CopyOnWriteArrayList<>();
+
+    /**
+     * Start a poll loop.
+     *
+     * @param consumer
+     *      consumer dedicated to this loop
+     * @param topic
+     *      topic to subscribe to
+     * @param handler
+     *      processing of a record, offsets are committed when it returns (synchronous processing only,
+     *      see {@link #startKeyed(KafkaConsumer, String, Function)} for asynchronous processing)
+     * @return
+     *      started loop, to be stopped by the caller
+     */
+    public KafkaConsumerLoop start(KafkaConsumer<String, byte[]> consumer, String topic, Consumer<ConsumerRecord<String, byte[]>> handler) {
+        KafkaConsumerLoop loop = new KafkaConsumerLoop(consumer, topic, handler,
+                Duration.ofMillis(Math.max(1, pollTimeoutMillis)), Duration.ofSeconds(Math.max(1, lagRefreshSeconds)));
+        loops.add(loop);
+        loop.start();
+        return loop;
+    }
+
+    /**
+     * Start a poll loop processing records in parallel: records of a same key are processed in order, offsets are
+     * committed once all records before them are processed (their futures are complete).
+     *
+     * @param consumer
+     *      consumer dedicated to this loop
+     * @param topic
+     *      topic to subscribe to
+     * @param dispatcher
+     *      parsing of a record into its key and processing
+     * @return
+     *      started loop, to be stopped by the caller
+     */
+    public KafkaConsumerLoop startKeyed(KafkaConsumer<String, byte[]> consumer, String topic,
+            Function<ConsumerRecord<String, byte[]>, KeyedTask> dispatcher) {
+        int lanes = (laneCount > 0) ? laneCount : Runtime.getRuntime().availableProcessors();
+        KafkaConsumerLoop loop = new KafkaConsumerLoop(consumer, topic, dispatcher, new WorkerLanes(lanes), maxInProgress,
+                Duration.ofMillis(Math.max(1, pollTimeoutMillis)), Duration.ofSeconds(Math.max(1, lagRefreshSeconds)));
+        loops.add(loop);
+        loop.start();
+        return loop;
+    }
+
+    /**
+     * Lag of all consumers.
+     *
+     * @return
+     *      records not consumed yet by 'topic-partition'
+     */
+    @ManagedAttribute
+    public Map<String, Long> getConsumerLags() {
+        Map<String, Long> lags = new TreeMap<>();
+        loops.forEach(loop -> loop.getLags().forEach((partition, lag) -> lags.put(partition.toString(), lag)));
+        return lags;
+    }
+
+    /**
+     * Getter for metric 'totalLag'.
+     *
+     * @return
+     *      records not consumed yet, all consumers
+     */
+    @ManagedAttribute
+    public long getTotalLag() {
+        return loops.stream().flatMap(loop -> loop.getLags().values().stream()).mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Getter for metric 'maxLag'.
+     *
+     * @return
+     *      records not consumed yet, partition most behind
+     */
+    @ManagedAttribute
+    public long getMaxLag() {
+        return loops.stream().flatMap(loop -> loop.getLags().values().stream()).mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    /**
+     * Getter for metric 'processedCount'.
+     *
+     * @return
+     *      records processed, all consumers
+     */
+    @ManagedAttribute
+    public long getProcessedCount() {
+        return loops.stream().mapToLong(KafkaConsumerLoop::getProcessedCount).sum();
+    }
+
+    /**
+     * Getter for metric 'failedCount'.
+     *
+     * @return
+     *      records which processing failed, all consumers
+     */
+    @ManagedAttribute
+    public long getFailedCount() {
+        return loops.stream().mapToLong(KafkaConsumerLoop::getFailedCount).sum();
+    }
+
+    /**
+     * Getter for metric 'errorCount'.
+     *
+     * @return
+     *      errors of consumers (poll, commit), all consumers
+     */
+    @ManagedAttribute
+    public long getErrorCount() {
+        return loops.stream().mapToLong(KafkaConsumerLoop::getErrorCount).sum();
+    }
+
+    /**
+     * Metrics for monitoring.
+     *
+     * @return
+     *      metrics as a String
+     */
+    @ManagedAttribute
+    public String getStats() {
+        StringBuilder sb = new StringBuilder();
+        loops.forEach(loop -> sb.append(sb.length() == 0 ? "" : ", ")
+                .append(loop.getTopic())
+                .append("=[processed=").append(loop.getProcessedCount())
+                .append(", failed=").append(loop.getFailedCount())
+                .append(", errors=").append(loop.getErrorCount())
+                .append(", lag=").append(loop.getLags().values().stream().mapToLong(Long::longValue).sum())
+                .append(", inProgress=").append(loop.getInProgress())
+                .append("]"));
+        return sb.toString();
+    }
+
+}
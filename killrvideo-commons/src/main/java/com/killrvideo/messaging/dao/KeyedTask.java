@@ -0,0 +1,61 @@
+package com.killrvideo.messaging.dao;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Processing of a record and its ordering key (records of a same key are processed in order, see {@link WorkerLanes}).
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class KeyedTask {
+
+    /** Ordering key. */
+    private final Object key;
+
+    /** Processing, complete when its future is. */
+    private final Supplier<CompletableFuture<?>> task;
+
+    /**
+     * Use {@link #of(Object, Supplier)}.
+     */
+    private KeyedTask(Object key, Supplier<CompletableFuture<?>> task) {
+        this.key  = key;
+        this.task = task;
+    }
+
+    /**
+     * Create a task.
+     *
+     * @param key
+     *      ordering key (video id, user id...)
+     * @param task
+     *      processing
+     * @return
+     *      keyed task
+     */
+    public static KeyedTask of(Object key, Supplier<CompletableFuture<?>> task) {
+        return new KeyedTask(key, task);
+    }
+
+    /**
+     * Getter for attribute 'key'.
+     *
+     * @return
+     *       ordering key
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * Getter for attribute 'task'.
+     *
+     * @return
+     *       processing
+     */
+    public Supplier<CompletableFuture<?>> getTask() {
+        return task;
+    }
+
+}
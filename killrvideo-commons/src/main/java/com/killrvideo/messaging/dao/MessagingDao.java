@@ -3,6 +3,7 @@ package com.killrvideo.messaging.dao;
 import static com.killrvideo.messaging.utils.MessagingUtils.mapCustomError;
 import static com.killrvideo.messaging.utils.MessagingUtils.mapError;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 
@@ -23,6 +24,20 @@ public interface MessagingDao {
      */
     CompletableFuture<Object> sendEvent(String targetDestination, Object event);
     
+    /**
+     * Will send a batch of events to the same destination.
+     *
+     * @param targetDestination
+     *           adress of destination : queue, topic, shared memory (className).
+     * @param events
+     *          events to send
+     */
+    default CompletableFuture<Void> sendEvents(String targetDestination, List<?> events) {
+        return CompletableFuture.allOf(events.stream()
+                .map(event -> sendEvent(targetDestination, event))
+                .toArray(CompletableFuture[]::new));
+    }
+    
     /** 
      * Channel to send errors.
      */
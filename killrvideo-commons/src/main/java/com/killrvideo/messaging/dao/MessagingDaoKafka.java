@@ -2,14 +2,12 @@ package com.killrvideo.messaging.dao;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.time.Duration;
-import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.StreamSupport;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
-import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
@@ -55,6 +53,12 @@ public class MessagingDaoKafka implements MessagingDao {
     
     @Autowired
     private ErrorProcessor errorProcessor;
+    
+    @Autowired
+    private KafkaConsumerRuntime kafkaConsumerRuntime;
+    
+    /** Poll loop of error topic. */
+    private KafkaConsumerLoop errorLoop;
      
     /** Error Topic. */
     @Value("${killrvideo.messaging.topics.errors: topic-kv-errors}")
@@ -80,15 +84,43 @@ public class MessagingDaoKafka implements MessagingDao {
         return cfv;
     }
    
+    /** 
+     * {@inheritDoc}
+     * 
+     * Records are handed to the producer in a row (it groups them in batches per partition) and acknowledged 
+     * through producer callbacks instead of a waiting thread per event.
+     */
+    @Override
+    public CompletableFuture<Void> sendEvents(String targetDestination, List<?> events) {
+        LOGGER.info("Sending {} events to '{}' ..", events.size(), targetDestination);
+        CompletableFuture<?>[] acks = new CompletableFuture[events.size()];
+        for (int idx = 0; idx < events.size(); idx++) {
+            CompletableFuture<RecordMetadata> ack = new CompletableFuture<>();
+            protobufProducer.send(new ProducerRecord<>(targetDestination, serializePayload(events.get(idx))), (metadata, error) -> {
+                if (error != null) {
+                    ack.completeExceptionally(error);
+                } else {
+                    ack.complete(metadata);
+                }
+            });
+            acks[idx] = ack;
+        }
+        return CompletableFuture.allOf(acks);
+    }
+   
     // -- Common Error Handling --
     
     @PostConstruct
     public void registerErrorConsumer() {
-        LOGGER.info("Start consuming events from topic '{}' ..", topicErrors);
-        errorLogger.subscribe(Collections.singletonList(topicErrors));
-        StreamSupport.stream(errorLogger.poll(Duration.ofSeconds(5)).spliterator(), false)
-                    .map(ConsumerRecord::value)
-                    .forEach(this::consumeErrorEvent);
+        errorLoop = kafkaConsumerRuntime.start(errorLogger, topicErrors, record -> consumeErrorEvent(record.value()));
+    }
+    
+    /**
+     * Stop poll loop.
+     */
+    @PreDestroy
+    public void stopErrorConsumer() {
+        errorLoop.stop();
     }
     
     /**
@@ -0,0 +1,131 @@
+package com.killrvideo.messaging.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+
+/**
+ * Tasks of a same key run one after the other (a task starts when the future of the previous task of its key
+ * completes), tasks of different keys run in parallel. Futures are chained, no thread waits for a task: many
+ * tasks can be in progress at the same time (graph mutations fill their batches).
+ *
+ * Tasks are started on single thread lanes (by key). Submitting never blocks, callers bound the tasks in
+ * progress with {@link #getInProgress()}.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class WorkerLanes {
+
+    /** Key of tasks submitted without key (ConcurrentHashMap does not allow null). */
+    private static final Object NO_KEY = new Object();
+
+    /** One executor per lane. */
+    private final List<ExecutorService> lanes;
+
+    /** Last task submitted by key, removed when complete. */
+    private final Map<Object, CompletableFuture<Void>> lastTasks = new ConcurrentHashMap<>();
+
+    /** Tasks submitted and not complete. */
+    private final AtomicInteger inProgress = new AtomicInteger();
+
+    /**
+     * Create and start lanes.
+     *
+     * @param laneCount
+     *      number of lanes (threads)
+     */
+    public WorkerLanes(int laneCount) {
+        lanes = new ArrayList<>(Math.max(1, laneCount));
+        KillrVideoThreadFactory threadFactory = new KillrVideoThreadFactory();
+        for (int i = 0; i < Math.max(1, laneCount); i++) {
+            lanes.add(Executors.newSingleThreadExecutor(threadFactory));
+        }
+    }
+
+    /**
+     * Queue a task after the previous task of its key.
+     *
+     * @param key
+     *      ordering key, null goes to the first lane
+     * @param task
+     *      task, started when the previous task of the key is complete (successful or not)
+     * @return
+     *      completes with the future of the task
+     */
+    public CompletableFuture<Void> submit(Object key, Supplier<CompletableFuture<?>> task) {
+        Object orderingKey = (key == null) ? NO_KEY : key;
+        ExecutorService lane = lanes.get((key == null) ? 0 : (key.hashCode() & Integer.MAX_VALUE) % lanes.size());
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        inProgress.incrementAndGet();
+        done.whenComplete((v, error) -> {
+            lastTasks.remove(orderingKey, done);
+            inProgress.decrementAndGet();
+        });
+        CompletableFuture<Void> previous = lastTasks.put(orderingKey, done);
+        CompletableFuture<?> after = (previous == null) ? CompletableFuture.completedFuture(null) : previous;
+        after.whenComplete((v, error) -> {
+            try {
+                lane.execute(() -> run(task, done));
+            } catch (RejectedExecutionException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    private static void run(Supplier<CompletableFuture<?>> task, CompletableFuture<Void> done) {
+        try {
+            task.get().whenComplete((v, error) -> {
+                if (error == null) {
+                    done.complete(null);
+                } else {
+                    done.completeExceptionally(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Tasks submitted and not complete.
+     *
+     * @return
+     *      tasks in progress, waiting for their key or running
+     */
+    public int getInProgress() {
+        return inProgress.get();
+    }
+
+    /**
+     * Stop lanes once tasks in progress are done.
+     *
+     * @param timeoutMillis
+     *      maximum wait
+     */
+    public void shutdown(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            while (inProgress.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            lanes.forEach(ExecutorService::shutdown);
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
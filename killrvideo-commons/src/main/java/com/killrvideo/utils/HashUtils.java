@@ -2,23 +2,53 @@ package com.killrvideo.utils;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
 import org.apache.commons.codec.digest.DigestUtils;
 
 /**
  * Working with Hasehed passwords.
  *
+ * Hashes are versioned: current format is '$pbkdf2-sha256$&lt;iterations&gt;$&lt;salt&gt;$&lt;hash&gt;' (Base64 without padding).
+ * Values without prefix are legacy unsalted SHA-512 hashes, they are still verified and should be replaced
+ * at next successful login (see {@link #needsRehash(String, int)}).
+ *
  * @author DataStax Developer Advocates team.
  */
 public class HashUtils {
+
+    /** Prefix of current hash format. */
+    public static final String PBKDF2_PREFIX = "$pbkdf2-sha256$";
+
+    /** Default work factor. */
+    public static final int PBKDF2_DEFAULT_ITERATIONS = 120000;
+
+    /** PBKDF2 parameters. */
+    private static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int    SALT_BYTES       = 16;
+    private static final int    KEY_BITS         = 256;
     
+    /** Bounds of hashes provided by other systems (imports). */
+    private static final int    MIN_SALT_BYTES   = 8;
+    private static final int    MAX_ITERATIONS   = 10000000;
+
+    /** Salt generation. */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     /**
      * Hiding default constructor.
-     * 
+     *
      */
     private HashUtils() {}
 
     /**
-     * Work with passwords. 
+     * Work with passwords.
      *
      * @param password
      *      current password
@@ -26,6 +56,36 @@ public class HashUtils {
      *      passwortd hashed
      */
     public static String hashPassword(String password) {
+        return hashPassword(password, PBKDF2_DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Hash password with PBKDF2 and a random salt.
+     *
+     * @param password
+     *      current password
+     * @param iterations
+     *      work factor, stored in the hash
+     * @return
+     *      passwortd hashed
+     */
+    public static String hashPassword(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PBKDF2_PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$"
+                + encoder.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Legacy format (unsalted SHA-512 decoded with platform charset), only used to verify existing hashes.
+     *
+     * @param password
+     *      current password
+     * @return
+     *      passwortd hashed
+     */
+    public static String hashPasswordLegacy(String password) {
         return new String(DigestUtils.getSha512Digest().digest(password.getBytes()));
     }
 
@@ -43,6 +103,87 @@ public class HashUtils {
         if (isBlank(realPassword) || isBlank(hash)) {
             return false;
         }
-        return hashPassword(realPassword.trim()).compareTo(hash) == 0;
+        if (!hash.startsWith(PBKDF2_PREFIX)) {
+            return hashPasswordLegacy(realPassword.trim()).compareTo(hash) == 0;
+        }
+        String[] chunks = hash.substring(PBKDF2_PREFIX.length()).split("\\$");
+        if (chunks.length != 3) {
+            return false;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(chunks[2]);
+            byte[] actual   = pbkdf2(realPassword.trim(), decoder.decode(chunks[1]), Integer.parseInt(chunks[0]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException invalidHash) {
+            return false;
+        }
+    }
+
+    /**
+     * Tell if a hash is in current format and can be verified: positive work factor (bounded, verification cost
+     * is paid at each login), salt of at least 8 bytes and key of the size derived by {@link #isPasswordValid}.
+     *
+     * @param hash
+     *      hash to evaluate
+     * @return
+     *      true if the hash is a well formed PBKDF2 hash
+     */
+    public static boolean isWellFormedHash(String hash) {
+        if (isBlank(hash) || !hash.startsWith(PBKDF2_PREFIX)) {
+            return false;
+        }
+        String[] chunks = hash.substring(PBKDF2_PREFIX.length()).split("\\$", -1);
+        if (chunks.length != 3) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(chunks[0]);
+            Base64.Decoder decoder = Base64.getDecoder();
+            return iterations > 0 && iterations <= MAX_ITERATIONS
+                    && decoder.decode(chunks[1]).length >= MIN_SALT_BYTES
+                    && decoder.decode(chunks[2]).length == KEY_BITS / 8;
+        } catch (IllegalArgumentException invalidHash) {
+            return false;
+        }
+    }
+
+    /**
+     * Tell if a stored hash should be replaced by a hash in current format.
+     *
+     * @param hash
+     *      stored hash
+     * @param iterations
+     *      expected work factor
+     * @return
+     *      true if legacy format or weaker work factor
+     */
+    public static boolean needsRehash(String hash, int iterations) {
+        if (isBlank(hash) || !hash.startsWith(PBKDF2_PREFIX)) {
+            return true;
+        }
+        int endOfWork = hash.indexOf('$', PBKDF2_PREFIX.length());
+        if (endOfWork < 0) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(hash.substring(PBKDF2_PREFIX.length(), endOfWork)) < iterations;
+        } catch (NumberFormatException invalidHash) {
+            return true;
+        }
+    }
+
+    /**
+     * Derive key, password chars are used directly (no charset conversion).
+     */
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot hash password with " + PBKDF2_ALGORITHM, e);
+        } finally {
+            spec.clearPassword();
+        }
     }
 }
@@ -6,10 +6,21 @@ import static com.killrvideo.service.comment.dto.Comment.COLUMN_COMMENTID;
 import static com.killrvideo.service.comment.dto.Comment.COLUMN_USERID;
 import static com.killrvideo.service.comment.dto.Comment.COLUMN_VIDEOID;
 
+import java.util.Date;
 import java.util.Iterator;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 import javax.annotation.PostConstruct;
@@ -17,6 +28,7 @@ import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.Assert;
 
@@ -31,6 +43,7 @@ import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.utils.UUIDs;
 import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.annotations.Accessor;
@@ -38,14 +51,21 @@ import com.datastax.driver.mapping.annotations.Param;
 import com.datastax.driver.mapping.annotations.Query;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.RateLimiter;
 import com.killrvideo.dse.dao.DseDaoSupport;
 import com.killrvideo.dse.dto.ResultListPage;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
 import com.killrvideo.service.comment.dto.Comment;
 import com.killrvideo.service.comment.dto.CommentByUser;
 import com.killrvideo.service.comment.dto.CommentByVideo;
+import com.killrvideo.service.comment.dto.CommentPurgeCheckpoint;
 import com.killrvideo.service.comment.dto.QueryCommentByUser;
 import com.killrvideo.service.comment.dto.QueryCommentByVideo;
 import com.killrvideo.utils.FutureUtils;
+import com.killrvideo.utils.GrpcMappingUtils;
+
+import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsResponse;
+import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsResponse;
 
 /**
  * Implementation of queries and related to {@link Comment} objects within DataStax Enterprise.
@@ -62,6 +82,10 @@ public class CommentDseDao extends DseDaoSupport {
     /** Data Modelling. */
     public static final String TABLENAME_COMMENTS_BY_VIDEO  = "comments_by_video";
     public static final String TABLENAME_COMMENTS_BY_USER   = "comments_by_user";
+    public static final String TABLENAME_PURGE_CHECKPOINTS  = "comments_purge_checkpoints";
+    
+    /** Wait for running purges to save their checkpoint when stopping. */
+    private static final long PURGE_SHUTDOWN_TIMEOUT_SECONDS = 10;
     
     /** Mapper to ease queries. */
     protected Mapper < CommentByUser >  mapperCommentByUser;
@@ -72,6 +96,37 @@ public class CommentDseDao extends DseDaoSupport {
     private PreparedStatement findCommentsByUserPageable;
     private PreparedStatement findCommentsByVideo;
     private PreparedStatement findCommentsByVideoPageable;
+    
+    /** Column indices resolved once per prepared statement. */
+    private final ConcurrentMap<PreparedStatement, CommentRowMapper> rowMappers = new ConcurrentHashMap<>();
+    
+    /** Statements dedicated to the purge of all comments of a user. */
+    private PreparedStatement findCommentKeysByUser;
+    private PreparedStatement findCommentKeysByUserBefore;
+    private PreparedStatement deleteCommentByUser;
+    private PreparedStatement deleteCommentByVideo;
+    private PreparedStatement findPurgeCheckpoint;
+    private PreparedStatement upsertPurgeCheckpoint;
+    private PreparedStatement deletePurgeCheckpoint;
+    
+    /** Number of rows read per page and deleted between two checkpoints. */
+    @Value("${killrvideo.comments.purge.batchSize: 500}")
+    private int purgeBatchSize = 500;
+    
+    /** Default and maximum number of delete batches in flight for a single purge. */
+    @Value("${killrvideo.comments.purge.maxConcurrency: 16}")
+    private int purgeMaxConcurrency = 16;
+    
+    /** Default and maximum throughput of a single purge. */
+    @Value("${killrvideo.comments.purge.maxDeletesPerSecond: 200}")
+    private int purgeMaxDeletesPerSecond = 200;
+    
+    /** Number of purges allowed to run at the same time, others are queued. */
+    @Value("${killrvideo.comments.purge.maxParallelPurges: 2}")
+    private int purgeMaxParallelPurges = 2;
+    
+    /** Threads driving the purges (reading partition, throttling, checkpointing). */
+    private ExecutorService purgeExecutor;
      
     /**
      * Default constructor.
@@ -97,6 +152,14 @@ public class CommentDseDao extends DseDaoSupport {
      */
     @PreDestroy
     public void onDestroy() throws Exception {
+        if (purgeExecutor != null) {
+            // Running purges stop after their in-flight deletes and save their checkpoint before the session is closed
+            purgeExecutor.shutdownNow();
+            if (!purgeExecutor.awaitTermination(PURGE_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Comment purges still running after {} seconds, they resume from their last checkpoint",
+                        PURGE_SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        }
         if (dseSession  != null && !dseSession.isClosed()) {
             LOGGER.info("Closing DSE Cluster (clean up at shutdown)");
             dseSession.getCluster().close();
@@ -119,7 +182,6 @@ public class CommentDseDao extends DseDaoSupport {
                 .select()
                     .column(COLUMN_USERID).column(COLUMN_COMMENTID)
                     .column(COLUMN_VIDEOID).column(COLUMN_COMMENT)
-                    .fcall("toTimestamp", QueryBuilder.column(COLUMN_COMMENTID)).as("comment_timestamp")
                 .from(keyspaceCommentByUser, tableNameCommentByUser)
                 .where(QueryBuilder.eq(COLUMN_USERID, QueryBuilder.bindMarker()));
         findCommentsByUser = dseSession.prepare(queryFindComments);
@@ -130,7 +192,6 @@ public class CommentDseDao extends DseDaoSupport {
                 .select()
                     .column(COLUMN_USERID).column(COLUMN_COMMENTID)
                     .column(COLUMN_VIDEOID).column(COLUMN_COMMENT)
-                    .fcall("toTimestamp", QueryBuilder.column(COLUMN_COMMENTID)).as("comment_timestamp")
                 .from(keyspaceCommentByUser, tableNameCommentByUser)
                 .where(QueryBuilder.eq(COLUMN_USERID, QueryBuilder.bindMarker()))
                 .and(QueryBuilder.lte(COLUMN_COMMENTID, QueryBuilder.bindMarker()));
@@ -146,7 +207,6 @@ public class CommentDseDao extends DseDaoSupport {
                 .select()
                     .column(COLUMN_VIDEOID).column(COLUMN_COMMENTID)
                     .column(COLUMN_USERID).column(COLUMN_COMMENT)
-                    .fcall("toTimestamp", QueryBuilder.column(COLUMN_COMMENTID)).as("comment_timestamp")
                 .from(keyspaceCommentByVideo, tableNameCommentByVideo)
                 .where(QueryBuilder.eq(COLUMN_VIDEOID, QueryBuilder.bindMarker()));
         findCommentsByVideo = dseSession.prepare(auerySearchAllCommentForvideo);
@@ -157,12 +217,64 @@ public class CommentDseDao extends DseDaoSupport {
                 .select()
                     .column(COLUMN_VIDEOID).column(COLUMN_COMMENTID)
                     .column(COLUMN_USERID).column(COLUMN_COMMENT)
-                    .fcall("toTimestamp", QueryBuilder.column(COLUMN_COMMENTID)).as("comment_timestamp")
                 .from(keyspaceCommentByVideo, tableNameCommentByVideo)
                 .where(QueryBuilder.eq(COLUMN_VIDEOID, QueryBuilder.bindMarker()))
                 .and(QueryBuilder.lte(COLUMN_COMMENTID, QueryBuilder.bindMarker()));
         findCommentsByVideoPageable = dseSession.prepare(auerySearchCommentForVideo);
         findCommentsByVideoPageable.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        initializePurge(keyspaceCommentByUser, tableNameCommentByUser, keyspaceCommentByVideo, tableNameCommentByVideo);
+    }
+    
+    /**
+     * Prepare statements and executor used by {@link #purgeUserCommentsAsync(UUID, int, int, Consumer)}. The checkpoint 
+     * table 'comments_purge_checkpoints' is created with the schema (killrvideo.cql).
+     */
+    private void initializePurge(String keyspaceByUser, String tableByUser, String keyspaceByVideo, String tableByVideo) {
+        // Only primary key columns are needed to delete, comments_by_user is ordered by commentid DESC
+        findCommentKeysByUser = dseSession.prepare(QueryBuilder
+                .select().column(COLUMN_COMMENTID).column(COLUMN_VIDEOID)
+                .from(keyspaceByUser, tableByUser)
+                .where(QueryBuilder.eq(COLUMN_USERID, QueryBuilder.bindMarker())));
+        findCommentKeysByUser.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        findCommentKeysByUserBefore = dseSession.prepare(QueryBuilder
+                .select().column(COLUMN_COMMENTID).column(COLUMN_VIDEOID)
+                .from(keyspaceByUser, tableByUser)
+                .where(QueryBuilder.eq(COLUMN_USERID, QueryBuilder.bindMarker()))
+                .and(QueryBuilder.lt(COLUMN_COMMENTID, QueryBuilder.bindMarker())));
+        findCommentKeysByUserBefore.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        deleteCommentByUser = dseSession.prepare(QueryBuilder
+                .delete().from(keyspaceByUser, tableByUser)
+                .where(QueryBuilder.eq(COLUMN_USERID, QueryBuilder.bindMarker()))
+                .and(QueryBuilder.eq(COLUMN_COMMENTID, QueryBuilder.bindMarker())));
+        deleteCommentByVideo = dseSession.prepare(QueryBuilder
+                .delete().from(keyspaceByVideo, tableByVideo)
+                .where(QueryBuilder.eq(COLUMN_VIDEOID, QueryBuilder.bindMarker()))
+                .and(QueryBuilder.eq(COLUMN_COMMENTID, QueryBuilder.bindMarker())));
+        
+        findPurgeCheckpoint = dseSession.prepare(QueryBuilder
+                .select().column(CommentPurgeCheckpoint.COLUMN_LAST_COMMENTID).column(CommentPurgeCheckpoint.COLUMN_DELETED)
+                .from(keyspaceByUser, TABLENAME_PURGE_CHECKPOINTS)
+                .where(QueryBuilder.eq(CommentPurgeCheckpoint.COLUMN_USERID, QueryBuilder.bindMarker())));
+        findPurgeCheckpoint.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        upsertPurgeCheckpoint = dseSession.prepare(QueryBuilder
+                .insertInto(keyspaceByUser, TABLENAME_PURGE_CHECKPOINTS)
+                .value(CommentPurgeCheckpoint.COLUMN_USERID, QueryBuilder.bindMarker())
+                .value(CommentPurgeCheckpoint.COLUMN_LAST_COMMENTID, QueryBuilder.bindMarker())
+                .value(CommentPurgeCheckpoint.COLUMN_DELETED, QueryBuilder.bindMarker()));
+        upsertPurgeCheckpoint.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        deletePurgeCheckpoint = dseSession.prepare(QueryBuilder
+                .delete().from(keyspaceByUser, TABLENAME_PURGE_CHECKPOINTS)
+                .where(QueryBuilder.eq(CommentPurgeCheckpoint.COLUMN_USERID, QueryBuilder.bindMarker())));
+        deletePurgeCheckpoint.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        int purgeThreads = Math.max(1, purgeMaxParallelPurges);
+        purgeExecutor = new ThreadPoolExecutor(purgeThreads, purgeThreads, 60, TimeUnit.SECONDS, 
+                new LinkedBlockingQueue<>(), new KillrVideoThreadFactory());
     }
     
     /**
@@ -220,6 +332,16 @@ public class CommentDseDao extends DseDaoSupport {
                           .thenApplyAsync(this::mapToCommentList); // Iterate on resultSet to build result bean  
     }
     
+    /**
+     * Search comment_by_video Asynchronously with Pagination, rows are mapped to the GRPC response 
+     * directly with {@link CommentRowMapper}.
+     */
+    public CompletableFuture < GetVideoCommentsResponse > findVideoCommentsAsync(final QueryCommentByVideo query) {
+        final BoundStatement boundStatement = buildStatementVideoComments(query);
+        return FutureUtils.asCompletableFuture(dseSession.executeAsync(boundStatement))
+                          .thenApply(rs -> mapToVideoCommentsResponse(boundStatement.preparedStatement(), rs));
+    }
+    
     /**
      * Execute a query against the 'comment_by_user' table.
      */
@@ -236,6 +358,16 @@ public class CommentDseDao extends DseDaoSupport {
                           .thenApplyAsync(this::mapToCommentList);
     }
     
+    /**
+     * Execute a query against the 'comment_by_user' table (ASYNC), rows are mapped to the GRPC response 
+     * directly with {@link CommentRowMapper}.
+     */
+    public CompletableFuture< GetUserCommentsResponse > findUserCommentsAsync(final QueryCommentByUser query) {
+        final BoundStatement boundStatement = buildStatementUserComments(query);
+        return FutureUtils.asCompletableFuture(dseSession.executeAsync(boundStatement))
+                          .thenApply(rs -> mapToUserCommentsResponse(boundStatement.preparedStatement(), rs));
+    }
+    
     /**
      * Update a commet with the new text.
      *
@@ -292,6 +424,137 @@ public class CommentDseDao extends DseDaoSupport {
         dseSession.execute(new BatchStatement(BatchStatement.Type.LOGGED).add(q1).add(q2)); 
     }
     
+    /**
+     * Delete all comments made by a user. The partition 'comments_by_user' is streamed page by page and each comment 
+     * is removed from both tables with the same LOGGED batch as {@link #deleteComment(Comment)}. At most 'maxConcurrency'
+     * batches are in flight and no more than 'maxDeletesPerSecond' are issued, so a purge does not starve live traffic.
+     * 
+     * Every 'batchSize' deletes, once all in-flight deletes are acknowledged, the last deleted comment is saved in 
+     * table 'comments_purge_checkpoints' and reported to the progress listener. A purge started again for the same
+     * user (after a failure or a restart) reads the partition after this comment only. The checkpoint is removed 
+     * when the partition has been fully consumed.
+     *
+     * @param userid
+     *      user whose comments are deleted
+     * @param maxConcurrency
+     *      delete batches in flight, configured value if not strictly positive, capped by the configured value
+     * @param maxDeletesPerSecond
+     *      throughput limit, configured value if not strictly positive, capped by the configured value
+     * @param progressListener
+     *      invoked (from the purge thread) at each checkpoint and at the end
+     * @return
+     *      final checkpoint, not 'completed' if the purge has been interrupted
+     */
+    public CompletableFuture<CommentPurgeCheckpoint> purgeUserCommentsAsync(UUID userid, int maxConcurrency, 
+            int maxDeletesPerSecond, Consumer<CommentPurgeCheckpoint> progressListener) {
+        assertNotNull("purgeUserCommentsAsync", "userid", userid);
+        // Clients can slow a purge down, never exceed the server limits
+        final int concurrency = maxConcurrency > 0 ? Math.min(maxConcurrency, purgeMaxConcurrency) : purgeMaxConcurrency;
+        final int rate        = maxDeletesPerSecond > 0 ? Math.min(maxDeletesPerSecond, purgeMaxDeletesPerSecond) : purgeMaxDeletesPerSecond;
+        return CompletableFuture.supplyAsync(() -> purgeUserComments(userid, concurrency, rate, progressListener), purgeExecutor);
+    }
+    
+    /**
+     * Synchronous purge, executed by a thread of the purge executor.
+     */
+    private CommentPurgeCheckpoint purgeUserComments(UUID userid, int concurrency, int rate, Consumer<CommentPurgeCheckpoint> progressListener) {
+        final CommentPurgeCheckpoint checkpoint = loadPurgeCheckpoint(userid);
+        final Semaphore                  inFlight = new Semaphore(concurrency);
+        final RateLimiter                limiter  = RateLimiter.create(rate);
+        final AtomicReference<Throwable> failure  = new AtomicReference<>();
+        LOGGER.info("Purging comments of user {} from checkpoint {} ({} already deleted)", 
+                userid, checkpoint.getLastCommentid(), checkpoint.getDeleted());
+        
+        BoundStatement readStatement = (checkpoint.getLastCommentid() == null) ?
+                findCommentKeysByUser.bind(userid) : 
+                findCommentKeysByUserBefore.bind(userid, checkpoint.getLastCommentid());
+        readStatement.setFetchSize(purgeBatchSize);
+        ResultSet rs = dseSession.execute(readStatement);
+        
+        UUID lastIssued  = null;
+        int  pendingRows = 0;
+        for (Row row : rs) {
+            if (failure.get() != null || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            // Read next page while current one is deleted
+            if (rs.getAvailableWithoutFetching() == purgeBatchSize / 2 && !rs.isFullyFetched()) {
+                rs.fetchMoreResults();
+            }
+            UUID commentid = row.getUUID(0);
+            UUID videoid   = row.getUUID(1);
+            limiter.acquire();
+            inFlight.acquireUninterruptibly();
+            Futures.addCallback(dseSession.executeAsync(buildBatchStatementDeleteComment(userid, videoid, commentid)), 
+                new FutureCallback<ResultSet>() {
+                    public void onSuccess(ResultSet result) { inFlight.release(); }
+                    public void onFailure(Throwable ex)     { failure.compareAndSet(null, ex); inFlight.release(); }
+            });
+            lastIssued = commentid;
+            if (++pendingRows == purgeBatchSize) {
+                inFlight.acquireUninterruptibly(concurrency);
+                inFlight.release(concurrency);
+                if (failure.get() == null) {
+                    checkpoint.advance(lastIssued, pendingRows);
+                    savePurgeCheckpoint(checkpoint);
+                    progressListener.accept(checkpoint);
+                    pendingRows = 0;
+                }
+            }
+        }
+        
+        // Wait for the last deletes
+        inFlight.acquireUninterruptibly(concurrency);
+        inFlight.release(concurrency);
+        if (failure.get() != null) {
+            LOGGER.error("Purge of comments for user {} failed after {} deletes, it can be resumed", userid, checkpoint.getDeleted());
+            throw new CompletionException(failure.get());
+        }
+        checkpoint.advance(lastIssued, pendingRows);
+        if (Thread.currentThread().isInterrupted()) {
+            savePurgeCheckpoint(checkpoint);
+            LOGGER.warn("Purge of comments for user {} interrupted after {} deletes", userid, checkpoint.getDeleted());
+        } else {
+            checkpoint.setCompleted(true);
+            dseSession.execute(deletePurgeCheckpoint.bind(userid));
+            LOGGER.info("Purge of comments for user {} completed, {} comments deleted", userid, checkpoint.getDeleted());
+        }
+        progressListener.accept(checkpoint);
+        return checkpoint;
+    }
+    
+    /**
+     * Read checkpoint of a previous purge if any.
+     */
+    private CommentPurgeCheckpoint loadPurgeCheckpoint(UUID userid) {
+        Row row = dseSession.execute(findPurgeCheckpoint.bind(userid)).one();
+        if (row == null) {
+            return new CommentPurgeCheckpoint(userid);
+        }
+        return new CommentPurgeCheckpoint(userid,
+                row.getUUID(CommentPurgeCheckpoint.COLUMN_LAST_COMMENTID), 
+                row.getLong(CommentPurgeCheckpoint.COLUMN_DELETED));
+    }
+    
+    /**
+     * Persist checkpoint of current purge.
+     */
+    private void savePurgeCheckpoint(CommentPurgeCheckpoint checkpoint) {
+        dseSession.execute(upsertPurgeCheckpoint.bind(
+                checkpoint.getUserid(), checkpoint.getLastCommentid(), checkpoint.getDeleted()));
+    }
+    
+    /**
+     * Same LOGGED batch as {@link #deleteComment(Comment)} built from prepared statements.
+     */
+    private BatchStatement buildBatchStatementDeleteComment(UUID userid, UUID videoid, UUID commentid) {
+        BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.LOGGED)
+                .add(deleteCommentByUser.bind(userid, commentid))
+                .add(deleteCommentByVideo.bind(videoid, commentid));
+        batchStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        return batchStatement;
+    }
+    
     /** 
      * Create batch statement to insert a Comment in 2 tables at the same time.
      * 
@@ -340,7 +603,7 @@ public class CommentDseDao extends DseDaoSupport {
                      c.setUserid(row.getUUID(COLUMN_USERID));
                      c.setCommentid(row.getUUID(COLUMN_COMMENTID));
                      c.setVideoid(row.getUUID(COLUMN_VIDEOID));
-                     c.setDateOfComment(row.getTimestamp("comment_timestamp"));
+                     c.setDateOfComment(new Date(UUIDs.unixTimestamp(c.getCommentid())));
                      result.getResults().add(c);
                  });
         result.setPagingState(
@@ -349,6 +612,75 @@ public class CommentDseDao extends DseDaoSupport {
         return result;
     }
     
+    /**
+     * Map only rows of the current page (no fetch is triggered, mapping can run on the driver thread).
+     *
+     * @param ps
+     *      prepared statement used for the query
+     * @param rs
+     *      current page
+     * @return
+     *      GRPC response
+     */
+    private GetVideoCommentsResponse mapToVideoCommentsResponse(PreparedStatement ps, ResultSet rs) {
+        final CommentRowMapper mapper  = getRowMapper(ps, rs);
+        final GetVideoCommentsResponse.Builder builder = GetVideoCommentsResponse.newBuilder();
+        int rows = rs.getAvailableWithoutFetching();
+        if (rows > 0) {
+            Row row = rs.one();
+            builder.setVideoId(GrpcMappingUtils.uuidToUuid(mapper.getVideoid(row)));
+            builder.addComments(mapper.mapVideoComment(row));
+            for (int i = 1; i < rows; i++) {
+                builder.addComments(mapper.mapVideoComment(rs.one()));
+            }
+        }
+        PagingState pagingState = rs.getExecutionInfo().getPagingState();
+        if (pagingState != null) {
+            builder.setPagingState(pagingState.toString());
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Map only rows of the current page (no fetch is triggered, mapping can run on the driver thread).
+     *
+     * @param ps
+     *      prepared statement used for the query
+     * @param rs
+     *      current page
+     * @return
+     *      GRPC response
+     */
+    private GetUserCommentsResponse mapToUserCommentsResponse(PreparedStatement ps, ResultSet rs) {
+        final CommentRowMapper mapper  = getRowMapper(ps, rs);
+        final GetUserCommentsResponse.Builder builder = GetUserCommentsResponse.newBuilder();
+        int rows = rs.getAvailableWithoutFetching();
+        if (rows > 0) {
+            Row row = rs.one();
+            builder.setUserId(GrpcMappingUtils.uuidToUuid(mapper.getUserid(row)));
+            builder.addComments(mapper.mapUserComment(row));
+            for (int i = 1; i < rows; i++) {
+                builder.addComments(mapper.mapUserComment(rs.one()));
+            }
+        }
+        PagingState pagingState = rs.getExecutionInfo().getPagingState();
+        if (pagingState != null) {
+            builder.setPagingState(pagingState.toString());
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Column indices are resolved with the first result set of each prepared statement.
+     */
+    private CommentRowMapper getRowMapper(PreparedStatement ps, ResultSet rs) {
+        CommentRowMapper mapper = rowMappers.get(ps);
+        if (mapper == null) {
+            mapper = rowMappers.computeIfAbsent(ps, key -> new CommentRowMapper(rs.getColumnDefinitions()));
+        }
+        return mapper;
+    }
+    
     /**
      * This statement is dynamic this is the reason why it is not implemented as a
      * {@link PreparedStatement} but simple {@link BoundStatement}.
@@ -0,0 +1,115 @@
+package com.killrvideo.service.comment.dao;
+
+import static com.killrvideo.service.comment.dto.Comment.COLUMN_COMMENT;
+import static com.killrvideo.service.comment.dto.Comment.COLUMN_COMMENTID;
+import static com.killrvideo.service.comment.dto.Comment.COLUMN_USERID;
+import static com.killrvideo.service.comment.dto.Comment.COLUMN_VIDEOID;
+
+import java.util.UUID;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.protobuf.Timestamp;
+
+import killrvideo.comments.CommentsServiceOuterClass.UserComment;
+import killrvideo.comments.CommentsServiceOuterClass.VideoComment;
+import killrvideo.common.CommonTypes.TimeUuid;
+import killrvideo.common.CommonTypes.Uuid;
+
+/**
+ * Map rows of 'comments_by_video' and 'comments_by_user' straight to the GRPC messages. Column indices are
+ * resolved once from the {@link ColumnDefinitions} of a prepared statement and rows are then read by index,
+ * no intermediate bean is created. The comment date is decoded from the TimeUUID instead of calling
+ * 'toTimestamp()' in CQL.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class CommentRowMapper {
+
+    /** Indices of columns in the rows. */
+    private final int idxUserid;
+    private final int idxVideoid;
+    private final int idxCommentid;
+    private final int idxComment;
+
+    /**
+     * Resolve indices of expected columns.
+     *
+     * @param columns
+     *      metadata of the result set of a prepared statement
+     */
+    public CommentRowMapper(ColumnDefinitions columns) {
+        this.idxUserid    = columns.getIndexOf(COLUMN_USERID);
+        this.idxVideoid   = columns.getIndexOf(COLUMN_VIDEOID);
+        this.idxCommentid = columns.getIndexOf(COLUMN_COMMENTID);
+        this.idxComment   = columns.getIndexOf(COLUMN_COMMENT);
+    }
+
+    /**
+     * Map a row of 'comments_by_video'.
+     *
+     * @param row
+     *      current row
+     * @return
+     *      GRPC comment
+     */
+    public VideoComment mapVideoComment(Row row) {
+        UUID commentid = row.getUUID(idxCommentid);
+        return VideoComment.newBuilder()
+                .setCommentId(TimeUuid.newBuilder().setValue(commentid.toString()))
+                .setUserId(Uuid.newBuilder().setValue(row.getUUID(idxUserid).toString()))
+                .setComment(row.getString(idxComment))
+                .setCommentTimestamp(timeUuidToTimestamp(commentid))
+                .build();
+    }
+
+    /**
+     * Map a row of 'comments_by_user'.
+     *
+     * @param row
+     *      current row
+     * @return
+     *      GRPC comment
+     */
+    public UserComment mapUserComment(Row row) {
+        UUID commentid = row.getUUID(idxCommentid);
+        return UserComment.newBuilder()
+                .setCommentId(TimeUuid.newBuilder().setValue(commentid.toString()))
+                .setVideoId(Uuid.newBuilder().setValue(row.getUUID(idxVideoid).toString()))
+                .setComment(row.getString(idxComment))
+                .setCommentTimestamp(timeUuidToTimestamp(commentid))
+                .build();
+    }
+
+    /**
+     * Read user identifier of a row.
+     */
+    public UUID getUserid(Row row) {
+        return row.getUUID(idxUserid);
+    }
+
+    /**
+     * Read video identifier of a row.
+     */
+    public UUID getVideoid(Row row) {
+        return row.getUUID(idxVideoid);
+    }
+
+    /**
+     * Same value as CQL 'toTimestamp(commentid)' (millisecond precision).
+     *
+     * @param timeUuid
+     *      time based uuid
+     * @return
+     *      protobuf timestamp
+     */
+    public static Timestamp timeUuidToTimestamp(UUID timeUuid) {
+        long millis = UUIDs.unixTimestamp(timeUuid);
+        return Timestamp.newBuilder()
+                .setSeconds(Math.floorDiv(millis, 1000L))
+                .setNanos((int) Math.floorMod(millis, 1000L) * 1000000)
+                .build();
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.killrvideo.service.comment.dto;
+
+import java.util.UUID;
+
+import com.killrvideo.dse.dto.AbstractEntity;
+
+/**
+ * Progress of a purge of all comments made by a user. Persisted in table 'comments_purge_checkpoints'
+ * each time a batch of deletes has been acknowledged so that an interrupted purge can restart
+ * after the last deleted comment instead of reading the whole partition (and its tombstones) again.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class CommentPurgeCheckpoint extends AbstractEntity {
+
+    /** Serial. */
+    private static final long serialVersionUID = -3218745092318864210L;
+
+    /** Column names in the DB. */
+    public static final String COLUMN_USERID          = "userid";
+    public static final String COLUMN_LAST_COMMENTID  = "last_commentid";
+    public static final String COLUMN_DELETED         = "deleted";
+
+    /** User whose comments are purged. */
+    private UUID userid;
+
+    /** Last comment deleted (comments_by_user is ordered by commentid DESC). */
+    private UUID lastCommentid;
+
+    /** Number of comments deleted so far, including previous runs. */
+    private long deleted;
+
+    /** Whether the partition has been fully consumed. */
+    private boolean completed;
+
+    /**
+     * Default constructor.
+     */
+    public CommentPurgeCheckpoint() {
+    }
+
+    /**
+     * Constructor for a fresh purge.
+     *
+     * @param userid
+     *      user unique identifier
+     */
+    public CommentPurgeCheckpoint(UUID userid) {
+        this.userid = userid;
+    }
+
+    /**
+     * Full constructor.
+     */
+    public CommentPurgeCheckpoint(UUID userid, UUID lastCommentid, long deleted) {
+        this.userid        = userid;
+        this.lastCommentid = lastCommentid;
+        this.deleted       = deleted;
+    }
+
+    /**
+     * Move the checkpoint forward once a batch of deletes has been acknowledged.
+     *
+     * @param commentid
+     *      last comment deleted in the batch
+     * @param count
+     *      number of comments deleted in the batch
+     */
+    public void advance(UUID commentid, long count) {
+        if (count > 0) {
+            this.lastCommentid = commentid;
+            this.deleted += count;
+        }
+    }
+
+    /**
+     * Getter for attribute 'userid'.
+     *
+     * @return
+     *       current value of 'userid'
+     */
+    public UUID getUserid() {
+        return userid;
+    }
+
+    /**
+     * Setter for attribute 'userid'.
+     * @param userid
+     * 		new value for 'userid '
+     */
+    public void setUserid(UUID userid) {
+        this.userid = userid;
+    }
+
+    /**
+     * Getter for attribute 'lastCommentid'.
+     *
+     * @return
+     *       current value of 'lastCommentid'
+     */
+    public UUID getLastCommentid() {
+        return lastCommentid;
+    }
+
+    /**
+     * Setter for attribute 'lastCommentid'.
+     * @param lastCommentid
+     * 		new value for 'lastCommentid '
+     */
+    public void setLastCommentid(UUID lastCommentid) {
+        this.lastCommentid = lastCommentid;
+    }
+
+    /**
+     * Getter for attribute 'deleted'.
+     *
+     * @return
+     *       current value of 'deleted'
+     */
+    public long getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Setter for attribute 'deleted'.
+     * @param deleted
+     * 		new value for 'deleted '
+     */
+    public void setDeleted(long deleted) {
+        this.deleted = deleted;
+    }
+
+    /**
+     * Getter for attribute 'completed'.
+     *
+     * @return
+     *       current value of 'completed'
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Setter for attribute 'completed'.
+     * @param completed
+     * 		new value for 'completed '
+     */
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+
+}
@@ -1,16 +1,17 @@
 package com.killrvideo.service.comment.grpc;
 
-import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcMapper.mapFromDseUserCommentToGrpcResponse;
-import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcMapper.mapFromDseVideoCommentToGrpcResponse;
+import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcMapper.mapFromDsePurgeCheckpointToGrpcProgress;
 import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcMapper.mapFromGrpcUserCommentToDseQuery;
 import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcMapper.mapFromGrpcVideoCommentToDseQuery;
 import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcMapper.validateGrpcRequest_GetUserComments;
 import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcValidator.validateGrpcRequestCommentOnVideo;
 import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcValidator.validateGrpcRequestGetVideoComment;
+import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcValidator.validateGrpcRequestPurgeUserComments;
 import static java.util.UUID.fromString;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
@@ -27,6 +28,7 @@ import com.killrvideo.service.comment.dto.QueryCommentByVideo;
 import com.killrvideo.utils.GrpcMappingUtils;
 
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import killrvideo.comments.CommentsServiceGrpc.CommentsServiceImplBase;
 import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
@@ -35,6 +37,8 @@ import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsResponse;
 import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsResponse;
+import killrvideo.comments.CommentsServiceOuterClass.PurgeUserCommentsProgress;
+import killrvideo.comments.CommentsServiceOuterClass.PurgeUserCommentsRequest;
 import killrvideo.comments.events.CommentsEvents.UserCommentedOnVideo;
 
 /**
@@ -119,10 +123,10 @@ public class CommentsServiceGrpc extends CommentsServiceImplBase {
         QueryCommentByVideo query = mapFromGrpcVideoCommentToDseQuery(grpcReq);
              
         // ASYNCHRONOUS works with ComputableFuture
-        dseCommentDao.findCommentsByVideosIdAsync(query).whenComplete((result, error) -> {
+        dseCommentDao.findVideoCommentsAsync(query).whenComplete((result, error) -> {
             if (result != null) {
                 traceSuccess( "getVideoComments", starts);
-                responseObserver.onNext(mapFromDseVideoCommentToGrpcResponse(result));
+                responseObserver.onNext(result);
                 responseObserver.onCompleted();
             } else if (error != null){
                 traceError("getVideoComments", starts, error);
@@ -149,10 +153,10 @@ public class CommentsServiceGrpc extends CommentsServiceImplBase {
         }
        
         // ASYNCHRONOUS works with ComputableFuture
-        dseCommentDao.findCommentsByUserIdAsync(query).whenComplete((result, error) -> {
+        dseCommentDao.findUserCommentsAsync(query).whenComplete((result, error) -> {
             if (result != null) {
                 traceSuccess("getUserComments", starts);
-                responseObserver.onNext(mapFromDseUserCommentToGrpcResponse(result));
+                responseObserver.onNext(result);
                 responseObserver.onCompleted();
             } else if (error != null){
                 traceError("getUserComments", starts, error);
@@ -162,6 +166,40 @@ public class CommentsServiceGrpc extends CommentsServiceImplBase {
         });
     }
     
+    /** {@inheritDoc} */
+    @Override
+    public void purgeUserComments(final PurgeUserCommentsRequest grpcReq, StreamObserver<PurgeUserCommentsProgress> responseObserver) {
+        
+        // GRPC Parameters Validation
+        validateGrpcRequestPurgeUserComments(LOGGER, grpcReq, responseObserver);
+        
+        // Stands as stopwatch for logging and messaging 
+        final Instant starts = Instant.now();
+        final UUID    userId = fromString(grpcReq.getUserId().getValue());
+        
+        // The purge goes on (and keeps checkpointing) even if the caller disconnects
+        final ServerCallStreamObserver<PurgeUserCommentsProgress> serverObserver = 
+                (ServerCallStreamObserver<PurgeUserCommentsProgress>) responseObserver;
+        dseCommentDao.purgeUserCommentsAsync(userId, grpcReq.getMaxConcurrency(), grpcReq.getMaxDeletesPerSecond(), checkpoint -> {
+            if (!serverObserver.isCancelled()) {
+                serverObserver.onNext(mapFromDsePurgeCheckpointToGrpcProgress(checkpoint));
+            }
+        }).whenComplete((result, error) -> {
+            if (error != null) {
+                traceError("purgeUserComments", starts, error);
+                messagingDao.sendErrorEvent(getServiceKey(), error);
+                if (!serverObserver.isCancelled()) {
+                    serverObserver.onError(Status.INTERNAL.withCause(error).asRuntimeException());
+                }
+            } else {
+                traceSuccess("purgeUserComments", starts);
+                if (!serverObserver.isCancelled()) {
+                    serverObserver.onCompleted();
+                }
+            }
+        });
+    }
+    
     /**
      * Utility to TRACE.
      *
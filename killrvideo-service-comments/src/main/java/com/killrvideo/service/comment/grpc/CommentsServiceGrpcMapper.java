@@ -4,7 +4,6 @@ import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcValidator.i
 import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcValidator.notEmpty;
 import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcValidator.positive;
 import static com.killrvideo.service.comment.grpc.CommentsServiceGrpcValidator.validate;
-import static com.killrvideo.utils.GrpcMappingUtils.dateToTimestamp;
 import static com.killrvideo.utils.GrpcMappingUtils.uuidToTimeUuid;
 import static com.killrvideo.utils.GrpcMappingUtils.uuidToUuid;
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -15,18 +14,15 @@ import java.util.UUID;
 import org.slf4j.Logger;
 import org.springframework.util.Assert;
 
-import com.killrvideo.dse.dto.ResultListPage;
-import com.killrvideo.service.comment.dto.Comment;
+import com.killrvideo.service.comment.dto.CommentPurgeCheckpoint;
 import com.killrvideo.service.comment.dto.QueryCommentByUser;
 import com.killrvideo.service.comment.dto.QueryCommentByVideo;
 
 import io.grpc.stub.StreamObserver;
-import killrvideo.comments.CommentsServiceOuterClass;
 import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsRequest;
-import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsResponse;
 import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsRequest;
-import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsResponse;
+import killrvideo.comments.CommentsServiceOuterClass.PurgeUserCommentsProgress;
 
 /**
  * Validation of inputs and mapping
@@ -128,38 +124,6 @@ public class CommentsServiceGrpcMapper {
         return targetQuery;
     }
     
-    // Map from CommentDseDao response bean to expected GRPC object.
-    public static GetVideoCommentsResponse mapFromDseVideoCommentToGrpcResponse(ResultListPage<Comment> dseRes) {
-        final GetVideoCommentsResponse.Builder builder = GetVideoCommentsResponse.newBuilder();
-        for (Comment c : dseRes.getResults()) {
-           builder.setVideoId(uuidToUuid(c.getVideoid()));
-           builder.addComments(CommentsServiceOuterClass.VideoComment.newBuilder()
-                  .setComment(c.getComment())
-                  .setUserId(uuidToUuid(c.getUserid()))
-                  .setCommentId(uuidToTimeUuid(c.getCommentid()))
-                  .setCommentTimestamp(dateToTimestamp(c.getDateOfComment()))
-                  .build());
-        }
-        dseRes.getPagingState().ifPresent(builder::setPagingState);
-        return builder.build();
-    }
-    
-    // Map from CommentDseDao response bean to expected GRPC object.
-    public static GetUserCommentsResponse mapFromDseUserCommentToGrpcResponse(ResultListPage<Comment> dseRes) {
-        final GetUserCommentsResponse.Builder builder = GetUserCommentsResponse.newBuilder();
-        for (Comment c : dseRes.getResults()) {
-           builder.setUserId(uuidToUuid(c.getUserid()));
-           builder.addComments(CommentsServiceOuterClass.UserComment.newBuilder()
-                   .setComment(c.getComment())
-                   .setCommentId(uuidToTimeUuid(c.getCommentid()))
-                   .setVideoId(uuidToUuid(c.getVideoid()))
-                   .setCommentTimestamp(dateToTimestamp(c.getDateOfComment()))
-                   .build());
-        }
-        dseRes.getPagingState().ifPresent(builder::setPagingState);
-        return builder.build();
-    }
-    
     /**
      * Utility from exposition to Dse query.
      * 
@@ -180,4 +144,16 @@ public class CommentsServiceGrpcMapper {
         return targetQuery;
     }
 
+    // Map from CommentDseDao purge checkpoint to expected GRPC object.
+    public static PurgeUserCommentsProgress mapFromDsePurgeCheckpointToGrpcProgress(CommentPurgeCheckpoint checkpoint) {
+        final PurgeUserCommentsProgress.Builder builder = PurgeUserCommentsProgress.newBuilder()
+                .setUserId(uuidToUuid(checkpoint.getUserid()))
+                .setDeletedCount(checkpoint.getDeleted())
+                .setCompleted(checkpoint.isCompleted());
+        if (checkpoint.getLastCommentid() != null) {
+            builder.setLastCommentId(uuidToTimeUuid(checkpoint.getLastCommentid()));
+        }
+        return builder.build();
+    }
+
 }
@@ -10,6 +10,7 @@ import io.grpc.stub.StreamObserver;
 import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsRequest;
+import killrvideo.comments.CommentsServiceOuterClass.PurgeUserCommentsRequest;
 
 /**
  * GRPC Requests Validation Utility class : Implements controls before use request and throw
@@ -87,6 +88,25 @@ public class CommentsServiceGrpcValidator {
         Assert.isTrue(validate(logger, streamObserver, errorMessage, isValid), "Invalid parameter for 'getUserComments'");
     }
     
+    /**
+     * Validate purge user comments query.
+     * 
+     * @param request
+     *      current GRPC Request
+     * @param streamObserver
+     *      response async
+     * @return
+     *      true if the query is valid
+     */
+    public static void validateGrpcRequestPurgeUserComments(Logger logger, PurgeUserCommentsRequest request, StreamObserver<?> streamObserver) {
+        final StringBuilder errorMessage = initErrorString(request);
+        boolean isValid = 
+                  notEmpty(!request.hasUserId() || isBlank(request.getUserId().getValue()),  "userId",  "purge request",errorMessage) &&
+                  positive(request.getMaxConcurrency() < 0,  "max concurrency",  "purge request",errorMessage) &&
+                  positive(request.getMaxDeletesPerSecond() < 0,  "max deletes per second",  "purge request",errorMessage);
+        Assert.isTrue(validate(logger, streamObserver, errorMessage, isValid), "Invalid parameter for 'purgeUserComments'");
+    }
+    
     /**
      * Init error builder.
      *  
@@ -0,0 +1,296 @@
+package com.killrvideo.service.search.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.killrvideo.dse.dao.DseDaoSupport;
+import com.killrvideo.dse.dto.ResultListPage;
+import com.killrvideo.dse.dto.Video;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+import com.killrvideo.service.search.index.EmbeddedSearchIndex;
+
+/**
+ * Search videos with a local index instead of DSE Search (dev, CI, small deployments, no remote round trip).
+ *
+ * Index is loaded from segment files in 'killrvideo.search.embedded.directory'. Until a scan of table 'videos' has
+ * completed (marker in 'index.properties') it is built with that scan, a scan interrupted by a restart is done again.
+ * It is then updated with 'YouTubeVideoAdded' events. New videos are flushed periodically, each successful flush
+ * saves a watermark: at startup videos added to 'latest_videos' since the watermark (minus a margin) are indexed,
+ * events missed while the node was down are not lost.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Repository
+public class EmbeddedSearchBackend extends DseDaoSupport implements SearchBackend {
+
+    /** Logger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(EmbeddedSearchBackend.class);
+
+    @Value("${killrvideo.search.backend: dse}")
+    private String backend;
+
+    @Value("${killrvideo.search.embedded.directory: /tmp/killrvideo-search-index}")
+    private String directory;
+
+    @Value("${killrvideo.search.embedded.flushSeconds: 10}")
+    private long flushSeconds;
+
+    @Value("${killrvideo.search.embedded.maxSegments: 10}")
+    private int maxSegments;
+
+    /** Events received out of order or late are still caught up. */
+    @Value("${killrvideo.search.embedded.catchUpMarginHours: 24}")
+    private long catchUpMarginHours;
+
+    /** Progress of the index, saved next to segments. */
+    private static final String STATE_FILE         = "index.properties";
+    private static final String STATE_BOOTSTRAPPED = "bootstrapped";
+    private static final String STATE_WATERMARK    = "watermark";
+
+    /** Scan of table 'videos' completed. */
+    private volatile boolean bootstrapped;
+
+    /** Videos received before this time (epoch millis) are written to segments. */
+    private volatile long watermark;
+
+    /** Local index, null when DSE Search is used. */
+    private EmbeddedSearchIndex index;
+
+    /** Bootstrap, flushes and merges (single thread, required by index). */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Default constructor.
+     */
+    public EmbeddedSearchBackend() {
+        super();
+    }
+
+    /**
+     * Allow explicit intialization for test purpose.
+     */
+    public EmbeddedSearchBackend(DseSession dseSession) {
+        super(dseSession);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void initialize() {
+        if (!BACKEND_EMBEDDED.equalsIgnoreCase(backend)) {
+            return;
+        }
+        try {
+            index = new EmbeddedSearchIndex(Paths.get(directory));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open search index in " + directory, e);
+        }
+        loadState();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+        if (!bootstrapped) {
+            scheduler.submit(this::loadFromVideosTable);
+        } else {
+            scheduler.submit(this::catchUpFromLatestVideos);
+        }
+        long period = Math.max(1, flushSeconds);
+        scheduler.scheduleWithFixedDelay(this::flushAndMerge, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Write pending videos before leaving.
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+                long top = System.currentTimeMillis();
+                index.flush();
+                if (bootstrapped) {
+                    watermark = top;
+                    saveState();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                LOGGER.error("Cannot flush search index", e);
+            }
+        }
+    }
+
+    /**
+     * Tell if this backend is in use.
+     *
+     * @return
+     *      true if searches use the local index
+     */
+    public boolean isEnabled() {
+        return index != null;
+    }
+
+    /**
+     * Add a video to the index.
+     *
+     * @param video
+     *      new video
+     */
+    public void indexVideo(Video video) {
+        if (index != null) {
+            index.add(video);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<ResultListPage<Video>> searchVideosAsync(String query, int fetchSize, Optional<String> pagingState) {
+        int offset = 0;
+        if (pagingState.isPresent()) {
+            try {
+                offset = Math.max(0, Integer.parseInt(pagingState.get()));
+            } catch (NumberFormatException e) {
+                CompletableFuture<ResultListPage<Video>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IllegalArgumentException("Invalid paging state " + pagingState.get()));
+                return failed;
+            }
+        }
+        return CompletableFuture.completedFuture(index.search(query, offset, fetchSize));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Map<String, Long>> getTagFacetsAsync(String query, int limit) {
+        return CompletableFuture.completedFuture(index.facetTags(query, limit));
+    }
+
+    /**
+     * Build index from the catalog, videos already indexed by a previous attempt are skipped.
+     */
+    private void loadFromVideosTable() {
+        long top = System.currentTimeMillis();
+        try {
+            Mapper<Video> mapperVideo = mappingManager.mapper(Video.class);
+            Statement scan = QueryBuilder.select().all().from(KILLRVIDEO_KEYSPACE, Video.TABLENAME_VIDEOS)
+                    .setFetchSize(1000)
+                    .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            for (Video video : mapperVideo.map(dseSession.execute(scan))) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                index.add(video);
+            }
+            index.flush();
+            bootstrapped = true;
+            watermark    = top;
+            saveState();
+            LOGGER.info("Search index built with {} videos in {} millis", index.size(), System.currentTimeMillis() - top);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Cannot build search index from table videos, scan is done again at next startup", e);
+        }
+    }
+
+    /**
+     * Index videos added since the watermark, day buckets of 'latest_videos' hold ids, rows of 'videos' the text.
+     */
+    private void catchUpFromLatestVideos() {
+        long top = System.currentTimeMillis();
+        try {
+            Mapper<Video> mapperVideo = mappingManager.mapper(Video.class);
+            Date since = new Date(watermark - TimeUnit.HOURS.toMillis(Math.max(0, catchUpMarginHours)));
+            long added = 0;
+            for (UUID videoid : LatestVideosScan.videoIdsSince(dseSession, KILLRVIDEO_KEYSPACE, since)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                if (!index.contains(videoid) && index.add(mapperVideo.get(videoid))) {
+                    added++;
+                }
+            }
+            index.flush();
+            watermark = top;
+            saveState();
+            LOGGER.info("Search index caught up with {} videos added since {} in {} millis", 
+                    added, since, System.currentTimeMillis() - top);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Cannot catch up search index from table latest_videos", e);
+        }
+    }
+
+    /**
+     * Scheduled executor stops on first exception.
+     */
+    private void flushAndMerge() {
+        long top = System.currentTimeMillis();
+        try {
+            index.flush();
+            index.mergeIfNeeded(maxSegments);
+            if (bootstrapped) {
+                // Before the end of bootstrap the next startup scans again anyway
+                watermark = top;
+                saveState();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Cannot write search index segments, pending videos are written by next flush", e);
+        }
+    }
+
+    /**
+     * Read bootstrap marker and watermark, none when index is new.
+     */
+    private void loadState() {
+        Path file = Paths.get(directory).resolve(STATE_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            state.load(in);
+            watermark    = Long.parseLong(state.getProperty(STATE_WATERMARK, "0"));
+            bootstrapped = Boolean.parseBoolean(state.getProperty(STATE_BOOTSTRAPPED)) && watermark > 0;
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Cannot read {}, search index is built again from table videos", file, e);
+            bootstrapped = false;
+        }
+    }
+
+    /**
+     * Write state to a temporary file then rename it, a crash never leaves a partial file.
+     */
+    private void saveState() throws IOException {
+        Path file = Paths.get(directory).resolve(STATE_FILE);
+        Path tmp  = file.resolveSibling(STATE_FILE + ".tmp");
+        Properties state = new Properties();
+        state.setProperty(STATE_BOOTSTRAPPED, String.valueOf(bootstrapped));
+        state.setProperty(STATE_WATERMARK, String.valueOf(watermark));
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            state.store(out, "KillrVideo search index");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.killrvideo.service.search.dao;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Read ids of videos added since a date from table 'latest_videos' (one partition per day), used by local
+ * indexes to catch up videos added while the node was down.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+final class LatestVideosScan {
+
+    /** Table written by video catalog. */
+    private static final String TABLENAME_LATEST_VIDEOS = "latest_videos";
+
+    /** Buckets of table 'latest_videos', same format and zone as video catalog. */
+    private static final DateTimeFormatter YYYYMMDD = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /** Hide constructor for utility class. */
+    private LatestVideosScan() {}
+
+    /**
+     * Videos added since a date, day buckets from that date to today.
+     *
+     * @param dseSession
+     *      session
+     * @param keyspace
+     *      killrvideo keyspace
+     * @param since
+     *      lower bound (inclusive) of 'added_date'
+     * @return
+     *      video ids, latest day last
+     */
+    static List<UUID> videoIdsSince(DseSession dseSession, String keyspace, Date since) {
+        List<UUID> videoIds = new ArrayList<>();
+        LocalDate  today    = LocalDate.now(ZoneId.systemDefault());
+        for (LocalDate day = Instant.ofEpochMilli(since.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+                !day.isAfter(today); day = day.plusDays(1)) {
+            Statement bucket = QueryBuilder.select(Video.COLUMN_VIDEOID)
+                    .from(keyspace, TABLENAME_LATEST_VIDEOS)
+                    .where(QueryBuilder.eq("yyyymmdd", day.format(YYYYMMDD)))
+                    .and(QueryBuilder.gte(Video.COLUMN_ADDED_DATE, since))
+                    .setFetchSize(1000)
+                    .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            for (Row row : dseSession.execute(bucket)) {
+                videoIds.add(row.getUUID(Video.COLUMN_VIDEOID));
+            }
+        }
+        return videoIds;
+    }
+
+}
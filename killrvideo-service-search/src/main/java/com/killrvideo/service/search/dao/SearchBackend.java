@@ -0,0 +1,48 @@
+package com.killrvideo.service.search.dao;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import com.killrvideo.dse.dto.ResultListPage;
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Engine executing video searches behind {@link SearchDseDao}: DSE Search (default) or the embedded index.
+ * Selected with 'killrvideo.search.backend'.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public interface SearchBackend {
+
+    /** Values for 'killrvideo.search.backend'. */
+    String BACKEND_DSE      = "dse";
+    String BACKEND_EMBEDDED = "embedded";
+
+    /**
+     * Search videos by name, tags and description.
+     *
+     * @param query
+     *      normalized query
+     * @param fetchSize
+     *      page size
+     * @param pagingState
+     *      paging state returned with previous page, specific to the backend
+     * @return
+     *      page of videos
+     */
+    CompletableFuture < ResultListPage<Video> > searchVideosAsync(String query, int fetchSize, Optional<String> pagingState);
+
+    /**
+     * Count matching videos by tag, on the whole result (not only a page).
+     *
+     * @param query
+     *      normalized query
+     * @param limit
+     *      number of tags
+     * @return
+     *      tags with their count, by decreasing count
+     */
+    CompletableFuture < Map<String, Long> > getTagFacetsAsync(String query, int limit);
+
+}
@@ -1,17 +1,34 @@
 package com.killrvideo.service.search.dao;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
@@ -22,13 +39,19 @@ import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
+import com.datastax.driver.core.SimpleStatement;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.mapping.Mapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.reflect.TypeToken;
 import com.killrvideo.dse.dao.DseDaoSupport;
 import com.killrvideo.dse.dto.ResultListPage;
 import com.killrvideo.dse.dto.Video;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
 import com.killrvideo.utils.FutureUtils;
 
 /**
@@ -50,6 +73,8 @@ public class SearchDseDao extends DseDaoSupport {
     
     private PreparedStatement findVideosByTags;
     
+    private PreparedStatement findAllVideosTerms;
+    
     /**
      * Create a set of sentence conjunctions and other "undesirable"
      * words we will use later to exclude from search results.
@@ -59,13 +84,68 @@ public class SearchDseDao extends DseDaoSupport {
     @Value("#{'${killrvideo.search.ignoredWords}'.split(',')}")
     private Set<String> ignoredWords = new HashSet<>();
    
+    /** Ignored words in a compact immutable set (built from 'ignoredWords'). */
+    private Set<String> stopWords;
+    
+    @Value("${killrvideo.search.parsedQueries.maxSize: 10000}")
+    private long parsedQueriesMaxSize;
+    
+    /** Rendered Solr queries by normalized query. */
+    private Cache < String, SolrSearchQuery > parsedQueries;
+    
+    /** Engine executing searches, DSE Search by default. */
+    @Value("${killrvideo.search.backend: dse}")
+    private String searchBackendName;
+    
+    @Autowired
+    private EmbeddedSearchBackend embeddedSearchBackend;
+    
+    private SearchBackend searchBackend;
+    
+    /** DSE Search (solr_query) is only queried with backend 'dse', embedded backend does not require it. */
+    private boolean solrEnabled;
+    
+    @Value("${killrvideo.search.cache.enabled: true}")
+    private boolean searchCacheEnabled;
+    
+    @Value("${killrvideo.search.cache.maxSize: 10000}")
+    private long searchCacheMaxSize;
+    
+    @Value("${killrvideo.search.cache.ttlSeconds: 30}")
+    private long searchCacheTtlSeconds;
+    
     /**
-     * Wrap search queries with "paging":"driver" to dynamically enable
-     * paging to ensure we pull back all available results in the application.
-     * https://docs.datastax.com/en/dse/6.0/cql/cql/cql_using/search_index/cursorsDeepPaging.html#cursorsDeepPaging__using-paging-with-cql-solr-queries-solrquery-Rim2GsbY
+     * Pages of search results, the future is cached (not the page) so that concurrent
+     * requests for the same head query share a single Solr query.
      */
-    final private String pagingDriverStart = "{\"q\":\"";
-    final private String pagingDriverEnd = "\", \"paging\":\"driver\"}";
+    private Cache < SearchCacheKey, CompletableFuture < ResultListPage<Video> > > searchCache;
+    
+    /** Tag counts by normalized query and limit, same size and TTL as results. */
+    private Cache < String, CompletableFuture < Map<String, Long> > > tagFacetsCache;
+    
+    /** Facet queries return a pseudo column 'facet_fields', metadata are not known at prepare time. */
+    private String facetQueryCql;
+    
+    /** Parse facet results. */
+    private static final ObjectMapper JSON = new ObjectMapper();
+    
+    @Value("${killrvideo.search.suggestions.index.enabled: true}")
+    private boolean suggestionIndexEnabled;
+    
+    @Value("${killrvideo.search.suggestions.index.topK: 20}")
+    private int suggestionIndexTopK;
+    
+    /** Terms of video names and tags, weighted by number of videos. */
+    private SuggestionTrie suggestionTrie;
+    
+    /** Videos already counted in the trie (initial scan and events overlap). */
+    private Set<UUID> suggestionIndexedVideos;
+    
+    /** Solr is used until initial scan is done. */
+    private volatile boolean suggestionIndexReady = false;
+    
+    /** Initial scan. */
+    private ExecutorService suggestionIndexLoader;
     
     /**
      * Default constructor.
@@ -90,18 +170,157 @@ public class SearchDseDao extends DseDaoSupport {
         String keyspaceVideo   = mapperVideo.getTableMetadata().getKeyspace().getName();
         String tableNameVideo  = mapperVideo.getTableMetadata().getName();
         
-        // Statement for tags
-    	findSuggestedTags = dseSession.prepare(QueryBuilder
-                	        .select("name", "tags", "description")
-                            .from(keyspaceVideo, tableNameVideo)
-                            .where(QueryBuilder.eq("solr_query", QueryBuilder.bindMarker())));
-        findSuggestedTags.setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+        // Preparing a 'solr_query' statement fails without a search index on the table
+        solrEnabled = !SearchBackend.BACKEND_EMBEDDED.equalsIgnoreCase(searchBackendName);
+        if (solrEnabled) {
+            // Statement for tags
+        	findSuggestedTags = dseSession.prepare(QueryBuilder
+                    	        .select("name", "tags", "description")
+                                .from(keyspaceVideo, tableNameVideo)
+                                .where(QueryBuilder.eq("solr_query", QueryBuilder.bindMarker())));
+            findSuggestedTags.setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            
+            // Statement for videos
+            findVideosByTags = dseSession.prepare(QueryBuilder
+                     		 .select().all().from(keyspaceVideo, tableNameVideo)
+                     		 .where(QueryBuilder.eq("solr_query", QueryBuilder.bindMarker())));
+            findVideosByTags.setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            facetQueryCql = "SELECT * FROM " + keyspaceVideo + "." + tableNameVideo + " WHERE " + SOLR_QUERY + " = ?";
+        }
+        
+        // Field initializer has not run yet when initialized from test constructor
+        ImmutableSet.Builder<String> stopWordsBuilder = ImmutableSet.builder();
+        if (ignoredWords != null) {
+            ignoredWords.stream()
+                        .map(word -> word.trim().toLowerCase(Locale.ROOT))
+                        .filter(word -> !word.isEmpty())
+                        .forEach(stopWordsBuilder::add);
+        }
+        stopWords     = stopWordsBuilder.build();
+        parsedQueries = CacheBuilder.newBuilder().maximumSize(Math.max(1, parsedQueriesMaxSize)).build();
         
-        // Statement for videos
-        findVideosByTags = dseSession.prepare(QueryBuilder
-                 		 .select().all().from(keyspaceVideo, tableNameVideo)
-                 		 .where(QueryBuilder.eq("solr_query", QueryBuilder.bindMarker())));
-        findVideosByTags.setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+        if (!solrEnabled) {
+            searchBackend = embeddedSearchBackend;
+        } else {
+            searchBackend = new SearchBackend() {
+                @Override
+                public CompletableFuture<ResultListPage<Video>> searchVideosAsync(String query, int fetchSize, Optional<String> pagingState) {
+                    return executeSearchVideosAsync(query, fetchSize, pagingState);
+                }
+                @Override
+                public CompletableFuture<Map<String, Long>> getTagFacetsAsync(String query, int limit) {
+                    return executeTagFacetsAsync(query, limit);
+                }
+            };
+        }
+        LOGGER.info("Videos are searched with backend '{}'", searchBackendName);
+        
+        searchCache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, searchCacheMaxSize))
+                .expireAfterWrite(Math.max(1, searchCacheTtlSeconds), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        tagFacetsCache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, searchCacheMaxSize))
+                .expireAfterWrite(Math.max(1, searchCacheTtlSeconds), TimeUnit.SECONDS)
+                .build();
+        
+        // Statement to build suggestion index
+        findAllVideosTerms = dseSession.prepare(QueryBuilder
+                .select(Video.COLUMN_VIDEOID, Video.COLUMN_NAME, Video.COLUMN_TAGS)
+                .from(keyspaceVideo, tableNameVideo));
+        findAllVideosTerms.setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+        
+        suggestionTrie          = new SuggestionTrie(Math.max(1, suggestionIndexTopK));
+        suggestionIndexedVideos = ConcurrentHashMap.newKeySet();
+        if (!solrEnabled && !suggestionIndexEnabled) {
+            LOGGER.warn("Suggestion index is disabled and DSE Search is not used, no query suggestion will be returned");
+        }
+        if (suggestionIndexEnabled) {
+            suggestionIndexLoader = Executors.newSingleThreadExecutor(new KillrVideoThreadFactory());
+            suggestionIndexLoader.submit(this::loadSuggestionIndex);
+        }
+    }
+    
+    /**
+     * Stop loading of index.
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (suggestionIndexLoader != null) {
+            suggestionIndexLoader.shutdownNow();
+        }
+    }
+    
+    /**
+     * Scan videos to build the suggestion index, events received meanwhile are indexed as well.
+     */
+    private void loadSuggestionIndex() {
+        long top = System.currentTimeMillis();
+        try {
+            BoundStatement scan = findAllVideosTerms.bind();
+            scan.setFetchSize(1000);
+            long videos = 0;
+            for (Row row : dseSession.execute(scan)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                indexVideoSuggestions(row.getUUID(Video.COLUMN_VIDEOID), 
+                        row.getString(Video.COLUMN_NAME), 
+                        row.getSet(Video.COLUMN_TAGS, String.class));
+                videos++;
+            }
+            suggestionIndexReady = true;
+            LOGGER.info("Suggestion index loaded with {} terms from {} videos in {} millis", 
+                    suggestionTrie.size(), videos, System.currentTimeMillis() - top);
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot load suggestion index, suggestions will use {}", 
+                    solrEnabled ? "DSE Search" : "videos indexed from events only", e);
+        }
+    }
+    
+    /**
+     * Add terms of a video to suggestion index (each distinct term adds 1 to its weight).
+     *
+     * @param videoid
+     *      video unique identifier, a video is indexed once
+     * @param name
+     *      video name
+     * @param tags
+     *      video tags
+     */
+    public void indexVideoSuggestions(UUID videoid, String name, Collection<String> tags) {
+        if (!suggestionIndexEnabled || videoid == null || !suggestionIndexedVideos.add(videoid)) {
+            return;
+        }
+        Set<String> terms = new HashSet<>();
+        addSuggestionTerms(name, terms);
+        if (tags != null) {
+            tags.forEach(tag -> addSuggestionTerms(tag, terms));
+        }
+        terms.forEach(term -> suggestionTrie.add(term, 1));
+    }
+    
+    /**
+     * Split text into lowercase words, as the regex of {@link #mapTagSet(ResultSet, String)}, without ignored words.
+     */
+    private void addSuggestionTerms(String text, Set<String> terms) {
+        if (text == null) {
+            return;
+        }
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (!word.isEmpty() && !stopWords.contains(word)) {
+                terms.add(word);
+            }
+        }
+    }
+    
+    /**
+     * Suggestions are served from the index when loaded, single words only. Without DSE Search the index
+     * is always used, even partially loaded.
+     */
+    private boolean useSuggestionIndex(String normalizedQuery) {
+        return (suggestionIndexReady || !solrEnabled) && normalizedQuery.indexOf(' ') < 0;
     }
     
     /**
@@ -115,9 +334,138 @@ public class SearchDseDao extends DseDaoSupport {
      * https://docs.datastax.com/en/dse/5.1/dse-dev/datastax_enterprise/search/cursorsDeepPaging.html#cursorsDeepPaging__srchCursorCQL
      */
     public CompletableFuture < ResultListPage<Video> > searchVideosAsync(String query, int fetchSize, Optional<String> pagingState) {
-    	return FutureUtils.asCompletableFuture(dseSession.executeAsync(
-    	        createStatementToSearchVideos(query, fetchSize, pagingState)))
-    	        .thenApply(rs -> new ResultListPage<Video>(rs, mapperVideo));
+        // Same string is used for the key and for Solr: a paging state is only valid for the query which produced it
+        final String normalizedQuery = normalizeQuery(query);
+        if (!searchCacheEnabled) {
+            return searchBackend.searchVideosAsync(normalizedQuery, fetchSize, pagingState);
+        }
+        final SearchCacheKey key = new SearchCacheKey(normalizedQuery, fetchSize, pagingState.orElse(null));
+        try {
+            // Loader only creates the future, other callers of the same key wait for it and share the result
+            return searchCache.get(key, () -> {
+                CompletableFuture < ResultListPage<Video> > future = searchBackend.searchVideosAsync(normalizedQuery, fetchSize, pagingState);
+                future.whenComplete((page, error) -> {
+                    if (error != null) {
+                        // Do not cache failures
+                        searchCache.asMap().remove(key, future);
+                    }
+                });
+                return future;
+            });
+        } catch (ExecutionException e) {
+            CompletableFuture < ResultListPage<Video> > failed = new CompletableFuture<>();
+            failed.completeExceptionally(e.getCause());
+            return failed;
+        }
+    }
+    
+    /**
+     * Execute search against DSE Search (no cache), default {@link SearchBackend}.
+     */
+    private CompletableFuture < ResultListPage<Video> > executeSearchVideosAsync(String query, int fetchSize, Optional<String> pagingState) {
+        SolrSearchQuery parsedQuery = parseQuery(query);
+        if (parsedQuery.isEmpty()) {
+            return CompletableFuture.completedFuture(new ResultListPage<Video>());
+        }
+        return FutureUtils.asCompletableFuture(dseSession.executeAsync(
+                createStatementToSearchVideos(parsedQuery, fetchSize, pagingState)))
+                .thenApply(rs -> new ResultListPage<Video>(rs, mapperVideo));
+    }
+    
+    /**
+     * Count videos matching a query by tag (whole result, not a page). Cached as results of searches.
+     *
+     * @param query
+     *      query typed by user
+     * @param limit
+     *      number of tags
+     * @return
+     *      tags with their count, by decreasing count
+     */
+    public CompletableFuture < Map<String, Long> > getTagFacetsAsync(String query, int limit) {
+        final String normalizedQuery = normalizeQuery(query);
+        if (!searchCacheEnabled) {
+            return searchBackend.getTagFacetsAsync(normalizedQuery, limit);
+        }
+        final String key = limit + "|" + normalizedQuery;
+        try {
+            return tagFacetsCache.get(key, () -> {
+                CompletableFuture < Map<String, Long> > future = searchBackend.getTagFacetsAsync(normalizedQuery, limit);
+                future.whenComplete((facets, error) -> {
+                    if (error != null) {
+                        tagFacetsCache.asMap().remove(key, future);
+                    }
+                });
+                return future;
+            });
+        } catch (ExecutionException e) {
+            CompletableFuture < Map<String, Long> > failed = new CompletableFuture<>();
+            failed.completeExceptionally(e.getCause());
+            return failed;
+        }
+    }
+    
+    /**
+     * Solr facet query on tags (DSE Search backend).
+     */
+    private CompletableFuture < Map<String, Long> > executeTagFacetsAsync(String query, int limit) {
+        SolrSearchQuery parsedQuery = parseQuery(query);
+        if (parsedQuery.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        SimpleStatement stmt = new SimpleStatement(facetQueryCql, parsedQuery.getTagFacetsSolrQuery(limit));
+        stmt.setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+        return FutureUtils.asCompletableFuture(dseSession.executeAsync(stmt)).thenApply(this::mapTagFacets);
+    }
+    
+    /**
+     * Facet result is a single row, column 'facet_fields' holds '{"tags":{"tag1":count1,...}}' sorted by count.
+     */
+    private Map<String, Long> mapTagFacets(ResultSet rs) {
+        Map<String, Long> facets = new LinkedHashMap<>();
+        Row row = rs.one();
+        if (row == null || !row.getColumnDefinitions().contains("facet_fields") || row.isNull("facet_fields")) {
+            return facets;
+        }
+        try {
+            JSON.readTree(row.getString("facet_fields")).path(Video.COLUMN_TAGS).fields()
+                .forEachRemaining(tag -> facets.put(tag.getKey(), tag.getValue().asLong()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse tag facets", e);
+        }
+        return facets;
+    }
+    
+    /**
+     * Queries differing only by case or spacing return the same videos, use a single form for them.
+     *
+     * @param query
+     *      query typed by user
+     * @return
+     *      trimmed, lowercase query with single spaces
+     */
+    public static String normalizeQuery(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Suggestions of a prefix precomputed by the index, a lookup for more terms walks the whole subtree.
+     *
+     * @return
+     *      top-K of suggestion index
+     */
+    public int getSuggestionIndexTopK() {
+        return Math.max(1, suggestionIndexTopK);
+    }
+    
+    /**
+     * Hit rate and size of the search results cache, for monitoring.
+     *
+     * @return
+     *      cache statistics
+     */
+    public String getSearchCacheStats() {
+        return searchCache.stats().toString() + ", size=" + searchCache.size();
     }
     
     /**
@@ -133,7 +481,14 @@ public class SearchDseDao extends DseDaoSupport {
      * 		result
      */
     public ResultListPage<Video> searchVideos(String query, int fetchSize, Optional<String> pagingState) {
-    	BoundStatement stmt = createStatementToSearchVideos(query, fetchSize, pagingState);
+        if (!solrEnabled) {
+            return searchBackend.searchVideosAsync(normalizeQuery(query), fetchSize, pagingState).join();
+        }
+        SolrSearchQuery parsedQuery = parseQuery(query);
+        if (parsedQuery.isEmpty()) {
+            return new ResultListPage<Video>();
+        }
+    	BoundStatement stmt = createStatementToSearchVideos(parsedQuery, fetchSize, pagingState);
     	return new ResultListPage<Video>(dseSession.execute(stmt), mapperVideo);
     }
     
@@ -145,15 +500,14 @@ public class SearchDseDao extends DseDaoSupport {
      * Notice the "paging":"driver" parameter.  This is to ensure we dynamically
      * enable pagination regardless of our nodes dse.yaml setting.
      * https://docs.datastax.com/en/dse/5.1/dse-dev/datastax_enterprise/search/cursorsDeepPaging.html#cursorsDeepPaging__srchCursorCQL
+     * 
+     * User input is escaped (see {@link SolrSearchQuery#getSuggestionsSolrQuery(String)}).
      */
     private BoundStatement createStatementToQuerySuggestions(String query, int fetchSize) {
         
-        final StringBuilder solrQuery = new StringBuilder();
-        solrQuery.append("{\"q\":\"search_suggestions:");
-        solrQuery.append(query);
-        solrQuery.append("*\", \"paging\":\"driver\"}");
+        final String solrQuery = SolrSearchQuery.getSuggestionsSolrQuery(query);
 
-        BoundStatement stmt = findSuggestedTags.bind().setString("solr_query", solrQuery.toString());
+        BoundStatement stmt = findSuggestedTags.bind().setString("solr_query", solrQuery);
         stmt.setFetchSize(fetchSize);
         LOGGER.debug("getQuerySuggestions: {} with solr_query: {}", stmt.preparedStatement().getQueryString(), solrQuery);
         return stmt;
@@ -167,10 +521,19 @@ public class SearchDseDao extends DseDaoSupport {
      * @param fetchSize
      * 		numbner of results to retrieve
      * @return
+     *      suggestions, most popular first (alphabetical when served by DSE Search, empty for several words
+     *      without DSE Search)
      */
-    public TreeSet< String > getQuerySuggestions(String query, int fetchSize) {
+    public List< String > getQuerySuggestions(String query, int fetchSize) {
+        String normalizedQuery = normalizeQuery(query);
+        if (useSuggestionIndex(normalizedQuery)) {
+            return suggestionTrie.suggest(normalizedQuery, fetchSize);
+        }
+        if (!solrEnabled) {
+            return Collections.emptyList();
+        }
     	BoundStatement stmt = createStatementToQuerySuggestions(query, fetchSize);
-    	return mapTagSet(dseSession.execute(stmt), query);
+    	return new ArrayList<>(mapTagSet(dseSession.execute(stmt), query));
     }
     
     /**
@@ -181,11 +544,20 @@ public class SearchDseDao extends DseDaoSupport {
      * @param fetchSize
      * 		numbner of results to retrieve
      * @return
+     *      suggestions, most popular first (alphabetical when served by DSE Search, empty for several words
+     *      without DSE Search)
      */
-    public CompletableFuture < TreeSet< String > > getQuerySuggestionsAsync(String query, int fetchSize) {
+    public CompletableFuture < List< String > > getQuerySuggestionsAsync(String query, int fetchSize) {
+        String normalizedQuery = normalizeQuery(query);
+        if (useSuggestionIndex(normalizedQuery)) {
+            return CompletableFuture.completedFuture(suggestionTrie.suggest(normalizedQuery, fetchSize));
+        }
+        if (!solrEnabled) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
     	BoundStatement stmt = createStatementToQuerySuggestions(query, fetchSize);
         ResultSetFuture resultSetFuture = dseSession.executeAsync(stmt);
-        return FutureUtils.asCompletableFuture(resultSetFuture).thenApplyAsync(rs -> mapTagSet(rs, query));
+        return FutureUtils.asCompletableFuture(resultSetFuture).thenApplyAsync(rs -> new ArrayList<>(mapTagSet(rs, query)));
     }
      
     /**
@@ -204,7 +576,7 @@ public class SearchDseDao extends DseDaoSupport {
      */
     @SuppressWarnings("serial")
 	private TreeSet < String > mapTagSet(ResultSet rs, String requestQuery) {
-        final Pattern checkRegex = Pattern.compile("(?i)\\b" + requestQuery + "[a-z]*\\b");
+        final Pattern checkRegex = Pattern.compile("(?i)\\b" + Pattern.quote(requestQuery.trim()) + "[a-z]*\\b");
         TreeSet< String > suggestionSet = new TreeSet<>();
     	for (Row row : rs) {
     		/**
@@ -218,7 +590,7 @@ public class SearchDseDao extends DseDaoSupport {
             while (regexMatcher.find()) {
                 suggestionSet.add(regexMatcher.group().toLowerCase());
             }
-            suggestionSet.removeAll(ignoredWords);
+            suggestionSet.removeAll(stopWords);
     	}
     	 LOGGER.debug("TagSet resturned are {}", suggestionSet); 
     	return suggestionSet;
@@ -235,46 +607,74 @@ public class SearchDseDao extends DseDaoSupport {
      * across the other fields for similar occurrences.  This is especially helpful
      * if there are no tags for a given video as it is more likely to give us results.
      */
-    private BoundStatement createStatementToSearchVideos(String query, int fetchSize, Optional<String> pagingState) {
+    private BoundStatement createStatementToSearchVideos(SolrSearchQuery query, int fetchSize, Optional<String> pagingState) {
         LOGGER.debug("Start searching videos by name, tag, and description");
-        // Escaping special characters for query
-    	final String replaceFind = " ";
-        final String replaceWith = " AND ";
-        /**
-         * Perform a query using DSE search to find videos. Query the
-         * name, tags, and description columns in the videos table giving a boost to matches in the name and tags
-         * columns as opposed to the description column.
-         */
-        String requestQuery = query.trim()
-                                   .replaceAll(replaceFind, Matcher.quoteReplacement(replaceWith));
-        
         /**
-         * In this case we are using DSE Search to query across the name, tags, and
-         * description columns with a boost on name and tags.  The boost will put
-         * more priority on the name column, then tags, and finally description.
-         *
-         * Note that tags is a
-         * collection of tags per each row with no extra steps to include all data
-         * in the collection.  This is a more comprehensive search as
-         * we are not just looking at values within the tags column, but also looking
-         * across the other columns for similar occurrences.  This is especially helpful
-         * if there are no tags for a given video as it is more likely to give us results.
+         * The boost will put more priority on the name column, then tags, and finally description.
+         * User input is escaped by the parsed query and cannot change the structure of the query.
          *
          * Refer to the following documentation for a deeper look at term boosting:
          * https://docs.datastax.com/en/dse/6.0/cql/cql/cql_using/search_index/advancedTerms.html
          */
-        final StringBuilder solrQuery = new StringBuilder()
-                .append(pagingDriverStart)
-                .append("name:(").append(requestQuery).append("*)^4 OR ")
-                .append("tags:(").append(requestQuery).append("*)^2 OR ")
-                .append("description:(").append(requestQuery).append("*)")
-                .append(pagingDriverEnd);
-        
-        BoundStatement stmt = findVideosByTags.bind().setString("solr_query", solrQuery.toString());
+        BoundStatement stmt = findVideosByTags.bind().setString("solr_query", query.getSolrQuery());
         pagingState.ifPresent( x -> stmt.setPagingState(PagingState.fromString(x)));
         stmt.setFetchSize(fetchSize);
-        LOGGER.debug("Executed query is {} with solr_query: {}", stmt.preparedStatement().getQueryString(),solrQuery);
+        LOGGER.debug("Executed query is {} with solr_query: {}", stmt.preparedStatement().getQueryString(), query);
         return stmt;
     }
+    
+    /**
+     * Parsing and rendering are done once per normalized query.
+     *
+     * @param query
+     *      query typed by user
+     * @return
+     *      parsed query
+     */
+    public SolrSearchQuery parseQuery(String query) {
+        final String normalizedQuery = normalizeQuery(query);
+        try {
+            return parsedQueries.get(normalizedQuery, () -> SolrSearchQuery.parse(normalizedQuery, stopWords));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cannot parse query " + normalizedQuery, e.getCause());
+        }
+    }
+    
+    /**
+     * Key of the search results cache.
+     */
+    private static final class SearchCacheKey {
+        
+        private final String query;
+        private final int    fetchSize;
+        private final String pagingState;
+        
+        private SearchCacheKey(String query, int fetchSize, String pagingState) {
+            this.query       = query;
+            this.fetchSize   = fetchSize;
+            this.pagingState = pagingState;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SearchCacheKey)) {
+                return false;
+            }
+            SearchCacheKey other = (SearchCacheKey) o;
+            return fetchSize == other.fetchSize
+                    && query.equals(other.query)
+                    && Objects.equals(pagingState, other.pagingState);
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, fetchSize, pagingState);
+        }
+    }
   
 }
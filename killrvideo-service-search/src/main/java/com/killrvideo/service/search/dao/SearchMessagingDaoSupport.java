@@ -0,0 +1,50 @@
+package com.killrvideo.service.search.dao;
+
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.killrvideo.dse.dto.Video;
+import com.killrvideo.service.search.grpc.SearchServiceGrpcMapper;
+
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+
+/**
+ * Message processing for search service, keeping local indexes up to date.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public abstract class SearchMessagingDaoSupport {
+    
+    /** Loger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(SearchMessagingDaoSupport.class);
+    
+    @Autowired
+    protected SearchDseDao searchDseDao;
+    
+    @Autowired
+    protected EmbeddedSearchBackend embeddedSearchBackend;
+    
+    @Autowired
+    protected TagIndexDao tagIndexDao;
+    
+    /**
+     * Message is consumed from specialized class but treatment is the same, updating indexes.
+     * 
+     * @param videoAdded
+     *      a video has been created
+     */
+    protected void onYoutubeVideoAddingMessage(YouTubeVideoAdded videoAdded) {
+        UUID videoId = UUID.fromString(videoAdded.getVideoId().getValue());
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("[NewVideoEvent] Indexing video {} for search", videoId);
+        }
+        searchDseDao.indexVideoSuggestions(videoId, videoAdded.getName(), videoAdded.getTagsList());
+        Video video = SearchServiceGrpcMapper.mapVideoAddedToVideo(videoAdded);
+        embeddedSearchBackend.indexVideo(video);
+        tagIndexDao.indexVideo(videoId, video.getAddedDate(), videoAdded.getTagsList());
+    }
+    
+}
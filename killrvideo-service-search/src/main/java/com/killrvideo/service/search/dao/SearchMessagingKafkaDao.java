@@ -0,0 +1,70 @@
+package com.killrvideo.service.search.dao;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.killrvideo.conf.KillrVideoConfiguration;
+import com.killrvideo.messaging.dao.KafkaConsumerLoop;
+import com.killrvideo.messaging.dao.KafkaConsumerRuntime;
+
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+
+/**
+ * Consume video creations with a dedicated consumer group: every search node must see every
+ * video to keep its local indexes complete.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Repository("killrvideo.search.dao.messaging")
+@Profile(KillrVideoConfiguration.PROFILE_MESSAGING_KAFKA)
+public class SearchMessagingKafkaDao extends SearchMessagingDaoSupport {
+    
+    /** Loger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(SearchMessagingKafkaDao.class);
+    
+    @Value("${killrvideo.messaging.destination.youTubeVideoAdded : topic-kv-videoCreation}")
+    private String topicVideoCreated;
+    
+    @Autowired
+    @Qualifier("kafka.consumer.videoCreating.search")
+    private KafkaConsumer<String, byte[]> consumerVideoCreatedProtobuf;
+    
+    @Autowired
+    private KafkaConsumerRuntime kafkaConsumerRuntime;
+    
+    /** Poll loop, consumer is not thread safe and used by its thread only. */
+    private KafkaConsumerLoop videoCreatedLoop;
+    
+    @PostConstruct
+    public void registerConsumerYoutubeVideoAdded() {
+        videoCreatedLoop = kafkaConsumerRuntime.start(consumerVideoCreatedProtobuf, topicVideoCreated, 
+                record -> parseYoutubeVideoAddedMessage(record.value()));
+    }
+    
+    /**
+     * Stop poll loop.
+     */
+    @PreDestroy
+    public void stopConsumers() {
+        videoCreatedLoop.stop();
+    }
+    
+    private void parseYoutubeVideoAddedMessage(byte[] payload) {
+        try {
+            super.onYoutubeVideoAddingMessage(YouTubeVideoAdded.parseFrom(payload));
+        } catch (InvalidProtocolBufferException e) {
+            LOGGER.error("Cannot parse message expecting object " + YouTubeVideoAdded.class.getName(), e);
+        }   
+    }
+    
+}
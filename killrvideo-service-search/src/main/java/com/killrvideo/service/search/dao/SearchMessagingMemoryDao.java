@@ -0,0 +1,42 @@
+package com.killrvideo.service.search.dao;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.killrvideo.conf.KillrVideoConfiguration;
+
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+
+/**
+ * With Guava subscription is done with annotation Subscribe. Event are sent in the 
+ * bus and correct method is invoked based on the event type (classname). 
+ * 
+ * @author DataStax Developer Advocates team.
+ */
+@Repository("killrvideo.search.dao.messaging")
+@Profile(KillrVideoConfiguration.PROFILE_MESSAGING_MEMORY)
+public class SearchMessagingMemoryDao extends SearchMessagingDaoSupport {
+    
+    @Autowired
+    private EventBus eventBus;
+    
+    /**
+     * Subscribe to the bus.
+     */
+    @PostConstruct
+    public void registerSubscriber() {
+        eventBus.register(this);
+    }
+    
+    /** {@inheritDoc} */
+    @Subscribe
+    public void onYoutubeVideoAddingMessage(YouTubeVideoAdded youTubeVideoAdded) {
+        super.onYoutubeVideoAddingMessage(youTubeVideoAdded);
+    }
+    
+}
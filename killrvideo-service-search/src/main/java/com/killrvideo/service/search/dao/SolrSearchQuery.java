@@ -0,0 +1,202 @@
+package com.killrvideo.service.search.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * User query parsed once into terms and rendered as a 'solr_query' value.
+ *
+ * - terms are separated by whitespace, Solr special chars are escaped (a term is never an operator or a wildcard)
+ * - terms without letter or digit are dropped, as are ignored words unless the query only contains ignored words
+ * - number of terms is bounded, the last term is a prefix only if long enough
+ * - rendered value is a JSON object, quotes and backslashes are escaped accordingly
+ *
+ * Immutable, instances are cached per normalized query.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class SolrSearchQuery {
+
+    /** Above this, terms are ignored (cost of query grows with the number of clauses). */
+    public static final int MAX_TERMS = 8;
+
+    /** Prefix queries on 1 char expand to a large part of the dictionary. */
+    public static final int MIN_PREFIX_LENGTH = 2;
+
+    /** Chars with a meaning in Lucene query syntax. */
+    private static final String SOLR_SPECIAL_CHARS = "+-&|!(){}[]^\"~*?:\\/";
+
+    /** Terms kept, escaped. */
+    private final List<String> terms;
+
+    /** Lucene query (boosted fields), null if there is no term. */
+    private final String luceneQuery;
+
+    /** Value of 'solr_query', null if there is no term. */
+    private final String solrQuery;
+
+    /**
+     * Use {@link #parse(String, Set)}.
+     */
+    private SolrSearchQuery(List<String> terms, boolean lastIsPrefix) {
+        this.terms       = Collections.unmodifiableList(terms);
+        this.luceneQuery = terms.isEmpty() ? null : render(terms, lastIsPrefix);
+        this.solrQuery   = terms.isEmpty() ? null : "{\"q\":\"" + jsonEscape(luceneQuery) + "\", \"paging\":\"driver\"}";
+    }
+
+    /**
+     * Parse a query.
+     *
+     * @param query
+     *      query typed by user
+     * @param ignoredWords
+     *      lowercase words to drop
+     * @return
+     *      parsed query
+     */
+    public static SolrSearchQuery parse(String query, Set<String> ignoredWords) {
+        List<String> words = new ArrayList<>();
+        List<String> kept  = new ArrayList<>();
+        if (query != null) {
+            for (String word : query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+                if (hasLetterOrDigit(word)) {
+                    words.add(word);
+                    if (!ignoredWords.contains(word)) {
+                        kept.add(word);
+                    }
+                }
+            }
+        }
+        if (kept.isEmpty()) {
+            // Only ignored words (eg: 'video'), search them anyway
+            kept = words;
+        }
+        if (kept.size() > MAX_TERMS) {
+            kept = kept.subList(0, MAX_TERMS);
+        }
+        List<String> escaped = new ArrayList<>(kept.size());
+        kept.forEach(word -> escaped.add(escape(word)));
+        boolean lastIsPrefix = !kept.isEmpty() && kept.get(kept.size() - 1).length() >= MIN_PREFIX_LENGTH;
+        return new SolrSearchQuery(escaped, lastIsPrefix);
+    }
+
+    /**
+     * Escape Solr special chars with a backslash, control chars are removed.
+     *
+     * @param word
+     *      raw word
+     * @return
+     *      literal for Solr
+     */
+    public static String escape(String word) {
+        StringBuilder sb = new StringBuilder(word.length() + 4);
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (Character.isISOControl(c)) {
+                continue;
+            }
+            if (SOLR_SPECIAL_CHARS.indexOf(c) >= 0) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Value of 'solr_query' for suggestions (DSE Search fallback of the suggestion index): words of the query typed
+     * so far, escaped (whitespace included, the query is a single prefix) and followed by a wildcard.
+     *
+     * @param query
+     *      query typed by user
+     * @return
+     *      suggestions query
+     */
+    public static String getSuggestionsSolrQuery(String query) {
+        StringBuilder prefix = new StringBuilder();
+        for (String word : query.trim().split("\\s+")) {
+            prefix.append(prefix.length() == 0 ? "" : "\\ ").append(escape(word));
+        }
+        return "{\"q\":\"search_suggestions:" + jsonEscape(prefix.toString()) + "*\", \"paging\":\"driver\"}";
+    }
+
+    /**
+     * Tell if nothing is left to search.
+     *
+     * @return
+     *      true if no term
+     */
+    public boolean isEmpty() {
+        return terms.isEmpty();
+    }
+
+    /**
+     * Getter for attribute 'terms'.
+     *
+     * @return
+     *       escaped terms
+     */
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    /**
+     * Getter for attribute 'solrQuery'.
+     *
+     * @return
+     *       value for 'solr_query' column
+     */
+    public String getSolrQuery() {
+        return solrQuery;
+    }
+
+    /**
+     * Value of 'solr_query' counting matching videos by tag (single row with column 'facet_fields').
+     *
+     * @param limit
+     *      number of tags
+     * @return
+     *      facet query, null if there is no term
+     */
+    public String getTagFacetsSolrQuery(int limit) {
+        if (luceneQuery == null) {
+            return null;
+        }
+        return "{\"q\":\"" + jsonEscape(luceneQuery) + "\", \"facet\":{\"field\":\"tags\", \"limit\":" + limit + ", \"mincount\":1}}";
+    }
+
+    /**
+     * Same boosts as before: name, then tags, then description.
+     * "paging":"driver" (added to search query) enables paging regardless of nodes dse.yaml setting.
+     */
+    private static String render(List<String> terms, boolean lastIsPrefix) {
+        String clause = String.join(" AND ", terms) + (lastIsPrefix ? "*" : "");
+        return "name:(" + clause + ")^4 OR tags:(" + clause + ")^2 OR description:(" + clause + ")";
+    }
+
+    /**
+     * Backslashes added by Solr escaping and quotes must be escaped in the JSON string.
+     */
+    private static String jsonEscape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static boolean hasLetterOrDigit(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isLetterOrDigit(word.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return solrQuery;
+    }
+
+}
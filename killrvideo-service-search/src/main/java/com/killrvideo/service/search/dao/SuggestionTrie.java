@@ -0,0 +1,263 @@
+package com.killrvideo.service.search.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compressed prefix trie (radix tree) of suggestion terms with popularity weights.
+ *
+ * Each node keeps the 'topK' heaviest terms of its subtree, a lookup is a walk along the prefix
+ * followed by a copy of that list: cost depends on the prefix length only, not on the number of terms.
+ * Weights can only grow, which keeps the per-node lists exact without rescanning subtrees.
+ *
+ * Thread safe: single writer, concurrent readers.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class SuggestionTrie {
+
+    /** Number of completions kept per node. */
+    private final int topK;
+
+    /** Root has an empty label. */
+    private final Node root = new Node("");
+
+    /** Lookups are far more frequent than updates. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Number of distinct terms. */
+    private int size = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param topK
+     *      number of completions precomputed per prefix
+     */
+    public SuggestionTrie(int topK) {
+        this.topK = Math.max(1, topK);
+    }
+
+    /**
+     * Add a term or increase its weight.
+     *
+     * @param term
+     *      term (expected normalized, lowercase)
+     * @param delta
+     *      weight to add, strictly positive
+     */
+    public void add(String term, long delta) {
+        if (term == null || term.isEmpty() || delta <= 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            List<Node> path = new ArrayList<>();
+            path.add(root);
+            Node node = root;
+            int   idx = 0;
+            while (idx < term.length()) {
+                char c = term.charAt(idx);
+                Node child = node.children == null ? null : node.children.get(c);
+                if (child == null) {
+                    child = new Node(term.substring(idx));
+                    node.addChild(child);
+                    idx = term.length();
+                } else {
+                    int common = commonPrefixLength(child.label, term, idx);
+                    if (common < child.label.length()) {
+                        child = split(node, child, common);
+                    }
+                    idx += common;
+                }
+                node = child;
+                path.add(node);
+            }
+            if (node.term == null) {
+                node.term = term;
+                size++;
+            }
+            node.weight += delta;
+            for (Node n : path) {
+                n.promote(node, topK);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Heaviest terms starting with prefix.
+     *
+     * @param prefix
+     *      prefix (expected normalized, lowercase)
+     * @param limit
+     *      maximum number of terms
+     * @return
+     *      terms by decreasing weight
+     */
+    public List<String> suggest(String prefix, int limit) {
+        if (prefix == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            Node node = find(prefix);
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            List<Node> candidates = node.top;
+            if (limit > topK) {
+                // Not precomputed, rare (page size bigger than topK)
+                candidates = new ArrayList<>();
+                collect(node, candidates);
+                candidates.sort((n1, n2) -> Long.compare(n2.weight, n1.weight));
+            }
+            List<String> result = new ArrayList<>(Math.min(limit, candidates.size()));
+            for (int i = 0; i < candidates.size() && i < limit; i++) {
+                result.add(candidates.get(i).term);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of distinct terms.
+     *
+     * @return
+     *      size of trie
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Node whose subtree holds all terms starting with prefix.
+     */
+    private Node find(String prefix) {
+        Node node = root;
+        int   idx = 0;
+        while (idx < prefix.length()) {
+            Node child = node.children == null ? null : node.children.get(prefix.charAt(idx));
+            if (child == null) {
+                return null;
+            }
+            int common = commonPrefixLength(child.label, prefix, idx);
+            if (idx + common == prefix.length()) {
+                // Prefix ends on or inside this edge
+                return child;
+            }
+            if (common < child.label.length()) {
+                return null;
+            }
+            idx += common;
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Insert an intermediate node after 'common' chars of the edge to 'child'.
+     */
+    private Node split(Node parent, Node child, int common) {
+        Node middle = new Node(child.label.substring(0, common));
+        child.label = child.label.substring(common);
+        middle.addChild(child);
+        middle.top.addAll(child.top);
+        parent.children.put(middle.label.charAt(0), middle);
+        return middle;
+    }
+
+    /**
+     * All terms of a subtree.
+     */
+    private void collect(Node node, List<Node> terms) {
+        if (node.term != null) {
+            terms.add(node);
+        }
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                collect(child, terms);
+            }
+        }
+    }
+
+    /**
+     * Number of common chars between label and term starting at offset.
+     */
+    private static int commonPrefixLength(String label, String term, int offset) {
+        int max = Math.min(label.length(), term.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == term.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Node of the trie, the label is the edge from parent.
+     */
+    private static final class Node {
+
+        /** Chars of edge from parent. */
+        private String label;
+
+        /** Children by first char of their label, created on first child. */
+        private Map<Character, Node> children;
+
+        /** Term ending here, null for intermediate nodes. */
+        private String term;
+
+        /** Popularity of term. */
+        private long weight;
+
+        /** Heaviest terminal nodes of the subtree, by decreasing weight. */
+        private final List<Node> top = new ArrayList<>(4);
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private void addChild(Node child) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            children.put(child.label.charAt(0), child);
+        }
+
+        /**
+         * Weight of 'terminal' has increased: insert it or move it up.
+         */
+        private void promote(Node terminal, int topK) {
+            int pos = top.indexOf(terminal);
+            if (pos < 0) {
+                if (top.size() < topK) {
+                    top.add(terminal);
+                } else if (terminal.weight > top.get(top.size() - 1).weight) {
+                    top.set(top.size() - 1, terminal);
+                } else {
+                    return;
+                }
+                pos = top.size() - 1;
+            }
+            while (pos > 0 && top.get(pos - 1).weight < terminal.weight) {
+                top.set(pos, top.get(pos - 1));
+                pos--;
+            }
+            top.set(pos, terminal);
+        }
+    }
+
+}
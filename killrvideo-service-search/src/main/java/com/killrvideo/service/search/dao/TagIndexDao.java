@@ -0,0 +1,276 @@
+package com.killrvideo.service.search.dao;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.killrvideo.dse.dao.DseDaoSupport;
+import com.killrvideo.dse.dto.ResultListPage;
+import com.killrvideo.dse.dto.Video;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+import com.killrvideo.service.search.index.TagBitmapIndex;
+import com.killrvideo.utils.FutureUtils;
+
+/**
+ * Browse videos by tag expressions (AND / OR / NOT) with an in-memory bitmap index, no Solr query involved.
+ *
+ * At startup the last snapshot is loaded (queries are served immediately). Until a scan of table 'videos' has
+ * completed once, that scan is done at startup; then only videos added to 'latest_videos' since the snapshot
+ * (minus a margin) are read. Index is updated with 'YouTubeVideoAdded' events and snapshotted periodically.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Repository
+public class TagIndexDao extends DseDaoSupport {
+
+    /** Logger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(TagIndexDao.class);
+
+    @Value("${killrvideo.search.tagIndex.enabled: true}")
+    private boolean enabled;
+
+    @Value("${killrvideo.search.tagIndex.snapshotFile: /tmp/killrvideo-tag-index.bin}")
+    private String snapshotFile;
+
+    @Value("${killrvideo.search.tagIndex.snapshotSeconds: 60}")
+    private long snapshotSeconds;
+
+    /** Events received out of order or late are still caught up. */
+    @Value("${killrvideo.search.tagIndex.catchUpMarginHours: 24}")
+    private long catchUpMarginHours;
+
+    /** Read previews of a page. */
+    private Mapper<Video> mapperVideo;
+
+    /** Index, null if disabled. */
+    private volatile TagBitmapIndex index;
+
+    /** Scan and snapshots. */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Default constructor.
+     */
+    public TagIndexDao() {
+        super();
+    }
+
+    /**
+     * Allow explicit intialization for test purpose.
+     */
+    public TagIndexDao(DseSession dseSession) {
+        super(dseSession);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void initialize() {
+        if (!enabled) {
+            return;
+        }
+        mapperVideo = mappingManager.mapper(Video.class);
+        Path snapshot = Paths.get(snapshotFile);
+        index = new TagBitmapIndex();
+        if (Files.exists(snapshot)) {
+            try {
+                index = TagBitmapIndex.load(snapshot);
+                LOGGER.info("Tag index loaded from {} with {} videos and {} tags", snapshot, index.size(), index.getTagCount());
+            } catch (IOException e) {
+                LOGGER.warn("Cannot read tag index snapshot {}, index will be rebuilt", snapshot, e);
+            }
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+        if (index.isBootstrapped()) {
+            scheduler.submit(this::catchUpFromLatestVideos);
+        } else {
+            scheduler.submit(this::loadFromVideosTable);
+        }
+        long period = Math.max(1, snapshotSeconds);
+        scheduler.scheduleWithFixedDelay(this::snapshotIfNeeded, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Save index before leaving.
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            snapshotIfNeeded();
+        }
+    }
+
+    /**
+     * Tell if tag index is available.
+     *
+     * @return
+     *      true if enabled
+     */
+    public boolean isEnabled() {
+        return index != null;
+    }
+
+    /**
+     * Add a video to the index.
+     *
+     * @param videoid
+     *      video
+     * @param addedDate
+     *      creation date of video, null if unknown
+     * @param tags
+     *      video tags
+     */
+    public void indexVideo(UUID videoid, Date addedDate, Collection<String> tags) {
+        if (index != null) {
+            index.add(videoid, addedDate == null ? 0 : addedDate.getTime(), tags);
+        }
+    }
+
+    /**
+     * Videos matching a tag expression, latest added first.
+     *
+     * @param allOf
+     *      required tags (AND)
+     * @param anyOf
+     *      alternative tags (OR), ignored if empty
+     * @param noneOf
+     *      excluded tags (NOT)
+     * @param pageSize
+     *      page size
+     * @param pagingState
+     *      paging state returned with previous page
+     * @return
+     *      page of videos
+     */
+    public CompletableFuture < ResultListPage<Video> > browseVideosByTagsAsync(Collection<String> allOf, Collection<String> anyOf,
+            Collection<String> noneOf, int pageSize, Optional<String> pagingState) {
+        TagBitmapIndex.Cursor cursor;
+        try {
+            cursor = pagingState.map(TagBitmapIndex.Cursor::parse).orElse(null);
+        } catch (IllegalArgumentException invalidPagingState) {
+            CompletableFuture<ResultListPage<Video>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Invalid paging state " + pagingState.get()));
+            return failed;
+        }
+        TagBitmapIndex.Page page = index.query(
+                TagBitmapIndex.normalizeTags(allOf), TagBitmapIndex.normalizeTags(anyOf),
+                TagBitmapIndex.normalizeTags(noneOf), cursor, pageSize);
+
+        // Previews are read in parallel, single partition reads
+        List<CompletableFuture<Video>> reads = page.getVideoIds().stream()
+                .map(videoid -> FutureUtils.asCompletableFuture(mapperVideo.getAsync(videoid)))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<Video> videos = reads.stream().map(CompletableFuture::join)
+                                      .filter(Objects::nonNull)
+                                      .collect(Collectors.toCollection(ArrayList::new));
+            ResultListPage<Video> result = new ResultListPage<>();
+            result.setresults(videos);
+            result.setPagingState(Optional.ofNullable(page.getNextCursor()).map(String::valueOf));
+            return result;
+        });
+    }
+
+    /**
+     * Add videos missing from the snapshot, scan order does not matter (results are sorted by added date).
+     */
+    private void loadFromVideosTable() {
+        long top = System.currentTimeMillis();
+        int  before = index.size();
+        try {
+            Statement scan = QueryBuilder.select(Video.COLUMN_VIDEOID, Video.COLUMN_ADDED_DATE, Video.COLUMN_TAGS)
+                    .from(KILLRVIDEO_KEYSPACE, Video.TABLENAME_VIDEOS)
+                    .setFetchSize(1000)
+                    .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            for (Row row : dseSession.execute(scan)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                index.add(row.getUUID(Video.COLUMN_VIDEOID), addedDate(row.getTimestamp(Video.COLUMN_ADDED_DATE)),
+                        row.getSet(Video.COLUMN_TAGS, String.class));
+            }
+            index.markBootstrapped();
+            LOGGER.info("Tag index synchronized with table videos: {} videos added, {} total, in {} millis",
+                    index.size() - before, index.size(), System.currentTimeMillis() - top);
+            snapshotIfNeeded();
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot load tag index from table videos, scan is done again at next startup", e);
+        }
+    }
+
+    /**
+     * Add videos created since the snapshot was written.
+     */
+    private void catchUpFromLatestVideos() {
+        long top = System.currentTimeMillis();
+        int  before = index.size();
+        try {
+            Date since = new Date(index.getWatermark() - TimeUnit.HOURS.toMillis(Math.max(0, catchUpMarginHours)));
+            for (UUID videoid : LatestVideosScan.videoIdsSince(dseSession, KILLRVIDEO_KEYSPACE, since)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                if (!index.contains(videoid)) {
+                    Video video = mapperVideo.get(videoid);
+                    if (video != null) {
+                        index.add(videoid, addedDate(video.getAddedDate()), video.getTags());
+                    }
+                }
+            }
+            LOGGER.info("Tag index caught up with table latest_videos since {}: {} videos added, {} total, in {} millis",
+                    since, index.size() - before, index.size(), System.currentTimeMillis() - top);
+            // Even unchanged, the snapshot moves the watermark forward
+            writeSnapshot();
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot catch up tag index from table latest_videos", e);
+        }
+    }
+
+    private static long addedDate(Date addedDate) {
+        return addedDate == null ? 0 : addedDate.getTime();
+    }
+
+    /**
+     * Scheduled executor stops on first exception.
+     */
+    private void snapshotIfNeeded() {
+        if (index != null && index.isDirty()) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() {
+        try {
+            index.snapshot(Paths.get(snapshotFile));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Cannot write tag index snapshot {}", snapshotFile, e);
+        }
+    }
+
+}
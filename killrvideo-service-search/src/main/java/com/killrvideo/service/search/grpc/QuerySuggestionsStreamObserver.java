@@ -0,0 +1,248 @@
+package com.killrvideo.service.search.grpc;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.killrvideo.service.search.dao.SearchDseDao;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import killrvideo.search.SearchServiceOuterClass.GetQuerySuggestionsRequest;
+import killrvideo.search.SearchServiceOuterClass.GetQuerySuggestionsResponse;
+
+/**
+ * Handle one 'StreamQuerySuggestions' call, a typeahead session: the client sends the content of the search box
+ * at each keystroke and receives suggestions for the latest one.
+ *
+ * - debounce: a lookup starts only when no new query came for 'debounceMillis', intermediate queries get no response
+ * - superseded: a new query cancels the pending lookup, the result of a lookup in flight is dropped
+ * - reuse: candidates of last lookup are kept (more than a page), when the user extends the prefix they are filtered
+ *   locally, in their order (most popular first), if they are known to be complete or if enough of them still match.
+ *   Candidates are capped to the top-K precomputed by the suggestion index, a bigger lookup would walk the subtree.
+ *
+ * Each response carries the query it answers, the client ignores responses for a query it does not display anymore.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class QuerySuggestionsStreamObserver implements StreamObserver<GetQuerySuggestionsRequest> {
+
+    /** Loger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(QuerySuggestionsStreamObserver.class);
+
+    /** Dependencies. */
+    private final ServerCallStreamObserver<GetQuerySuggestionsResponse> responseObserver;
+    private final SearchDseDao             searchDseDao;
+    private final ScheduledExecutorService scheduler;
+
+    /** Settings. */
+    private final long debounceMillis;
+    private final int  candidateLimit;
+
+    /** Session state, guarded by 'this'. */
+    private long               sequence = 0;
+    private ScheduledFuture<?> pendingLookup;
+    private CompletableFuture<List<String>> inFlightLookup;
+    private String             candidatePrefix;
+    private List<String>       candidates;
+    private boolean            candidatesComplete;
+    private boolean            inputCompleted = false;
+    private boolean            finished = false;
+
+    /** Counters, logged at the end of the session. */
+    private int queryCounter;
+    private int lookupCounter;
+    private int reuseCounter;
+    private int supersededCounter;
+    private final Instant starts = Instant.now();
+
+    /**
+     * Constructor with dependencies.
+     */
+    public QuerySuggestionsStreamObserver(StreamObserver<GetQuerySuggestionsResponse> responseObserver,
+            SearchDseDao searchDseDao, ScheduledExecutorService scheduler, long debounceMillis, int candidateLimit) {
+        this.responseObserver = (ServerCallStreamObserver<GetQuerySuggestionsResponse>) responseObserver;
+        this.searchDseDao     = searchDseDao;
+        this.scheduler        = scheduler;
+        this.debounceMillis   = Math.max(0, debounceMillis);
+        this.candidateLimit   = Math.max(1, Math.min(candidateLimit, searchDseDao.getSuggestionIndexTopK()));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void onNext(GetQuerySuggestionsRequest request) {
+        if (finished) {
+            return;
+        }
+        if (request.getPageSize() <= 0) {
+            finish();
+            synchronized (responseObserver) {
+                if (!responseObserver.isCancelled()) {
+                    responseObserver.onError(Status.INVALID_ARGUMENT
+                            .withDescription("page size should be strictly positive for query suggestions").asRuntimeException());
+                }
+            }
+            return;
+        }
+        final long seq = ++sequence;
+        queryCounter++;
+        cancelLookups();
+
+        final String normalized = SearchDseDao.normalizeQuery(request.getQuery());
+        if (normalized.isEmpty()) {
+            // Search box cleared
+            send(request, new ArrayList<>());
+            return;
+        }
+        List<String> reused = reuseCandidates(normalized, request.getPageSize());
+        if (reused != null) {
+            reuseCounter++;
+            send(request, reused);
+            return;
+        }
+        pendingLookup = scheduler.schedule(() -> lookup(seq, request, normalized), debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void onError(Throwable t) {
+        // Client cancelled or disconnected, nothing to answer anymore
+        LOGGER.debug("Query suggestions session interrupted by client: {}", t.getMessage());
+        finish();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void onCompleted() {
+        // Last query, if pending, is still answered
+        inputCompleted = true;
+        completeIfDone();
+    }
+
+    /**
+     * Lookup once debounce delay expired, if still the latest query.
+     */
+    private synchronized void lookup(long seq, GetQuerySuggestionsRequest request, String normalized) {
+        if (finished || seq != sequence) {
+            return;
+        }
+        pendingLookup = null;
+        lookupCounter++;
+        CompletableFuture<List<String>> lookup = searchDseDao.getQuerySuggestionsAsync(normalized, candidateLimit);
+        inFlightLookup = lookup;
+        lookup.whenComplete((suggestions, error) -> onLookupCompleted(seq, request, normalized, suggestions, error));
+    }
+
+    /**
+     * Result of a lookup, dropped if a newer query arrived meanwhile.
+     */
+    private synchronized void onLookupCompleted(long seq, GetQuerySuggestionsRequest request, String normalized,
+            List<String> suggestions, Throwable error) {
+        if (finished) {
+            return;
+        }
+        if (seq != sequence) {
+            supersededCounter++;
+            return;
+        }
+        inFlightLookup = null;
+        if (error != null) {
+            // Session goes on, next keystroke will try again
+            LOGGER.warn("Cannot get query suggestions for '{}' : {}", normalized, error.getMessage());
+        } else {
+            candidatePrefix    = normalized;
+            candidates         = suggestions;
+            candidatesComplete = suggestions.size() < candidateLimit;
+            send(request, firstOf(candidates, candidatePrefix, request.getPageSize()));
+        }
+        completeIfDone();
+    }
+
+    /**
+     * Candidates of previous lookup filtered by new query, null if they cannot answer it.
+     */
+    private List<String> reuseCandidates(String normalized, int pageSize) {
+        if (candidates == null || !normalized.startsWith(candidatePrefix)) {
+            return null;
+        }
+        List<String> matching = firstOf(candidates, normalized, pageSize);
+        if (!candidatesComplete && matching.size() < pageSize) {
+            return null;
+        }
+        return matching;
+    }
+
+    /**
+     * Pending lookup will not start, lookup in flight will be ignored.
+     */
+    private void cancelLookups() {
+        if (pendingLookup != null) {
+            pendingLookup.cancel(false);
+            pendingLookup = null;
+        }
+        if (inFlightLookup != null) {
+            inFlightLookup.cancel(false);
+            inFlightLookup = null;
+        }
+    }
+
+    /**
+     * Close the call when the client is done and the last query is answered.
+     */
+    private void completeIfDone() {
+        if (inputCompleted && !finished && pendingLookup == null && inFlightLookup == null) {
+            finish();
+            synchronized (responseObserver) {
+                if (!responseObserver.isCancelled()) {
+                    responseObserver.onCompleted();
+                }
+            }
+        }
+    }
+
+    private void finish() {
+        finished = true;
+        cancelLookups();
+        LOGGER.debug("Query suggestions session ended in {} millis: {} queries, {} lookups, {} served from candidates, {} superseded",
+                Instant.now().toEpochMilli() - starts.toEpochMilli(), queryCounter, lookupCounter, reuseCounter, supersededCounter);
+    }
+
+    /**
+     * Lookups complete on driver threads, the observer is not thread safe.
+     */
+    private void send(GetQuerySuggestionsRequest request, List<String> suggestions) {
+        synchronized (responseObserver) {
+            if (!responseObserver.isCancelled()) {
+                responseObserver.onNext(GetQuerySuggestionsResponse.newBuilder()
+                        .setQuery(request.getQuery())
+                        .addAllSuggestions(suggestions)
+                        .build());
+            }
+        }
+    }
+
+    /**
+     * First suggestions starting with prefix, order of candidates is kept.
+     */
+    private static List<String> firstOf(List<String> suggestions, String prefix, int limit) {
+        List<String> page = new ArrayList<>(Math.min(limit, suggestions.size()));
+        for (String suggestion : suggestions) {
+            if (page.size() >= limit) {
+                break;
+            }
+            if (suggestion.startsWith(prefix)) {
+                page.add(suggestion);
+            }
+        }
+        return page;
+    }
+
+}
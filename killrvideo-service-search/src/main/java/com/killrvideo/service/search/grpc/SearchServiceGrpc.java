@@ -1,13 +1,22 @@
 package com.killrvideo.service.search.grpc;
 
+import static com.killrvideo.service.search.grpc.SearchServiceGrpcValidator.validateGrpcRequest_BrowseVideosByTags;
 import static com.killrvideo.service.search.grpc.SearchServiceGrpcValidator.validateGrpcRequest_GetQuerySuggestions;
 import static com.killrvideo.service.search.grpc.SearchServiceGrpcValidator.validateGrpcRequest_SearchVideos;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -18,11 +27,15 @@ import org.springframework.stereotype.Service;
 
 import com.killrvideo.dse.dto.ResultListPage;
 import com.killrvideo.dse.dto.Video;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
 import com.killrvideo.service.search.dao.SearchDseDao;
+import com.killrvideo.service.search.dao.TagIndexDao;
 
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import killrvideo.search.SearchServiceGrpc.SearchServiceImplBase;
+import killrvideo.search.SearchServiceOuterClass.BrowseVideosByTagsRequest;
+import killrvideo.search.SearchServiceOuterClass.BrowseVideosByTagsResponse;
 import killrvideo.search.SearchServiceOuterClass.GetQuerySuggestionsRequest;
 import killrvideo.search.SearchServiceOuterClass.GetQuerySuggestionsResponse;
 import killrvideo.search.SearchServiceOuterClass.SearchVideosRequest;
@@ -45,6 +58,28 @@ public class SearchServiceGrpc extends SearchServiceImplBase {
     @Autowired
     private SearchDseDao dseSearchDao;
     
+    @Autowired
+    private TagIndexDao tagIndexDao;
+    
+    @Value("${killrvideo.search.suggestions.stream.debounceMillis: 75}")
+    private long suggestionsDebounceMillis;
+    
+    @Value("${killrvideo.search.suggestions.stream.candidates: 20}")
+    private int suggestionsCandidates;
+    
+    /** Debounce timers of typeahead sessions. */
+    private ScheduledExecutorService suggestionsScheduler;
+    
+    @PostConstruct
+    public void initialize() {
+        suggestionsScheduler = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        suggestionsScheduler.shutdownNow();
+    }
+    
     /** {@inheritDoc} */
     @Override
     public void searchVideos(SearchVideosRequest grpcReq, StreamObserver<SearchVideosResponse> grpcResObserver) {
@@ -60,13 +95,19 @@ public class SearchServiceGrpc extends SearchServiceImplBase {
         int              searchPageSize = grpcReq.getPageSize();
         Optional<String> searchPagingState = Optional.ofNullable(grpcReq.getPagingState()).filter(StringUtils::isNotBlank);
         
+        // Tags are counted in parallel with the page, only when requested
+        CompletableFuture<Map<String, Long>> futureFacets = (grpcReq.getTagFacetsLimit() > 0) ?
+                dseSearchDao.getTagFacetsAsync(searchQuery, grpcReq.getTagFacetsLimit()) :
+                CompletableFuture.completedFuture(Collections.emptyMap());
+        
         // Map Result back to GRPC
         dseSearchDao
             .searchVideosAsync(searchQuery, searchPageSize,searchPagingState)
-            .whenComplete((resultPage, error) -> {
+            .thenCombine(futureFacets, (resultPage, facets) -> buildSearchGrpcResponse(resultPage, facets, grpcReq))
+            .whenComplete((response, error) -> {
               if (error == null) {
                   traceSuccess("searchVideos", starts);
-                  grpcResObserver.onNext(buildSearchGrpcResponse(resultPage, grpcReq));
+                  grpcResObserver.onNext(response);
                   grpcResObserver.onCompleted();
                   
                } else {
@@ -76,13 +117,14 @@ public class SearchServiceGrpc extends SearchServiceImplBase {
         });
     }
     
-    private SearchVideosResponse buildSearchGrpcResponse(ResultListPage<Video> resultPage, SearchVideosRequest initialRequest) {
+    private SearchVideosResponse buildSearchGrpcResponse(ResultListPage<Video> resultPage, Map<String, Long> facets, SearchVideosRequest initialRequest) {
         final SearchVideosResponse.Builder builder = SearchVideosResponse.newBuilder();
         builder.setQuery(initialRequest.getQuery());
         resultPage.getPagingState().ifPresent(builder::setPagingState);
         resultPage.getResults().stream()
                   .map(SearchServiceGrpcMapper::maptoResultVideoPreview)
                   .forEach(builder::addVideos);
+        builder.addAllTagFacets(SearchServiceGrpcMapper.mapToTagFacets(facets));
         return builder.build();
     }
 
@@ -101,7 +143,7 @@ public class SearchServiceGrpc extends SearchServiceImplBase {
         int              searchPageSize = grpcReq.getPageSize();
         
         // Invoke Dao (Async)
-        CompletableFuture<TreeSet<String>> futureDao = 
+        CompletableFuture<List<String>> futureDao = 
                 dseSearchDao.getQuerySuggestionsAsync(searchQuery, searchPageSize);
         
         // Mapping back to GRPC beans
@@ -121,6 +163,65 @@ public class SearchServiceGrpc extends SearchServiceImplBase {
         });
     }
     
+    /** {@inheritDoc} */
+    @Override
+    public StreamObserver<GetQuerySuggestionsRequest> streamQuerySuggestions(StreamObserver<GetQuerySuggestionsResponse> grpcResObserver) {
+        return new QuerySuggestionsStreamObserver(grpcResObserver, dseSearchDao, 
+                suggestionsScheduler, suggestionsDebounceMillis, suggestionsCandidates);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void browseVideosByTags(BrowseVideosByTagsRequest grpcReq, StreamObserver<BrowseVideosByTagsResponse> grpcResObserver) {
+        
+        // Validate Parameters
+        validateGrpcRequest_BrowseVideosByTags(LOGGER, grpcReq, grpcResObserver);
+        if (!tagIndexDao.isEnabled()) {
+            grpcResObserver.onError(Status.UNIMPLEMENTED.withDescription("Tag index is disabled").asRuntimeException());
+            return;
+        }
+        
+        // Stands as stopwatch for logging and messaging 
+        final Instant starts = Instant.now();
+        
+        // Mapping GRPC => Domain (Dao)
+        Optional<String> pagingState = Optional.ofNullable(grpcReq.getPagingState()).filter(StringUtils::isNotBlank);
+        
+        // Invoke Dao (Async) and map back to GRPC
+        tagIndexDao
+            .browseVideosByTagsAsync(grpcReq.getAllTagsList(), grpcReq.getAnyTagsList(), grpcReq.getNoneTagsList(), 
+                    grpcReq.getPageSize(), pagingState)
+            .whenComplete((resultPage, error) -> {
+              if (error == null) {
+                  traceSuccess("browseVideosByTags", starts);
+                  final BrowseVideosByTagsResponse.Builder builder = BrowseVideosByTagsResponse.newBuilder();
+                  resultPage.getPagingState().ifPresent(builder::setPagingState);
+                  resultPage.getResults().stream()
+                            .map(SearchServiceGrpcMapper::maptoResultVideoPreview)
+                            .forEach(builder::addVideos);
+                  grpcResObserver.onNext(builder.build());
+                  grpcResObserver.onCompleted();
+              } else if (unwrap(error) instanceof IllegalArgumentException) {
+                  traceError("browseVideosByTags", starts, error);
+                  grpcResObserver.onError(Status.INVALID_ARGUMENT.withDescription(unwrap(error).getMessage()).asRuntimeException());
+              } else {
+                  traceError("browseVideosByTags", starts, error);
+                  grpcResObserver.onError(Status.INTERNAL.withCause(error).asRuntimeException());
+              }
+        });
+    }
+    
+    /**
+     * Error raised by the dao, without the wrapping of the futures.
+     */
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+    
     /**
      * Utility to TRACE.
      *
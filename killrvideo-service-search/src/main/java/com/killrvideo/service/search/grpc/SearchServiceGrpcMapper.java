@@ -1,10 +1,18 @@
 package com.killrvideo.service.search.grpc;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
 import com.killrvideo.dse.dto.Video;
 import com.killrvideo.utils.GrpcMappingUtils;
 
 import killrvideo.search.SearchServiceOuterClass.SearchResultsVideoPreview;
 import killrvideo.search.SearchServiceOuterClass.SearchResultsVideoPreview.Builder;
+import killrvideo.search.SearchServiceOuterClass.TagFacet;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
 
 
 /**
@@ -36,6 +44,33 @@ public class SearchServiceGrpcMapper {
         return builder.build();
     }
     
+    /**
+     * Mapping tag counts to generated GRPC beans, order is kept.
+     */
+    public static List<TagFacet> mapToTagFacets(Map<String, Long> facets) {
+        return facets.entrySet().stream()
+                     .map(e -> TagFacet.newBuilder().setTag(e.getKey()).setCount(e.getValue()).build())
+                     .collect(Collectors.toList());
+    }
+    
+    /**
+     * Mapping from event to the fields indexed and returned by search.
+     */
+    public static Video mapVideoAddedToVideo(YouTubeVideoAdded videoAdded) {
+        Video video = new Video();
+        video.setVideoid(UUID.fromString(videoAdded.getVideoId().getValue()));
+        video.setUserid(UUID.fromString(videoAdded.getUserId().getValue()));
+        video.setName(videoAdded.getName());
+        video.setDescription(videoAdded.getDescription());
+        video.setLocation(videoAdded.getLocation());
+        video.setPreviewImageLocation(videoAdded.getPreviewImageLocation());
+        video.setTags(new HashSet<>(videoAdded.getTagsList()));
+        if (videoAdded.hasAddedDate()) {
+            video.setAddedDate(GrpcMappingUtils.timestampToDate(videoAdded.getAddedDate()));
+        }
+        return video;
+    }
+    
     
     
 
@@ -7,12 +7,21 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 import org.slf4j.Logger;
 import org.springframework.util.Assert;
 
+import com.killrvideo.service.search.index.TagBitmapIndex;
+
 import io.grpc.stub.StreamObserver;
+import killrvideo.search.SearchServiceOuterClass.BrowseVideosByTagsRequest;
 import killrvideo.search.SearchServiceOuterClass.GetQuerySuggestionsRequest;
 import killrvideo.search.SearchServiceOuterClass.SearchVideosRequest;
 
 public class SearchServiceGrpcValidator  {
 
+    /** Maximum number of tags counted for a search. */
+    public static final int MAX_TAG_FACETS = 100;
+
+    /** Maximum number of tags in a browse expression. */
+    public static final int MAX_BROWSE_TAGS = 20;
+
     /**
      * Hide constructor.
      */
@@ -48,9 +57,50 @@ public class SearchServiceGrpcValidator  {
             errorMessage.append("\t\tpage size should be strictly positive for search videos request\n");
             isValid = false;
         }
+        if (request.getTagFacetsLimit() < 0 || request.getTagFacetsLimit() > MAX_TAG_FACETS) {
+            errorMessage.append("\t\ttag facets limit should be between 0 and " + MAX_TAG_FACETS + " for search videos request\n");
+            isValid = false;
+        }
         Assert.isTrue(validate(logger, streamObserver, errorMessage, isValid), "Invalid parameter for 'searchVideos'");
     }
     
+    /**
+     * Validation for browse by tags.
+     */
+    public static void validateGrpcRequest_BrowseVideosByTags(Logger logger, BrowseVideosByTagsRequest request, StreamObserver<?> streamObserver) {
+        final StringBuilder errorMessage = initErrorString(request);
+        boolean isValid = true;
+        if (request.getAllTagsCount() == 0 && request.getAnyTagsCount() == 0) {
+            errorMessage.append("\t\tat least one tag to match should be provided for browse videos by tags request\n");
+            isValid = false;
+        }
+        if (request.getAllTagsCount() + request.getAnyTagsCount() + request.getNoneTagsCount() > MAX_BROWSE_TAGS) {
+            errorMessage.append("\t\tno more than " + MAX_BROWSE_TAGS + " tags should be provided for browse videos by tags request\n");
+            isValid = false;
+        }
+        if (request.getPageSize() <= 0) {
+            errorMessage.append("\t\tpage size should be strictly positive for browse videos by tags request\n");
+            isValid = false;
+        }
+        if (!isBlank(request.getPagingState()) && !isValidCursor(request.getPagingState())) {
+            errorMessage.append("\t\tpaging state is invalid for browse videos by tags request\n");
+            isValid = false;
+        }
+        Assert.isTrue(validate(logger, streamObserver, errorMessage, isValid), "Invalid parameter for 'browseVideosByTags'");
+    }
+    
+    /**
+     * Paging state of browse by tags is a cursor '&lt;added_date millis&gt;_&lt;videoid&gt;'.
+     */
+    private static boolean isValidCursor(String pagingState) {
+        try {
+            TagBitmapIndex.Cursor.parse(pagingState);
+            return true;
+        } catch (IllegalArgumentException invalidCursor) {
+            return false;
+        }
+    }
+    
     
    
     
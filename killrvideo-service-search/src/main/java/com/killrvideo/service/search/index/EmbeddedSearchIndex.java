@@ -0,0 +1,460 @@
+package com.killrvideo.service.search.index;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.killrvideo.dse.dto.ResultListPage;
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Local full-text index of videos, alternative to DSE Search.
+ *
+ * New documents go to a {@link MemorySegment}, flushed to immutable {@link MappedSegment} files, merged into a
+ * single segment when there are too many of them. Queries are scored with BM25 per field, summed with the same
+ * boosts as the Solr query (name^4, tags^2, description): all terms are required, the last one is a prefix.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class EmbeddedSearchIndex {
+
+    /** Loger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(EmbeddedSearchIndex.class);
+
+    /** Boosts by field, see {@link IndexSegment#FIELD_NAME}. */
+    private static final float[] BOOSTS = {4f, 2f, 1f};
+
+    /** BM25 parameters. */
+    private static final float K1 = 1.2f;
+    private static final float B  = 0.75f;
+
+    /** Segments files. */
+    private static final String SEGMENT_PREFIX    = "segment-";
+    private static final String SEGMENT_EXTENSION = ".kvs";
+
+    /** Location of segments. */
+    private final Path directory;
+
+    /** Protect segments lists (documents themselves are immutable or guarded by the same lock). */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Segments on disk, oldest first. */
+    private List<MappedSegment> segments = new ArrayList<>();
+
+    /** Segment being written to disk, still searchable. */
+    private MemorySegment flushing;
+
+    /** New documents. */
+    private MemorySegment buffer = new MemorySegment();
+
+    /** Indexed videos, a video is indexed once. */
+    private final Set<UUID> indexedVideos = ConcurrentHashMap.newKeySet();
+
+    /** Number for next segment file. */
+    private long nextSegmentNumber = 0;
+
+    /**
+     * Open index, segments already present in directory are loaded. A video is indexed once, so a segment whose
+     * videos are all in newer segments is a source of a merge interrupted before its files were deleted: the
+     * merged segment already holds its documents, it is deleted.
+     *
+     * @param directory
+     *      folder of segments, created if needed
+     * @throws IOException
+     *      folder cannot be read
+     */
+    public EmbeddedSearchIndex(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_EXTENSION)) {
+            stream.forEach(files::add);
+        }
+        // Newest first, merged segments are newer than their sources
+        files.sort(Collections.reverseOrder());
+        for (Path file : files) {
+            nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(file) + 1);
+            MappedSegment segment = MappedSegment.open(file);
+            boolean merged = segment.getDocumentCount() > 0;
+            for (int docId = 0; docId < segment.getDocumentCount(); docId++) {
+                merged &= indexedVideos.contains(segment.getVideoId(docId));
+            }
+            if (merged) {
+                LOGGER.warn("Search index segment {} already merged, deleting it", file);
+                Files.deleteIfExists(file);
+                continue;
+            }
+            for (int docId = 0; docId < segment.getDocumentCount(); docId++) {
+                indexedVideos.add(segment.getVideoId(docId));
+            }
+            segments.add(0, segment);
+        }
+        LOGGER.info("Search index opened in {} with {} segments and {} videos", directory, segments.size(), indexedVideos.size());
+    }
+
+    /**
+     * Index a video.
+     *
+     * @param video
+     *      video with name, tags and description
+     * @return
+     *      false if video was already indexed
+     */
+    public boolean add(Video video) {
+        if (video == null || video.getVideoid() == null || !indexedVideos.add(video.getVideoid())) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            buffer.add(video);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Number of videos not yet written to disk.
+     *
+     * @return
+     *      pending documents
+     */
+    public int getPendingCount() {
+        lock.readLock().lock();
+        try {
+            return buffer.getDocumentCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tell if a video is indexed (on disk or pending).
+     *
+     * @param videoid
+     *      video unique identifier
+     * @return
+     *      true if video was added
+     */
+    public boolean contains(UUID videoid) {
+        return indexedVideos.contains(videoid);
+    }
+
+    /**
+     * Write new documents to a segment file. Single caller expected (flush and merge are not concurrent).
+     * When the file cannot be written, documents stay pending and are written by next flush.
+     *
+     * @throws IOException
+     *      segment cannot be written
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (buffer.getDocumentCount() == 0) {
+                return;
+            }
+            flushing = buffer;
+            buffer   = new MemorySegment();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        MappedSegment written;
+        try {
+            written = MappedSegment.write(nextSegmentFile(), flushing);
+        } catch (IOException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                // Keep insertion order: documents of failed flush first, then documents added meanwhile
+                MemorySegment pending = flushing;
+                for (int docId = 0; docId < buffer.getDocumentCount(); docId++) {
+                    pending.add(buffer.getDocument(docId));
+                }
+                buffer   = pending;
+                flushing = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            List<MappedSegment> updated = new ArrayList<>(segments);
+            updated.add(written);
+            segments = updated;
+            flushing = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite all segments as a single one when there are more than 'maxSegments'.
+     *
+     * @param maxSegments
+     *      number of segments tolerated
+     * @throws IOException
+     *      segment cannot be written
+     */
+    public void mergeIfNeeded(int maxSegments) throws IOException {
+        List<MappedSegment> toMerge;
+        lock.readLock().lock();
+        try {
+            toMerge = segments;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (toMerge.size() <= Math.max(1, maxSegments)) {
+            return;
+        }
+        long top = System.currentTimeMillis();
+        MemorySegment merged = new MemorySegment();
+        for (MappedSegment segment : toMerge) {
+            for (int docId = 0; docId < segment.getDocumentCount(); docId++) {
+                merged.add(segment.getDocument(docId));
+            }
+        }
+        MappedSegment written = MappedSegment.write(nextSegmentFile(), merged);
+        lock.writeLock().lock();
+        try {
+            // Only flush() adds segments and it is not concurrent with merge
+            segments = new ArrayList<>(Collections.singletonList(written));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (MappedSegment segment : toMerge) {
+            Files.deleteIfExists(segment.getFile());
+        }
+        LOGGER.info("Merged {} search index segments ({} videos) in {} millis",
+                toMerge.size(), merged.getDocumentCount(), System.currentTimeMillis() - top);
+    }
+
+    /**
+     * Search videos.
+     *
+     * @param query
+     *      user query
+     * @param offset
+     *      number of hits to skip
+     * @param limit
+     *      page size
+     * @return
+     *      page of videos by decreasing score, paging state is the offset of next page
+     */
+    public ResultListPage<Video> search(String query, int offset, int limit) {
+        ResultListPage<Video> page = new ResultListPage<>();
+        List<String> queryTerms = SearchTokenizer.tokenize(query);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return page;
+        }
+        lock.readLock().lock();
+        try {
+            List<IndexSegment> all  = searchableSegments();
+            List<Hit>          hits = collectHits(all, queryTerms);
+            List<Video> videos = new ArrayList<>(limit);
+            for (int i = offset; i < hits.size() && i < offset + limit; i++) {
+                videos.add(all.get(hits.get(i).segment).getDocument(hits.get(i).docId));
+            }
+            page.setresults(videos);
+            if (offset + limit < hits.size()) {
+                page.setPagingState(Optional.of(String.valueOf(offset + limit)));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Count matching videos by tag.
+     *
+     * @param query
+     *      user query
+     * @param limit
+     *      number of tags
+     * @return
+     *      tags by decreasing count
+     */
+    public Map<String, Long> facetTags(String query, int limit) {
+        List<String> queryTerms = SearchTokenizer.tokenize(query);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> counts = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            List<IndexSegment> all = searchableSegments();
+            for (Hit hit : collectHits(all, queryTerms)) {
+                Set<String> tags = all.get(hit.segment).getDocument(hit.docId).getTags();
+                if (tags != null) {
+                    tags.forEach(tag -> counts.merge(tag, 1L, Long::sum));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Map<String, Long> top = new LinkedHashMap<>();
+        counts.entrySet().stream()
+              .sorted((e1, e2) -> e1.getValue().equals(e2.getValue()) ?
+                      e1.getKey().compareTo(e2.getKey()) : Long.compare(e2.getValue(), e1.getValue()))
+              .limit(limit)
+              .forEach(e -> top.put(e.getKey(), e.getValue()));
+        return top;
+    }
+
+    /**
+     * Segments to search, caller holds the read lock.
+     */
+    private List<IndexSegment> searchableSegments() {
+        List<IndexSegment> all = new ArrayList<>(segments);
+        if (flushing != null) {
+            all.add(flushing);
+        }
+        all.add(buffer);
+        return all;
+    }
+
+    /**
+     * Documents matching all query terms, best first. Caller holds the read lock.
+     */
+    private List<Hit> collectHits(List<IndexSegment> all, List<String> queryTerms) {
+        // Statistics on whole index
+        long docCount = 0;
+        long[] totalLengths = new long[IndexSegment.FIELD_COUNT];
+        for (IndexSegment segment : all) {
+            docCount += segment.getDocumentCount();
+            for (int field = 0; field < IndexSegment.FIELD_COUNT; field++) {
+                totalLengths[field] += segment.getTotalFieldLength(field);
+            }
+        }
+        if (docCount == 0) {
+            return Collections.emptyList();
+        }
+        float[] avgLengths = new float[IndexSegment.FIELD_COUNT];
+        for (int field = 0; field < IndexSegment.FIELD_COUNT; field++) {
+            avgLengths[field] = Math.max(1f, (float) totalLengths[field] / docCount);
+        }
+
+        // Expand query terms (last is a prefix) with their document frequency
+        List<Map<String, Integer>> expansions = new ArrayList<>(queryTerms.size());
+        for (int i = 0; i < queryTerms.size(); i++) {
+            Map<String, Integer> docFreqs = new HashMap<>();
+            boolean prefix = (i == queryTerms.size() - 1);
+            for (IndexSegment segment : all) {
+                segment.collectTerms(queryTerms.get(i), prefix, docFreqs);
+            }
+            if (docFreqs.isEmpty()) {
+                // All terms are required
+                return Collections.emptyList();
+            }
+            expansions.add(docFreqs);
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        for (int s = 0; s < all.size(); s++) {
+            scoreSegment(all.get(s), s, expansions, docCount, avgLengths, hits);
+        }
+        // Best score first, then most recent
+        hits.sort((h1, h2) -> h1.score != h2.score ? Float.compare(h2.score, h1.score) :
+                      h1.segment != h2.segment ? Integer.compare(h2.segment, h1.segment) :
+                      Integer.compare(h2.docId, h1.docId));
+        return hits;
+    }
+
+    /**
+     * Number of videos indexed.
+     *
+     * @return
+     *      index size
+     */
+    public int size() {
+        return indexedVideos.size();
+    }
+
+    /**
+     * Sum BM25 scores of documents matching all query terms in one segment.
+     */
+    private void scoreSegment(IndexSegment segment, int segmentIndex, List<Map<String, Integer>> expansions,
+            long docCount, float[] avgLengths, List<Hit> hits) {
+        Map<Integer, float[]> scores = new HashMap<>(); // docId => {score, matched query terms}
+        for (Map<String, Integer> docFreqs : expansions) {
+            // For a prefix, a document scores its best matching term
+            Map<Integer, Float> best = new HashMap<>();
+            for (Map.Entry<String, Integer> term : docFreqs.entrySet()) {
+                final float idf = (float) Math.log(1 + (docCount - term.getValue() + 0.5) / (term.getValue() + 0.5));
+                segment.visitPostings(term.getKey(), (docId, tfName, tfTags, tfDescription) -> {
+                    float score = idf * (
+                            fieldScore(segment, docId, IndexSegment.FIELD_NAME, tfName, avgLengths) +
+                            fieldScore(segment, docId, IndexSegment.FIELD_TAGS, tfTags, avgLengths) +
+                            fieldScore(segment, docId, IndexSegment.FIELD_DESCRIPTION, tfDescription, avgLengths));
+                    best.merge(docId, score, Math::max);
+                });
+            }
+            best.forEach((docId, score) -> {
+                float[] acc = scores.computeIfAbsent(docId, d -> new float[2]);
+                acc[0] += score;
+                acc[1]++;
+            });
+        }
+        scores.forEach((docId, acc) -> {
+            if (acc[1] == expansions.size()) {
+                hits.add(new Hit(segmentIndex, docId, acc[0]));
+            }
+        });
+    }
+
+    /**
+     * BM25 term frequency part for one field, with boost.
+     */
+    private static float fieldScore(IndexSegment segment, int docId, int field, int tf, float[] avgLengths) {
+        if (tf == 0) {
+            return 0f;
+        }
+        float norm = 1 - B + B * segment.getFieldLength(docId, field) / avgLengths[field];
+        return BOOSTS[field] * tf * (K1 + 1) / (tf + K1 * norm);
+    }
+
+    private Path nextSegmentFile() {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_EXTENSION));
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Matching document.
+     */
+    private static final class Hit {
+        private final int   segment;
+        private final int   docId;
+        private final float score;
+
+        private Hit(int segment, int docId, float score) {
+            this.segment = segment;
+            this.docId   = docId;
+            this.score   = score;
+        }
+    }
+
+}
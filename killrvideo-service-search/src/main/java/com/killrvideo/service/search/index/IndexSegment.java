@@ -0,0 +1,116 @@
+package com.killrvideo.service.search.index;
+
+import java.util.Map;
+import java.util.UUID;
+
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Part of the embedded index: documents with their postings. Document ids are local to the segment.
+ *
+ * Fields are indexed separately to apply boosts: name, tags and description.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public interface IndexSegment {
+
+    /** Indexed fields. */
+    int FIELD_NAME        = 0;
+    int FIELD_TAGS        = 1;
+    int FIELD_DESCRIPTION = 2;
+    int FIELD_COUNT       = 3;
+
+    /**
+     * Receive postings of a term.
+     */
+    @FunctionalInterface
+    interface PostingVisitor {
+
+        /**
+         * Occurrences of term in a document.
+         *
+         * @param docId
+         *      document id in segment
+         * @param tfName
+         *      occurrences in name
+         * @param tfTags
+         *      occurrences in tags
+         * @param tfDescription
+         *      occurrences in description
+         */
+        void visit(int docId, int tfName, int tfTags, int tfDescription);
+    }
+
+    /**
+     * Number of documents.
+     *
+     * @return
+     *      number of documents
+     */
+    int getDocumentCount();
+
+    /**
+     * Read a document.
+     *
+     * @param docId
+     *      document id in segment
+     * @return
+     *      stored video
+     */
+    Video getDocument(int docId);
+
+    /**
+     * Identifier of video without reading the whole document.
+     *
+     * @param docId
+     *      document id in segment
+     * @return
+     *      video id
+     */
+    UUID getVideoId(int docId);
+
+    /**
+     * Number of terms of a field in a document.
+     *
+     * @param docId
+     *      document id in segment
+     * @param field
+     *      field index
+     * @return
+     *      field length
+     */
+    int getFieldLength(int docId, int field);
+
+    /**
+     * Sum of lengths of a field for all documents.
+     *
+     * @param field
+     *      field index
+     * @return
+     *      total length
+     */
+    long getTotalFieldLength(int field);
+
+    /**
+     * Add terms equal to (or starting with) 'term' and their document frequency in this segment.
+     *
+     * @param term
+     *      term or prefix
+     * @param prefix
+     *      if true all terms starting with 'term' match
+     * @param docFreqs
+     *      document frequency by term, incremented
+     */
+    void collectTerms(String term, boolean prefix, Map<String, Integer> docFreqs);
+
+    /**
+     * Iterate on postings of a term, by increasing document id.
+     *
+     * @param term
+     *      exact term
+     * @param visitor
+     *      callback
+     */
+    void visitPostings(String term, PostingVisitor visitor);
+
+}
@@ -0,0 +1,320 @@
+package com.killrvideo.service.search.index;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Immutable segment stored in a file and memory-mapped. Term dictionary is loaded in heap at opening,
+ * postings and documents are read from the mapping when needed (page cache does the caching).
+ *
+ * Layout (big endian):
+ * <pre>
+ * header      : magic, version, docCount, termCount, totalFieldLength x 3 (long)
+ * lengths     : docCount x 3 field lengths
+ * docOffsets  : docCount offsets in documents block
+ * dictionary  : termCount x (term, docFreq, offset in postings block), sorted by term
+ * postings    : size, then per posting {docId, tfName, tfTags, tfDescription}
+ * documents   : videoid, userid, added date, name, description, preview, location, location type, tags
+ * </pre>
+ * Strings are written as length + UTF-8 bytes.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class MappedSegment implements IndexSegment {
+
+    /** Format. */
+    private static final int MAGIC         = 0x4B565331;
+    private static final int VERSION       = 1;
+    private static final int POSTING_BYTES = 16;
+
+    /** Date is optional. */
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    /** Segment file. */
+    private final Path file;
+
+    /** Mapping of whole file, only absolute reads or duplicates are used (thread safety). */
+    private final MappedByteBuffer buffer;
+
+    /** Loaded at opening. */
+    private final int      docCount;
+    private final long[]   totalFieldLengths = new long[FIELD_COUNT];
+    private final int[]    fieldLengths;
+    private final int[]    docOffsets;
+    private final String[] terms;
+    private final int[]    docFreqs;
+    private final int[]    postingOffsets;
+    private final int      postingsStart;
+    private final int      documentsStart;
+
+    /**
+     * Open existing segment.
+     */
+    private MappedSegment(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer in = buffer.duplicate();
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("Invalid search index segment " + file);
+        }
+        docCount = in.getInt();
+        int termCount = in.getInt();
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            totalFieldLengths[field] = in.getLong();
+        }
+        fieldLengths = new int[docCount * FIELD_COUNT];
+        in.asIntBuffer().get(fieldLengths);
+        in.position(in.position() + fieldLengths.length * 4);
+        docOffsets = new int[docCount];
+        in.asIntBuffer().get(docOffsets);
+        in.position(in.position() + docOffsets.length * 4);
+        terms          = new String[termCount];
+        docFreqs       = new int[termCount];
+        postingOffsets = new int[termCount];
+        for (int i = 0; i < termCount; i++) {
+            terms[i]          = readString(in);
+            docFreqs[i]       = in.getInt();
+            postingOffsets[i] = in.getInt();
+        }
+        int postingsSize = in.getInt();
+        postingsStart  = in.position();
+        documentsStart = postingsStart + postingsSize;
+    }
+
+    /**
+     * Map a segment file.
+     *
+     * @param file
+     *      segment file
+     * @return
+     *      segment
+     * @throws IOException
+     *      file cannot be read
+     */
+    public static MappedSegment open(Path file) throws IOException {
+        return new MappedSegment(file);
+    }
+
+    /**
+     * Write a segment file (temporary file then atomic rename) and map it.
+     *
+     * @param file
+     *      target file
+     * @param segment
+     *      documents and postings
+     * @return
+     *      mapped segment
+     * @throws IOException
+     *      file cannot be written
+     */
+    public static MappedSegment write(Path file, MemorySegment segment) throws IOException {
+        int count = segment.getDocumentCount();
+
+        // Documents block first, offsets are needed in header
+        ByteArrayOutputStream docsBytes = new ByteArrayOutputStream();
+        DataOutputStream      docsOut   = new DataOutputStream(docsBytes);
+        int[] offsets = new int[count];
+        for (int docId = 0; docId < count; docId++) {
+            offsets[docId] = docsOut.size();
+            writeDocument(docsOut, segment.getDocument(docId));
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            Map<String, List<int[]>> postings = segment.getPostings();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(postings.size());
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                out.writeLong(segment.getTotalFieldLength(field));
+            }
+            for (int docId = 0; docId < count; docId++) {
+                for (int field = 0; field < FIELD_COUNT; field++) {
+                    out.writeInt(segment.getFieldLength(docId, field));
+                }
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            int postingOffset = 0;
+            for (Map.Entry<String, List<int[]>> entry : postings.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                out.writeInt(postingOffset);
+                postingOffset += entry.getValue().size() * POSTING_BYTES;
+            }
+            out.writeInt(postingOffset);
+            for (List<int[]> list : postings.values()) {
+                for (int[] p : list) {
+                    out.writeInt(p[0]);
+                    out.writeInt(p[1]);
+                    out.writeInt(p[2]);
+                    out.writeInt(p[3]);
+                }
+            }
+            docsBytes.writeTo(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getDocumentCount() {
+        return docCount;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Video getDocument(int docId) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(documentsStart + docOffsets[docId]);
+        Video video = new Video();
+        video.setVideoid(new UUID(in.getLong(), in.getLong()));
+        video.setUserid(new UUID(in.getLong(), in.getLong()));
+        long addedDate = in.getLong();
+        video.setAddedDate(addedDate == NO_DATE ? null : new Date(addedDate));
+        video.setName(readString(in));
+        video.setDescription(readString(in));
+        video.setPreviewImageLocation(readString(in));
+        video.setLocation(readString(in));
+        video.setLocationType(in.getInt());
+        int tagCount = in.getInt();
+        Set<String> tags = new HashSet<>();
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(readString(in));
+        }
+        video.setTags(tags);
+        return video;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public UUID getVideoId(int docId) {
+        int pos = documentsStart + docOffsets[docId];
+        return new UUID(buffer.getLong(pos), buffer.getLong(pos + 8));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getFieldLength(int docId, int field) {
+        return fieldLengths[docId * FIELD_COUNT + field];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTotalFieldLength(int field) {
+        return totalFieldLengths[field];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void collectTerms(String term, boolean prefix, Map<String, Integer> freqs) {
+        int idx = Arrays.binarySearch(terms, term);
+        if (idx >= 0) {
+            freqs.merge(terms[idx], docFreqs[idx], Integer::sum);
+            idx++;
+        } else {
+            idx = -idx - 1;
+        }
+        if (prefix) {
+            while (idx < terms.length && terms[idx].startsWith(term)) {
+                freqs.merge(terms[idx], docFreqs[idx], Integer::sum);
+                idx++;
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void visitPostings(String term, PostingVisitor visitor) {
+        int idx = Arrays.binarySearch(terms, term);
+        if (idx < 0) {
+            return;
+        }
+        int pos = postingsStart + postingOffsets[idx];
+        for (int i = 0; i < docFreqs[idx]; i++, pos += POSTING_BYTES) {
+            visitor.visit(buffer.getInt(pos), buffer.getInt(pos + 4), buffer.getInt(pos + 8), buffer.getInt(pos + 12));
+        }
+    }
+
+    /**
+     * Getter for attribute 'file'.
+     *
+     * @return
+     *       segment file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    private static void writeDocument(DataOutputStream out, Video video) throws IOException {
+        UUID videoid = video.getVideoid();
+        UUID userid  = video.getUserid() == null ? new UUID(0, 0) : video.getUserid();
+        out.writeLong(videoid.getMostSignificantBits());
+        out.writeLong(videoid.getLeastSignificantBits());
+        out.writeLong(userid.getMostSignificantBits());
+        out.writeLong(userid.getLeastSignificantBits());
+        out.writeLong(video.getAddedDate() == null ? NO_DATE : video.getAddedDate().getTime());
+        writeString(out, video.getName());
+        writeString(out, video.getDescription());
+        writeString(out, video.getPreviewImageLocation());
+        writeString(out, video.getLocation());
+        out.writeInt(video.getLocationType());
+        Set<String> tags = video.getTags();
+        out.writeInt(tags == null ? 0 : tags.size());
+        if (tags != null) {
+            for (String tag : tags) {
+                writeString(out, tag);
+            }
+        }
+    }
+
+    /**
+     * Length -1 stands for null.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.killrvideo.service.search.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Mutable segment receiving new documents until it is written to disk. Not thread safe.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class MemorySegment implements IndexSegment {
+
+    /** Documents by id. */
+    private final List<Video> documents = new ArrayList<>();
+
+    /** Lengths of fields by document. */
+    private final List<int[]> fieldLengths = new ArrayList<>();
+
+    /** Postings by term, each posting is {docId, tfName, tfTags, tfDescription}. */
+    private final TreeMap<String, List<int[]>> postings = new TreeMap<>();
+
+    /** Sum of fields lengths. */
+    private final long[] totalFieldLengths = new long[FIELD_COUNT];
+
+    /**
+     * Index a document.
+     *
+     * @param video
+     *      video to index
+     * @return
+     *      document id
+     */
+    public int add(Video video) {
+        int docId = documents.size();
+        List<List<String>> fields = new ArrayList<>(FIELD_COUNT);
+        fields.add(SearchTokenizer.tokenize(video.getName()));
+        List<String> tagTerms = new ArrayList<>();
+        if (video.getTags() != null) {
+            video.getTags().forEach(tag -> tagTerms.addAll(SearchTokenizer.tokenize(tag)));
+        }
+        fields.add(tagTerms);
+        fields.add(SearchTokenizer.tokenize(video.getDescription()));
+
+        int[] lengths = new int[FIELD_COUNT];
+        Map<String, int[]> termFreqs = new HashMap<>();
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            lengths[field] = fields.get(field).size();
+            totalFieldLengths[field] += lengths[field];
+            for (String term : fields.get(field)) {
+                termFreqs.computeIfAbsent(term, t -> new int[] {docId, 0, 0, 0})[field + 1]++;
+            }
+        }
+        termFreqs.forEach((term, posting) -> postings.computeIfAbsent(term, t -> new ArrayList<>(2)).add(posting));
+        documents.add(video);
+        fieldLengths.add(lengths);
+        return docId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getDocumentCount() {
+        return documents.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Video getDocument(int docId) {
+        return documents.get(docId);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public UUID getVideoId(int docId) {
+        return documents.get(docId).getVideoid();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getFieldLength(int docId, int field) {
+        return fieldLengths.get(docId)[field];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTotalFieldLength(int field) {
+        return totalFieldLengths[field];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void collectTerms(String term, boolean prefix, Map<String, Integer> docFreqs) {
+        if (prefix) {
+            matchingTerms(term).forEach((t, list) -> docFreqs.merge(t, list.size(), Integer::sum));
+        } else if (postings.containsKey(term)) {
+            docFreqs.merge(term, postings.get(term).size(), Integer::sum);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void visitPostings(String term, PostingVisitor visitor) {
+        List<int[]> list = postings.get(term);
+        if (list != null) {
+            for (int[] p : list) {
+                visitor.visit(p[0], p[1], p[2], p[3]);
+            }
+        }
+    }
+
+    /**
+     * Postings sorted by term, used to write the segment.
+     *
+     * @return
+     *      postings
+     */
+    NavigableMap<String, List<int[]>> getPostings() {
+        return postings;
+    }
+
+    /**
+     * Terms starting with prefix.
+     */
+    private NavigableMap<String, List<int[]>> matchingTerms(String prefix) {
+        return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+}
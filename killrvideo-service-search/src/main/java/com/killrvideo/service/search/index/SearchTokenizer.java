@@ -0,0 +1,50 @@
+package com.killrvideo.service.search.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Split text into terms, same rules for documents and queries: lowercase, words are sequences of letters and digits.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class SearchTokenizer {
+
+    /**
+     * Hide constructor.
+     */
+    private SearchTokenizer() {}
+
+    /**
+     * Terms of a text, in order and with duplicates.
+     *
+     * @param text
+     *      text to split, may be null
+     * @return
+     *      terms
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i < lower.length(); i++) {
+            if (Character.isLetterOrDigit(lower.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                terms.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            terms.add(lower.substring(start));
+        }
+        return terms;
+    }
+
+}
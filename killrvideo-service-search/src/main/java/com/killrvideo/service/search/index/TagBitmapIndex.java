@@ -0,0 +1,531 @@
+package com.killrvideo.service.search.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitmap per tag over compact integer ids of videos, to evaluate tag expressions in memory.
+ *
+ * Ids are local to the index (assigned in insertion order), results are ordered like table 'latest_videos'
+ * (added_date DESC, videoid ASC) whatever the insertion order, and the paging state is the (added_date, videoid)
+ * of the last video returned: it is valid on any instance and across restarts. Tags are matched case insensitive.
+ *
+ * Thread safe: single writer, concurrent readers.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class TagBitmapIndex {
+
+    /** Snapshot format. */
+    private static final int MAGIC   = 0x4B565442;
+    private static final int VERSION = 2;
+
+    /** Video by id. */
+    private final List<UUID> videoIds = new ArrayList<>();
+
+    /** Id by video. */
+    private final Map<UUID, Integer> idsByVideo = new HashMap<>();
+
+    /** Added date by id (epoch millis, 0 if unknown). */
+    private final List<Long> addedDates = new ArrayList<>();
+
+    /** Ids in result order. */
+    private final TreeMap<Cursor, Integer> idsByCursor = new TreeMap<>();
+
+    /** Videos by tag. */
+    private final Map<String, BitSet> bitmapsByTag = new HashMap<>();
+
+    /** All ids, universe for negations. */
+    private final BitSet allVideos = new BitSet();
+
+    /** Guard structures. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Changed since last snapshot. */
+    private volatile boolean dirty = false;
+
+    /** Scan of table 'videos' completed, saved in snapshot. */
+    private volatile boolean bootstrapped = false;
+
+    /** Videos added before this time (epoch millis) are in the snapshot the index was loaded from. */
+    private volatile long watermark = 0;
+
+    /**
+     * Position in results, rendered as '&lt;added_date millis&gt;_&lt;videoid&gt;' in paging states.
+     */
+    public static final class Cursor implements Comparable<Cursor> {
+
+        private final long addedDate;
+        private final UUID videoid;
+
+        public Cursor(long addedDate, UUID videoid) {
+            this.addedDate = addedDate;
+            this.videoid   = videoid;
+        }
+
+        /**
+         * Read a paging state.
+         *
+         * @param pagingState
+         *      value of {@link #toString()}
+         * @return
+         *      cursor
+         * @throws IllegalArgumentException
+         *      invalid paging state
+         */
+        public static Cursor parse(String pagingState) {
+            int separator = pagingState.indexOf('_');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid paging state " + pagingState);
+            }
+            return new Cursor(Long.parseLong(pagingState.substring(0, separator)),
+                    UUID.fromString(pagingState.substring(separator + 1)));
+        }
+
+        /** Latest first, then by videoid. */
+        @Override
+        public int compareTo(Cursor other) {
+            int byDate = Long.compare(other.addedDate, addedDate);
+            return byDate != 0 ? byDate : videoid.compareTo(other.videoid);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Cursor)) {
+                return false;
+            }
+            Cursor other = (Cursor) o;
+            return addedDate == other.addedDate && videoid.equals(other.videoid);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return Objects.hash(addedDate, videoid);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return addedDate + "_" + videoid;
+        }
+    }
+
+    /**
+     * Page of matching videos.
+     */
+    public static class Page {
+
+        private final List<UUID> videoIds;
+        private final int        totalCount;
+        private final Cursor     nextCursor;
+
+        private Page(List<UUID> videoIds, int totalCount, Cursor nextCursor) {
+            this.videoIds   = videoIds;
+            this.totalCount = totalCount;
+            this.nextCursor = nextCursor;
+        }
+
+        /**
+         * Getter for attribute 'videoIds'.
+         *
+         * @return
+         *       videos of the page, latest first
+         */
+        public List<UUID> getVideoIds() {
+            return videoIds;
+        }
+
+        /**
+         * Getter for attribute 'totalCount'.
+         *
+         * @return
+         *       number of videos matching the expression
+         */
+        public int getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * Getter for attribute 'nextCursor'.
+         *
+         * @return
+         *       cursor for next page, null if last page
+         */
+        public Cursor getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * Index tags of a video, tags of an already indexed video are added to it.
+     *
+     * @param videoid
+     *      video
+     * @param addedDate
+     *      creation date of video (epoch millis), 0 if unknown
+     * @param tags
+     *      tags of video
+     */
+    public void add(UUID videoid, long addedDate, Collection<String> tags) {
+        if (videoid == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Integer id = idsByVideo.get(videoid);
+            if (id == null) {
+                id = videoIds.size();
+                videoIds.add(videoid);
+                addedDates.add(addedDate);
+                idsByVideo.put(videoid, id);
+                idsByCursor.put(new Cursor(addedDate, videoid), id);
+                allVideos.set(id);
+                dirty = true;
+            } else if (addedDate != 0 && addedDates.get(id) != addedDate) {
+                idsByCursor.remove(new Cursor(addedDates.get(id), videoid));
+                idsByCursor.put(new Cursor(addedDate, videoid), id);
+                addedDates.set(id, addedDate);
+                dirty = true;
+            }
+            if (tags != null) {
+                for (String tag : tags) {
+                    String normalized = normalizeTag(tag);
+                    if (!normalized.isEmpty()) {
+                        BitSet bitmap = bitmapsByTag.computeIfAbsent(normalized, t -> new BitSet());
+                        if (!bitmap.get(id)) {
+                            bitmap.set(id);
+                            dirty = true;
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Videos having all tags of 'allOf', at least one tag of 'anyOf' (if not empty) and no tag of 'noneOf'.
+     *
+     * @param allOf
+     *      required tags (AND)
+     * @param anyOf
+     *      alternative tags (OR)
+     * @param noneOf
+     *      excluded tags (NOT)
+     * @param cursor
+     *      paging state of previous page, null for first page
+     * @param limit
+     *      page size
+     * @return
+     *      page of videos, latest first
+     */
+    public Page query(Collection<String> allOf, Collection<String> anyOf, Collection<String> noneOf, Cursor cursor, int limit) {
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+            for (String tag : allOf) {
+                BitSet bitmap = bitmapsByTag.get(normalizeTag(tag));
+                if (bitmap == null) {
+                    return new Page(new ArrayList<>(), 0, null);
+                }
+                if (result == null) {
+                    result = (BitSet) bitmap.clone();
+                } else {
+                    result.and(bitmap);
+                }
+            }
+            if (result == null) {
+                result = (BitSet) allVideos.clone();
+            }
+            if (!anyOf.isEmpty()) {
+                BitSet any = new BitSet();
+                for (String tag : anyOf) {
+                    BitSet bitmap = bitmapsByTag.get(normalizeTag(tag));
+                    if (bitmap != null) {
+                        any.or(bitmap);
+                    }
+                }
+                result.and(any);
+            }
+            for (String tag : noneOf) {
+                BitSet bitmap = bitmapsByTag.get(normalizeTag(tag));
+                if (bitmap != null) {
+                    result.andNot(bitmap);
+                }
+            }
+
+            int matches = result.cardinality();
+            int size    = Math.max(0, limit);
+            // Walking the ordered ids visits about size * videos / matches entries to fill a page, sorting the
+            // matches visits each of them: a selective expression costs its matches, not the whole index
+            List<Cursor> selected = ((long) matches * matches <= (long) (size + 1) * videoIds.size()) ?
+                    selectMatches(result, cursor, size + 1) :
+                    walkMatches(result, cursor, size + 1);
+            List<UUID> page = new ArrayList<>(size);
+            for (int i = 0; i < Math.min(size, selected.size()); i++) {
+                page.add(selected.get(i).videoid);
+            }
+            Cursor next = (selected.size() > size && size > 0) ? selected.get(size - 1) : null;
+            return new Page(page, matches, next);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * First matching videos after the cursor, from the ids in result order. Caller holds the read lock.
+     */
+    private List<Cursor> walkMatches(BitSet result, Cursor cursor, int count) {
+        List<Cursor> selected = new ArrayList<>(count);
+        Map<Cursor, Integer> from = (cursor == null) ? idsByCursor : idsByCursor.tailMap(cursor, false);
+        for (Map.Entry<Cursor, Integer> entry : from.entrySet()) {
+            if (selected.size() >= count) {
+                break;
+            }
+            if (result.get(entry.getValue())) {
+                selected.add(entry.getKey());
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * First matching videos after the cursor, from the set bits of the result kept in a bounded heap. Caller
+     * holds the read lock.
+     */
+    private List<Cursor> selectMatches(BitSet result, Cursor cursor, int count) {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(count + 1, Collections.reverseOrder());
+        for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+            Cursor position = new Cursor(addedDates.get(id), videoIds.get(id));
+            if (cursor == null || position.compareTo(cursor) > 0) {
+                heap.offer(position);
+                if (heap.size() > count) {
+                    heap.poll();
+                }
+            }
+        }
+        List<Cursor> selected = new ArrayList<>(heap);
+        Collections.sort(selected);
+        return selected;
+    }
+
+    /**
+     * Number of videos.
+     *
+     * @return
+     *      videos indexed
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return videoIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of distinct tags.
+     *
+     * @return
+     *      tags indexed
+     */
+    public int getTagCount() {
+        lock.readLock().lock();
+        try {
+            return bitmapsByTag.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tell if index changed since last snapshot.
+     *
+     * @return
+     *      true if a snapshot is needed
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Tell if a video is indexed.
+     *
+     * @param videoid
+     *      video
+     * @return
+     *      true if indexed
+     */
+    public boolean contains(UUID videoid) {
+        lock.readLock().lock();
+        try {
+            return idsByVideo.containsKey(videoid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tell if a scan of table 'videos' completed (this run or before snapshot).
+     *
+     * @return
+     *      true if only videos added since {@link #getWatermark()} can be missing
+     */
+    public boolean isBootstrapped() {
+        return bootstrapped;
+    }
+
+    /**
+     * Record the end of a scan of table 'videos', saved by next snapshot.
+     */
+    public void markBootstrapped() {
+        bootstrapped = true;
+        dirty        = true;
+    }
+
+    /**
+     * Getter for attribute 'watermark'.
+     *
+     * @return
+     *      time of the snapshot the index was loaded from (epoch millis), 0 for a new index
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Write index to a file (temporary file then atomic rename). Writers are blocked meanwhile, the snapshot
+     * holds every video added before it started: that time is saved as watermark.
+     *
+     * @param file
+     *      snapshot file
+     * @throws IOException
+     *      file cannot be written
+     */
+    public void snapshot(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            dirty = false;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(bootstrapped);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(videoIds.size());
+            for (int id = 0; id < videoIds.size(); id++) {
+                out.writeLong(videoIds.get(id).getMostSignificantBits());
+                out.writeLong(videoIds.get(id).getLeastSignificantBits());
+                out.writeLong(addedDates.get(id));
+            }
+            out.writeInt(bitmapsByTag.size());
+            for (Map.Entry<String, BitSet> entry : bitmapsByTag.entrySet()) {
+                out.writeUTF(entry.getKey());
+                long[] words = entry.getValue().toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a snapshot.
+     *
+     * @param file
+     *      snapshot file
+     * @return
+     *      index
+     * @throws IOException
+     *      file cannot be read
+     */
+    public static TagBitmapIndex load(Path file) throws IOException {
+        TagBitmapIndex index = new TagBitmapIndex();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Invalid tag index snapshot " + file);
+            }
+            index.bootstrapped = in.readBoolean();
+            index.watermark    = in.readLong();
+            int count = in.readInt();
+            for (int id = 0; id < count; id++) {
+                UUID videoid   = new UUID(in.readLong(), in.readLong());
+                long addedDate = in.readLong();
+                index.videoIds.add(videoid);
+                index.addedDates.add(addedDate);
+                index.idsByVideo.put(videoid, id);
+                index.idsByCursor.put(new Cursor(addedDate, videoid), id);
+            }
+            index.allVideos.set(0, count);
+            int tagCount = in.readInt();
+            for (int i = 0; i < tagCount; i++) {
+                String tag   = in.readUTF();
+                long[] words = new long[in.readInt()];
+                for (int w = 0; w < words.length; w++) {
+                    words[w] = in.readLong();
+                }
+                index.bitmapsByTag.put(tag, BitSet.valueOf(words));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Tags as used for matching.
+     *
+     * @param tags
+     *      tags from request
+     * @return
+     *      normalized tags, empty ones removed
+     */
+    public static Set<String> normalizeTags(Collection<String> tags) {
+        Set<String> normalized = new HashSet<>();
+        for (String tag : tags) {
+            String n = normalizeTag(tag);
+            if (!n.isEmpty()) {
+                normalized.add(n);
+            }
+        }
+        return normalized;
+    }
+
+    private static String normalizeTag(String tag) {
+        return tag == null ? "" : tag.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
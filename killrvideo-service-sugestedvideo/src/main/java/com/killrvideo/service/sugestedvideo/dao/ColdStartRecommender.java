@@ -0,0 +1,368 @@
+package com.killrvideo.service.sugestedvideo.dao;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.killrvideo.dse.dao.DseDaoSupport;
+import com.killrvideo.dse.dto.Video;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+
+/**
+ * Recommendations for users who never rated a video, without graph traversal (it would return nothing).
+ *
+ * - users who rated are recorded in a bitmap, each user sets 2 bits given by hashes of his id: a user with
+ *   both bits unset never rated, false positives (hash collisions) only mean the usual path is used
+ * - bitmap is loaded from table 'video_ratings_by_user' at startup then fed with all 'UserRatedVideo' events
+ *   (consumer of each node, whatever the outcome of the graph update), no user is considered cold before the
+ *   load completes
+ * - rating totals of the most rated videos are read once from table 'video_ratings' at startup then fed with
+ *   the same events, the counters table is not scanned again
+ * - cold users get a list blending the most rated videos and the latest videos (table 'latest_videos'),
+ *   computed in background every 'refreshSeconds'
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Repository
+public class ColdStartRecommender extends DseDaoSupport {
+
+    /** Logger for that class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ColdStartRecommender.class);
+
+    /** Tables and columns. */
+    public static final String TABLENAME_VIDEO_RATINGS_BY_USER = "video_ratings_by_user";
+    public static final String TABLENAME_VIDEO_RATINGS         = "video_ratings";
+    public static final String TABLENAME_LATEST_VIDEOS         = "latest_videos";
+    public static final String COLUMN_USERID       = "userid";
+    public static final String COLUMN_VIDEOID      = "videoid";
+    public static final String COLUMN_RATING_TOTAL = "rating_total";
+    public static final String COLUMN_YYYYMMDD     = "yyyymmdd";
+    public static final String COLUMN_ADDED_DATE   = "added_date";
+    public static final String COLUMN_NAME         = "name";
+    public static final String COLUMN_PREVIEW      = "preview_image_location";
+
+    /** Partitions of 'latest_videos'. */
+    private static final DateTimeFormatter DATEFORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Value("${killrvideo.suggestedvideos.coldStart.enabled: true}")
+    private boolean enabled;
+
+    /** Bitmap of 2^bits bits. */
+    @Value("${killrvideo.suggestedvideos.coldStart.ratersBitmap.bits: 24}")
+    private int ratersBitmapBits;
+
+    @Value("${killrvideo.suggestedvideos.coldStart.recommendations: 20}")
+    private int recommendations;
+
+    @Value("${killrvideo.suggestedvideos.coldStart.latestDays: 7}")
+    private int latestDays;
+
+    @Value("${killrvideo.suggestedvideos.coldStart.refreshSeconds: 600}")
+    private long refreshSeconds;
+
+    /** Videos whose rating total is tracked in memory. */
+    @Value("${killrvideo.suggestedvideos.coldStart.popularCandidates: 1000}")
+    private int popularCandidates;
+
+    @Autowired
+    private SuggestedVideosDseDao suggestedVideosDseDao;
+
+    /** Precompile statements to speed up queries. */
+    private PreparedStatement findLatestVideos;
+
+    /** Users who rated, see {@link #bitIndexes(UUID)}. */
+    private AtomicLongArray raters;
+    private int ratersMask;
+    private volatile boolean ratersLoaded;
+
+    /** Rating totals by video, bounded to the most rated ones at each refresh. */
+    private final Map<UUID, Long> ratingTotals = new ConcurrentHashMap<>();
+
+    /** Served as is, immutable. */
+    private volatile List<Video> coldStartVideos = Collections.emptyList();
+
+    /** Bitmap load and list refresh. */
+    private ScheduledExecutorService refresher;
+
+    /** Counters. */
+    private final AtomicLong coldCounter = new AtomicLong();
+
+    /**
+     * Default constructor.
+     */
+    public ColdStartRecommender() {
+        super();
+    }
+
+    /**
+     * Allow explicit intialization for test purpose.
+     */
+    public ColdStartRecommender(DseSession dseSession) {
+        super(dseSession);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void initialize() {
+        findLatestVideos = dseSession.prepare(QueryBuilder
+                .select(COLUMN_VIDEOID, COLUMN_ADDED_DATE, COLUMN_USERID, COLUMN_NAME, COLUMN_PREVIEW)
+                .from(KILLRVIDEO_KEYSPACE, TABLENAME_LATEST_VIDEOS)
+                .where(QueryBuilder.eq(COLUMN_YYYYMMDD, QueryBuilder.bindMarker()))
+                .limit(QueryBuilder.bindMarker()));
+        // Called from test constructor before field initializers: sizes are guarded
+        int bits   = Math.min(30, Math.max(10, ratersBitmapBits));
+        raters     = new AtomicLongArray(1 << (bits - 6));
+        ratersMask = (1 << bits) - 1;
+        if (enabled) {
+            refresher = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+            refresher.submit(this::loadRaters);
+            refresher.submit(this::loadRatingTotals);
+            refresher.scheduleWithFixedDelay(this::refreshColdStartVideos, 0, Math.max(1, refreshSeconds), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stop background jobs.
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Tell if a user never rated a video, in memory only.
+     *
+     * @param userid
+     *      current user
+     * @return
+     *      true if cold start list should be served
+     */
+    public boolean isColdUser(UUID userid) {
+        if (!enabled || !ratersLoaded || coldStartVideos.isEmpty()) {
+            return false;
+        }
+        for (int bit : bitIndexes(userid)) {
+            if ((raters.get(bit >>> 6) & (1L << bit)) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Precomputed list for cold users.
+     *
+     * @return
+     *      popular and latest videos
+     */
+    public List<Video> getColdStartVideos() {
+        coldCounter.incrementAndGet();
+        return coldStartVideos;
+    }
+
+    /**
+     * A user rated a video: he is not cold anymore, and the video is more popular.
+     *
+     * @param userid
+     *      user who rated
+     * @param videoid
+     *      rated video
+     * @param rating
+     *      rating
+     */
+    public void onUserRatedVideo(UUID userid, UUID videoid, int rating) {
+        if (!enabled) {
+            return;
+        }
+        markRater(userid);
+        ratingTotals.merge(videoid, (long) rating, Long::sum);
+    }
+
+    /**
+     * A user rated a video, he is not cold anymore.
+     *
+     * @param userid
+     *      user who rated
+     */
+    private void markRater(UUID userid) {
+        for (int bit : bitIndexes(userid)) {
+            long mask = 1L << bit;
+            int  word = bit >>> 6;
+            long current;
+            do {
+                current = raters.get(word);
+            } while ((current & mask) == 0 && !raters.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * Getter for metric 'coldCount'.
+     *
+     * @return
+     *       requests served with cold start list
+     */
+    public long getColdCount() {
+        return coldCounter.get();
+    }
+
+    /**
+     * Two bits from both halves of the id (random for version 4 UUIDs, mixed anyway).
+     */
+    private int[] bitIndexes(UUID userid) {
+        long h1 = mix(userid.getMostSignificantBits());
+        long h2 = mix(userid.getLeastSignificantBits() ^ h1);
+        return new int[] { (int) h1 & ratersMask, (int) h2 & ratersMask };
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Users who rated before startup.
+     */
+    private void loadRaters() {
+        long top   = System.currentTimeMillis();
+        long count = 0;
+        try {
+            Statement scan = QueryBuilder.select(COLUMN_USERID)
+                    .from(KILLRVIDEO_KEYSPACE, TABLENAME_VIDEO_RATINGS_BY_USER)
+                    .setFetchSize(1000)
+                    .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            for (Row row : dseSession.execute(scan)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                markRater(row.getUUID(COLUMN_USERID));
+                count++;
+            }
+            ratersLoaded = true;
+            LOGGER.info("Raters bitmap loaded with {} ratings in {} millis", count, System.currentTimeMillis() - top);
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot load raters bitmap after {} ratings, cold start recommendations are disabled", count, e);
+        }
+    }
+
+    /**
+     * Rating totals before startup, only the most rated videos are kept.
+     */
+    private void loadRatingTotals() {
+        long top = System.currentTimeMillis();
+        try {
+            Statement scan = QueryBuilder.select(COLUMN_VIDEOID, COLUMN_RATING_TOTAL)
+                    .from(KILLRVIDEO_KEYSPACE, TABLENAME_VIDEO_RATINGS)
+                    .setFetchSize(1000)
+                    .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            PriorityQueue<Row> heap = new PriorityQueue<>(Comparator.comparingLong(row -> row.getLong(COLUMN_RATING_TOTAL)));
+            for (Row row : dseSession.execute(scan)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                heap.offer(row);
+                if (heap.size() > Math.max(1, popularCandidates)) {
+                    heap.poll();
+                }
+            }
+            // Events received during the scan are added to the stored totals
+            heap.forEach(row -> ratingTotals.merge(row.getUUID(COLUMN_VIDEOID), row.getLong(COLUMN_RATING_TOTAL), Long::sum));
+            LOGGER.info("Rating totals loaded for {} videos in {} millis", heap.size(), System.currentTimeMillis() - top);
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot load rating totals, most rated videos are counted from events only", e);
+        }
+    }
+
+    /**
+     * Most rated videos and latest videos, alternated.
+     */
+    private void refreshColdStartVideos() {
+        try {
+            int size = Math.max(1, recommendations);
+            List<Video> popular = suggestedVideosDseDao.findVideosByIds(findMostRatedVideoIds(size)).join();
+            List<Video> latest  = findLatestVideos(size);
+            Map<UUID, Video> blend = new LinkedHashMap<>();
+            for (int i = 0; blend.size() < size && (i < popular.size() || i < latest.size()); i++) {
+                if (i < popular.size()) {
+                    blend.putIfAbsent(popular.get(i).getVideoid(), popular.get(i));
+                }
+                if (i < latest.size() && blend.size() < size) {
+                    blend.putIfAbsent(latest.get(i).getVideoid(), latest.get(i));
+                }
+            }
+            coldStartVideos = Collections.unmodifiableList(new ArrayList<>(blend.values()));
+            LOGGER.debug("Cold start recommendations refreshed: {} videos", coldStartVideos.size());
+        } catch (RuntimeException e) {
+            // Previous list is kept, scheduled executor stops on first exception
+            LOGGER.warn("Cannot refresh cold start recommendations", e);
+        }
+    }
+
+    /**
+     * Top of the rating totals in memory, totals beyond the candidates are dropped (bounded memory).
+     */
+    private List<UUID> findMostRatedVideoIds(int limit) {
+        List<Map.Entry<UUID, Long>> sorted = new ArrayList<>(ratingTotals.entrySet());
+        sorted.sort(Map.Entry.<UUID, Long>comparingByValue().reversed());
+        int candidates = Math.max(limit, popularCandidates);
+        if (sorted.size() > candidates) {
+            sorted.subList(candidates, sorted.size()).forEach(entry -> ratingTotals.remove(entry.getKey(), entry.getValue()));
+        }
+        List<UUID> videoids = new ArrayList<>(limit);
+        for (int i = 0; i < Math.min(limit, sorted.size()); i++) {
+            videoids.add(sorted.get(i).getKey());
+        }
+        return videoids;
+    }
+
+    /**
+     * Latest videos, day partitions from today (same time zone as the video catalog).
+     */
+    private List<Video> findLatestVideos(int limit) {
+        List<Video> videos = new ArrayList<>(limit);
+        LocalDate day = LocalDate.now(ZoneId.systemDefault());
+        for (int i = 0; i < Math.max(1, latestDays) && videos.size() < limit; i++, day = day.minusDays(1)) {
+            for (Row row : dseSession.execute(findLatestVideos.bind(day.format(DATEFORMATTER), limit - videos.size()))) {
+                Video video = new Video();
+                video.setVideoid(row.getUUID(COLUMN_VIDEOID));
+                video.setAddedDate(row.getTimestamp(COLUMN_ADDED_DATE));
+                video.setUserid(row.getUUID(COLUMN_USERID));
+                video.setName(row.getString(COLUMN_NAME));
+                video.setPreviewImageLocation(row.getString(COLUMN_PREVIEW));
+                videos.add(video);
+            }
+        }
+        return videos;
+    }
+
+}
@@ -0,0 +1,386 @@
+package com.killrvideo.service.sugestedvideo.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.QueryValidationException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.dse.graph.api.DseGraph;
+import com.datastax.dse.graph.api.TraversalBatch;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+import com.killrvideo.utils.FutureUtils;
+
+/**
+ * Graph mutations coming from events are grouped in batches of traversals (one graph statement per batch).
+ *
+ * - a batch is sent when 'maxSize' mutations are waiting or 'windowMillis' after its first mutation
+ * - at most 'maxInFlight' statements are executed at the same time, then mutations wait in the queue.
+ *   Consumers of events bound the mutations in progress (their futures) and pause their partitions beyond (see
+ *   KafkaConsumerLoop). Other callers (in-memory event bus) are bounded by the queue: when 'queueMaxSize' mutations
+ *   are waiting {@link #submit(GraphTraversal)} blocks up to 'offerTimeoutMillis', then rejects the mutation
+ * - a batch is a transaction, when it is rejected (invalid mutation, unavailable or overloaded: surely not applied)
+ *   its mutations are retried one by one so that a single invalid mutation does not discard the others. Other
+ *   failures (timeouts) may have been applied, mutations are not retried: edges would be duplicated
+ *
+ * Metrics are exposed with JMX (bean 'killrvideo:type=GraphMutationBatcher').
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Component
+@ManagedResource(objectName = "killrvideo:type=GraphMutationBatcher", description = "Batches of graph mutations")
+public class GraphMutationBatcher {
+
+    /** Logger for that class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraphMutationBatcher.class);
+
+    @Value("${killrvideo.suggestedvideos.graphWriter.windowMillis: 50}")
+    private long windowMillis;
+
+    @Value("${killrvideo.suggestedvideos.graphWriter.maxBatchSize: 50}")
+    private int maxBatchSize;
+
+    @Value("${killrvideo.suggestedvideos.graphWriter.maxInFlight: 4}")
+    private int maxInFlight;
+
+    @Value("${killrvideo.suggestedvideos.graphWriter.queueMaxSize: 10000}")
+    private int queueMaxSize;
+
+    @Value("${killrvideo.suggestedvideos.graphWriter.offerTimeoutMillis: 1000}")
+    private long offerTimeoutMillis;
+
+    @Autowired
+    private DseSession dseSession;
+
+    /** Mutations waiting for a batch. */
+    private BlockingQueue<PendingMutation> queue;
+
+    /** Permits for statements in flight. */
+    private Semaphore inFlight;
+
+    /** Builds and sends batches. */
+    private ExecutorService flusher;
+
+    private volatile boolean running;
+
+    /** Metrics. */
+    private final AtomicLong batchCounter     = new AtomicLong();
+    private final AtomicLong mutationCounter  = new AtomicLong();
+    private final AtomicLong failedCounter    = new AtomicLong();
+    private final AtomicLong rejectedCounter  = new AtomicLong();
+    private final AtomicLong maxBatchObserved = new AtomicLong();
+
+    /**
+     * Start flusher.
+     */
+    @PostConstruct
+    public void start() {
+        queue    = new LinkedBlockingQueue<>(Math.max(1, queueMaxSize));
+        inFlight = new Semaphore(Math.max(1, maxInFlight));
+        running  = true;
+        flusher  = Executors.newSingleThreadExecutor(new KillrVideoThreadFactory());
+        flusher.submit(this::flushLoop);
+    }
+
+    /**
+     * Stop flusher, mutations still queued are sent.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        flusher.shutdownNow();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue a mutation, blocks up to 'offerTimeoutMillis' when the queue is full.
+     *
+     * @param traversal
+     *      mutation traversal
+     * @return
+     *      completes when the batch containing the mutation is written, failed with
+     *      {@link RejectedExecutionException} if the queue stayed full
+     */
+    public CompletableFuture<Void> submit(GraphTraversal<?, ?> traversal) {
+        PendingMutation mutation = new PendingMutation(traversal);
+        boolean queued;
+        try {
+            queued = queue.offer(mutation, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            if (rejectedCounter.incrementAndGet() % 100 == 1) {
+                LOGGER.warn("Graph mutation queue is full ({} mutations), {} mutations rejected so far",
+                        queue.size(), rejectedCounter.get());
+            }
+            mutation.future.completeExceptionally(new RejectedExecutionException("Graph mutation queue is full"));
+        }
+        return mutation.future;
+    }
+
+    /**
+     * Wait for a first mutation, then for others during the window.
+     */
+    private void flushLoop() {
+        List<PendingMutation> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMutation first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingMutation next = (remaining > 0) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                inFlight.acquire();
+                send(batch);
+            } catch (InterruptedException e) {
+                // Shutdown: send what is left without waiting
+                running = false;
+                queue.drainTo(batch);
+                if (!batch.isEmpty()) {
+                    send(batch);
+                }
+                return;
+            }
+            batch = new ArrayList<>(maxBatchSize);
+        }
+    }
+
+    /**
+     * Execute a batch, permit is released when done.
+     */
+    private void send(List<PendingMutation> batch) {
+        batchCounter.incrementAndGet();
+        mutationCounter.addAndGet(batch.size());
+        maxBatchObserved.accumulateAndGet(batch.size(), Math::max);
+        CompletableFuture<?> execution;
+        try {
+            TraversalBatch traversalBatch = DseGraph.batch();
+            batch.forEach(m -> traversalBatch.add(m.traversal));
+            execution = FutureUtils.asCompletableFuture(dseSession.executeGraphAsync(traversalBatch.asGraphStatement()));
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot send batch of {} graph mutations", batch.size(), e);
+            inFlight.release();
+            failedCounter.addAndGet(batch.size());
+            batch.forEach(m -> m.future.completeExceptionally(e));
+            return;
+        }
+        execution
+            .whenComplete((rs, error) -> {
+                if (error == null) {
+                    inFlight.release();
+                    batch.forEach(m -> m.future.complete(null));
+                } else if (batch.size() == 1 || !isNotApplied(error)) {
+                    inFlight.release();
+                    failedCounter.addAndGet(batch.size());
+                    if (batch.size() > 1) {
+                        LOGGER.error("Batch of {} graph mutations failed and may have been applied, not retried : {}", 
+                                batch.size(), error.getMessage());
+                    }
+                    batch.forEach(m -> m.future.completeExceptionally(error));
+                } else {
+                    LOGGER.warn("Batch of {} graph mutations failed, retrying them one by one : {}", batch.size(), error.getMessage());
+                    sendOneByOne(batch, 0);
+                }
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Graph batch of {} mutations done, {}", batch.size(), getStats());
+                }
+            });
+    }
+
+    /**
+     * Retry after a failed batch, sequential to keep a single statement in flight for the permit.
+     */
+    private void sendOneByOne(List<PendingMutation> batch, int index) {
+        if (index >= batch.size()) {
+            inFlight.release();
+            return;
+        }
+        PendingMutation mutation = batch.get(index);
+        CompletableFuture<?> execution;
+        try {
+            execution = FutureUtils.asCompletableFuture(dseSession.executeGraphAsync(DseGraph.statementFromTraversal(mutation.traversal)));
+        } catch (RuntimeException e) {
+            // Permit is released by the last mutation of the batch
+            failedCounter.incrementAndGet();
+            mutation.future.completeExceptionally(e);
+            sendOneByOne(batch, index + 1);
+            return;
+        }
+        execution
+            .whenComplete((rs, error) -> {
+                if (error == null) {
+                    mutation.future.complete(null);
+                } else {
+                    failedCounter.incrementAndGet();
+                    mutation.future.completeExceptionally(error);
+                }
+                sendOneByOne(batch, index + 1);
+            });
+    }
+
+    /**
+     * Batch rejected by the server or not sent: no mutation has been applied, retrying does not duplicate them.
+     */
+    private static boolean isNotApplied(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof UnavailableException 
+                || cause instanceof OverloadedException 
+                || cause instanceof QueryValidationException;
+    }
+
+    /**
+     * Getter for metric 'queueDepth'.
+     *
+     * @return
+     *       mutations waiting for a batch
+     */
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Getter for metric 'inFlight'.
+     *
+     * @return
+     *       graph statements being executed
+     */
+    @ManagedAttribute
+    public int getInFlight() {
+        return Math.max(1, maxInFlight) - inFlight.availablePermits();
+    }
+
+    /**
+     * Getter for metric 'averageBatchSize'.
+     *
+     * @return
+     *       mutations per batch since startup
+     */
+    @ManagedAttribute
+    public double getAverageBatchSize() {
+        long batches = batchCounter.get();
+        return batches == 0 ? 0 : (double) mutationCounter.get() / batches;
+    }
+
+    /**
+     * Getter for metric 'maxBatchSize'.
+     *
+     * @return
+     *       largest batch sent since startup
+     */
+    @ManagedAttribute
+    public long getMaxBatchSizeObserved() {
+        return maxBatchObserved.get();
+    }
+
+    /**
+     * Getter for metric 'failedCount'.
+     *
+     * @return
+     *       mutations not written
+     */
+    @ManagedAttribute
+    public long getFailedCount() {
+        return failedCounter.get();
+    }
+
+    /**
+     * Getter for metric 'rejectedCount'.
+     *
+     * @return
+     *       mutations rejected because the queue was full
+     */
+    @ManagedAttribute
+    public long getRejectedCount() {
+        return rejectedCounter.get();
+    }
+
+    /**
+     * Getter for metric 'batchCount'.
+     *
+     * @return
+     *       batches sent since startup
+     */
+    @ManagedAttribute
+    public long getBatchCount() {
+        return batchCounter.get();
+    }
+
+    /**
+     * Getter for metric 'mutationCount'.
+     *
+     * @return
+     *       mutations sent since startup
+     */
+    @ManagedAttribute
+    public long getMutationCount() {
+        return mutationCounter.get();
+    }
+
+    /**
+     * Metrics for monitoring.
+     *
+     * @return
+     *      metrics as a String
+     */
+    public String getStats() {
+        return String.format("queue=%d, inFlight=%d, batches=%d, mutations=%d, avgBatchSize=%.1f, maxBatchSize=%d, failed=%d, rejected=%d",
+                getQueueDepth(), getInFlight(), getBatchCount(), getMutationCount(),
+                getAverageBatchSize(), getMaxBatchSizeObserved(), getFailedCount(), getRejectedCount());
+    }
+
+    /**
+     * Mutation and its completion.
+     */
+    private static final class PendingMutation {
+
+        private final GraphTraversal<?, ?>    traversal;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingMutation(GraphTraversal<?, ?> traversal) {
+            this.traversal = traversal;
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.killrvideo.service.sugestedvideo.dao;
+
+import static org.apache.tinkerpop.gremlin.process.traversal.P.within;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.dse.graph.GraphNode;
+import com.datastax.driver.dse.graph.GraphStatement;
+import com.datastax.driver.dse.graph.Vertex;
+import com.datastax.dse.graph.api.DseGraph;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.killrvideo.dse.graph.KillrVideoTraversalConstants;
+import com.killrvideo.dse.graph.KillrVideoTraversalSource;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+import com.killrvideo.utils.FutureUtils;
+
+/**
+ * Ids of tag and user vertices known to exist in the graph, so that mutations from events address them with
+ * {@code V(id)} instead of looking for them by key before creating them.
+ *
+ * Loaded in background at startup (scan of the vertex labels, bounded) then filled with vertices written
+ * by this service: their ids are read once, off the write path. Vertices are never dropped, an entry does not
+ * become wrong; a missing entry only means the full 'get or create' traversal is used.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Component
+public class GraphVertexCache implements KillrVideoTraversalConstants {
+
+    /** Logger for that class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraphVertexCache.class);
+
+    @Value("${killrvideo.suggestedvideos.vertexCache.tags.maxSize: 100000}")
+    private int tagsMaxSize;
+
+    @Value("${killrvideo.suggestedvideos.vertexCache.users.maxSize: 1000000}")
+    private int usersMaxSize;
+
+    /** Scans are longer than usual graph queries. */
+    @Value("${killrvideo.suggestedvideos.vertexCache.warmupTimeoutMillis: 60000}")
+    private int warmupTimeoutMillis;
+
+    @Autowired
+    private DseSession dseSession;
+
+    @Autowired
+    private KillrVideoTraversalSource traversalSource;
+
+    /** Vertex ids of tags by name. */
+    private Cache < String, Object > knownTags;
+
+    /** Vertex ids of users by userid. */
+    private Cache < UUID, Object > knownUsers;
+
+    /** Warmup. */
+    private ExecutorService loader;
+
+    /**
+     * Create caches and load them in background.
+     */
+    @PostConstruct
+    public void start() {
+        knownTags  = CacheBuilder.newBuilder().maximumSize(Math.max(1, tagsMaxSize)).build();
+        knownUsers = CacheBuilder.newBuilder().maximumSize(Math.max(1, usersMaxSize)).build();
+        loader = Executors.newSingleThreadExecutor(new KillrVideoThreadFactory());
+        loader.submit(this::warmup);
+    }
+
+    /**
+     * Stop warmup.
+     */
+    @PreDestroy
+    public void stop() {
+        loader.shutdownNow();
+    }
+
+    /**
+     * Id of a tag vertex.
+     *
+     * @param name
+     *      tag
+     * @return
+     *      vertex id if known to exist, null if unknown
+     */
+    public Object getTagVertexId(String name) {
+        return knownTags.getIfPresent(name);
+    }
+
+    /**
+     * Tag vertices have been written, read the ids of those not known yet.
+     *
+     * @param names
+     *      tags
+     */
+    public void addTags(Collection<String> names) {
+        Set<String> unknown = names.stream()
+                .filter(name -> knownTags.getIfPresent(name) == null)
+                .collect(Collectors.toSet());
+        if (!unknown.isEmpty()) {
+            resolve(traversalSource.V().has(VERTEX_TAG, KEY_NAME, within(unknown)), this::putTag);
+        }
+    }
+
+    /**
+     * Id of a user vertex.
+     *
+     * @param userid
+     *      user
+     * @return
+     *      vertex id if known to exist, null if unknown
+     */
+    public Object getUserVertexId(UUID userid) {
+        return knownUsers.getIfPresent(userid);
+    }
+
+    /**
+     * User vertex has been written, read its id if not known yet.
+     *
+     * @param userid
+     *      user
+     */
+    public void addUser(UUID userid) {
+        if (knownUsers.getIfPresent(userid) == null) {
+            resolve(traversalSource.V().has(VERTEX_USER, KEY_USER_ID, userid), this::putUser);
+        }
+    }
+
+    /**
+     * Number of tags known.
+     *
+     * @return
+     *      tags in cache
+     */
+    public long getKnownTagCount() {
+        return knownTags.size();
+    }
+
+    /**
+     * Number of users known.
+     *
+     * @return
+     *      users in cache
+     */
+    public long getKnownUserCount() {
+        return knownUsers.size();
+    }
+
+    /**
+     * Read existing vertices, failures only mean a cold cache.
+     */
+    private void warmup() {
+        long top = System.currentTimeMillis();
+        try {
+            for (GraphNode node : scan(traversalSource.V().hasLabel(VERTEX_TAG).limit(tagsMaxSize))) {
+                putTag(node.asVertex());
+            }
+            for (GraphNode node : scan(traversalSource.V().hasLabel(VERTEX_USER).limit(usersMaxSize))) {
+                putUser(node.asVertex());
+            }
+            LOGGER.info("Graph vertex cache loaded with {} tags and {} users in {} millis",
+                    knownTags.size(), knownUsers.size(), System.currentTimeMillis() - top);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cannot load graph vertex cache ({} tags, {} users), it is filled as vertices are written : {}",
+                    knownTags.size(), knownUsers.size(), e.getMessage());
+        }
+    }
+
+    private Iterable<GraphNode> scan(Traversal<?, ?> traversal) {
+        GraphStatement statement = DseGraph.statementFromTraversal(traversal);
+        statement.setReadTimeoutMillis(Math.max(1, warmupTimeoutMillis));
+        return dseSession.executeGraph(statement);
+    }
+
+    /**
+     * Read vertices just written by their key, failures only mean they are not cached.
+     */
+    private void resolve(Traversal<?, ?> traversal, Consumer<Vertex> put) {
+        FutureUtils.asCompletableFuture(dseSession.executeGraphAsync(DseGraph.statementFromTraversal(traversal)))
+                   .whenComplete((rs, error) -> {
+            if (error == null) {
+                rs.forEach(node -> put.accept(node.asVertex()));
+            } else {
+                LOGGER.debug("Cannot read ids of written vertices, they are not cached : {}", error.getMessage());
+            }
+        });
+    }
+
+    private void putTag(Vertex vertex) {
+        knownTags.put(vertex.getProperty(KEY_NAME).getValue().asString(), vertex.getId().asMap());
+    }
+
+    private void putUser(Vertex vertex) {
+        knownUsers.put(vertex.getProperty(KEY_USER_ID).getValue().as(UUID.class), vertex.getId().asMap());
+    }
+
+}
@@ -0,0 +1,305 @@
+package com.killrvideo.service.sugestedvideo.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.killrvideo.dse.dao.DseDaoSupport;
+import com.killrvideo.dse.dto.Video;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+import com.killrvideo.service.sugestedvideo.recommender.ItemItemIndex;
+
+/**
+ * Recommendations computed in memory with {@link ItemItemIndex}, no DSE Graph query.
+ *
+ * Index is loaded at startup from table 'video_ratings_by_user' (background scan): the table has no date, ratings
+ * are ordered by write time, the last 'recentRatings' of the 'maxUsers' most recently active users are replayed oldest
+ * first. It is then fed with every 'UserRatedVideo' event (all partitions, whatever the outcome of the graph update),
+ * the first 'maxRatingsDuringLoad' events received during the scan are applied after it. Only active when selected
+ * with 'killrvideo.suggestedvideos.recommender: itemItem'.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Repository
+public class ItemItemRecommender extends DseDaoSupport implements Recommender {
+
+    /** Logger for that class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ItemItemRecommender.class);
+
+    /** Table and columns. */
+    public static final String TABLENAME_VIDEO_RATINGS_BY_USER = "video_ratings_by_user";
+    public static final String COLUMN_VIDEOID = "videoid";
+    public static final String COLUMN_USERID  = "userid";
+    public static final String COLUMN_RATING  = "rating";
+
+    @Value("${killrvideo.suggestedvideos.recommender: graph}")
+    private String recommenderName;
+
+    @Value("${killrvideo.suggestedvideos.itemItem.recommendations: 20}")
+    private int recommendations;
+
+    /** Same as graph traversal: ratings considered as 'like'. */
+    @Value("${killrvideo.suggestedvideos.itemItem.minRating: 4}")
+    private int minRating;
+
+    @Value("${killrvideo.suggestedvideos.itemItem.recentRatings: 50}")
+    private int recentRatings;
+
+    @Value("${killrvideo.suggestedvideos.itemItem.maxNeighbours: 200}")
+    private int maxNeighbours;
+
+    @Value("${killrvideo.suggestedvideos.itemItem.maxUsers: 500000}")
+    private int maxUsers;
+
+    @Value("${killrvideo.suggestedvideos.itemItem.maxRatingsDuringLoad: 100000}")
+    private int maxRatingsDuringLoad;
+
+    @Autowired
+    private SuggestedVideosDseDao suggestedVideosDseDao;
+
+    /** Index, null if not selected. */
+    private ItemItemIndex index;
+
+    /** Initial load. */
+    private ExecutorService loader;
+
+    /** Ratings received during initial load, guarded by itself. */
+    private final List<StoredRating> ratingsDuringLoad = new ArrayList<>();
+
+    /** Ratings received during initial load beyond 'maxRatingsDuringLoad', guarded by ratingsDuringLoad. */
+    private long droppedDuringLoad = 0;
+
+    /** Initial load done (or failed), ratings go to the index. */
+    private boolean loaded = false;
+
+    /**
+     * Default constructor.
+     */
+    public ItemItemRecommender() {
+        super();
+    }
+
+    /**
+     * Allow explicit intialization for test purpose.
+     */
+    public ItemItemRecommender(DseSession dseSession) {
+        super(dseSession);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void initialize() {
+        if (!RECOMMENDER_ITEM_ITEM.equals(recommenderName)) {
+            return;
+        }
+        index  = new ItemItemIndex(minRating, recentRatings, maxNeighbours, maxUsers);
+        loader = Executors.newSingleThreadExecutor(new KillrVideoThreadFactory());
+        loader.submit(this::loadRatings);
+    }
+
+    /**
+     * Stop initial load.
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+    }
+
+    /**
+     * Tell if this engine is selected.
+     *
+     * @return
+     *      true if index is maintained
+     */
+    public boolean isEnabled() {
+        return index != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture< List<Video> > getRecommendationsAsync(UUID userid) {
+        List<UUID> videoids = index.recommend(userid, Math.max(1, recommendations));
+        return suggestedVideosDseDao.findVideosByIds(videoids);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onUserRatedVideo(UUID userid, UUID videoid, int rating) {
+        if (index == null) {
+            return;
+        }
+        synchronized (ratingsDuringLoad) {
+            if (!loaded) {
+                if (ratingsDuringLoad.size() < Math.max(0, maxRatingsDuringLoad)) {
+                    ratingsDuringLoad.add(new StoredRating(userid, videoid, rating, 0));
+                } else {
+                    droppedDuringLoad++;
+                }
+                return;
+            }
+        }
+        index.addRating(userid, videoid, rating);
+    }
+
+    /**
+     * Ratings stored before startup, most recent of each user replayed in write time order.
+     *
+     * The table is partitioned by video, ratings of a user come all along the scan: at most twice 'maxUsers' users are
+     * kept, the least recently active half is dropped when reached (a dropped user seen again starts over).
+     */
+    private void loadRatings() {
+        long top   = System.currentTimeMillis();
+        long count = 0;
+        try {
+            Statement scan = QueryBuilder.select()
+                    .column(COLUMN_VIDEOID).column(COLUMN_USERID).column(COLUMN_RATING).writeTime(COLUMN_RATING)
+                    .from(KILLRVIDEO_KEYSPACE, TABLENAME_VIDEO_RATINGS_BY_USER)
+                    .setFetchSize(1000)
+                    .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            // Oldest rating of a user on top, removed when more than 'recentRatings'
+            Map<UUID, UserRatings> recentByUser = new HashMap<>();
+            int perUser   = Math.max(1, recentRatings);
+            int keptUsers = Math.max(1, maxUsers);
+            long droppedUsers = 0;
+            for (Row row : dseSession.execute(scan)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                StoredRating rating = new StoredRating(row.getUUID(COLUMN_USERID), row.getUUID(COLUMN_VIDEOID),
+                        row.getInt(COLUMN_RATING), row.getLong(3));
+                recentByUser.computeIfAbsent(rating.userid, u -> new UserRatings()).offer(rating, perUser);
+                if (recentByUser.size() >= 2 * keptUsers) {
+                    droppedUsers += retainMostRecent(recentByUser, keptUsers);
+                }
+            }
+            droppedUsers += retainMostRecent(recentByUser, keptUsers);
+            // Merge of the users ratings, oldest first: least recently active users are evicted first by the index
+            PriorityQueue<UserRatings> replay = new PriorityQueue<>(Math.max(1, recentByUser.size()),
+                    Comparator.comparingLong(UserRatings::oldestWriteTime));
+            replay.addAll(recentByUser.values());
+            recentByUser = null;
+            while (!replay.isEmpty()) {
+                UserRatings user = replay.poll();
+                StoredRating rating = user.ratings.poll();
+                index.addRating(rating.userid, rating.videoid, rating.rating);
+                count++;
+                if (!user.ratings.isEmpty()) {
+                    replay.offer(user);
+                }
+            }
+            LOGGER.info("Item-item index loaded with {} ratings ({} videos, {} users, {} users dropped) in {} millis",
+                    count, index.getItemCount(), index.getUserCount(), droppedUsers, System.currentTimeMillis() - top);
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot load item-item index from table video_ratings_by_user after {} ratings", count, e);
+        } finally {
+            synchronized (ratingsDuringLoad) {
+                ratingsDuringLoad.forEach(r -> index.addRating(r.userid, r.videoid, r.rating));
+                LOGGER.info("{} ratings received during load applied to item-item index, {} dropped",
+                        ratingsDuringLoad.size(), droppedDuringLoad);
+                ratingsDuringLoad.clear();
+                loaded = true;
+            }
+        }
+    }
+
+    /**
+     * Keep the users with the most recent ratings.
+     *
+     * @return
+     *      number of users dropped
+     */
+    private static int retainMostRecent(Map<UUID, UserRatings> recentByUser, int keptUsers) {
+        int dropped = recentByUser.size() - keptUsers;
+        if (dropped <= 0) {
+            return 0;
+        }
+        long[] lastWriteTimes = new long[recentByUser.size()];
+        int i = 0;
+        for (UserRatings user : recentByUser.values()) {
+            lastWriteTimes[i++] = user.lastWriteTime;
+        }
+        Arrays.sort(lastWriteTimes);
+        long threshold = lastWriteTimes[dropped - 1];
+        // Users last active before the threshold, then users on the threshold in map order, to keep exactly 'keptUsers'
+        int tiesToDrop = dropped;
+        while (tiesToDrop > 0 && lastWriteTimes[dropped - tiesToDrop] < threshold) {
+            tiesToDrop--;
+        }
+        Iterator<UserRatings> users = recentByUser.values().iterator();
+        while (users.hasNext()) {
+            long lastWriteTime = users.next().lastWriteTime;
+            if (lastWriteTime < threshold) {
+                users.remove();
+            } else if (lastWriteTime == threshold && tiesToDrop > 0) {
+                users.remove();
+                tiesToDrop--;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Row of 'video_ratings_by_user' with its write time (micros).
+     */
+    private static final class StoredRating {
+
+        private final UUID userid;
+        private final UUID videoid;
+        private final int  rating;
+        private final long writeTime;
+
+        private StoredRating(UUID userid, UUID videoid, int rating, long writeTime) {
+            this.userid    = userid;
+            this.videoid   = videoid;
+            this.rating    = rating;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * Most recent ratings of a user during the scan, oldest on top.
+     */
+    private static final class UserRatings {
+
+        private final PriorityQueue<StoredRating> ratings =
+                new PriorityQueue<>(Comparator.comparingLong((StoredRating r) -> r.writeTime));
+        private long lastWriteTime = Long.MIN_VALUE;
+
+        private void offer(StoredRating rating, int perUser) {
+            ratings.offer(rating);
+            if (ratings.size() > perUser) {
+                ratings.poll();
+            }
+            lastWriteTime = Math.max(lastWriteTime, rating.writeTime);
+        }
+
+        private long oldestWriteTime() {
+            return ratings.peek().writeTime;
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.killrvideo.service.sugestedvideo.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.dse.graph.api.DseGraph;
+import com.killrvideo.dse.dao.DseDaoSupport;
+import com.killrvideo.dse.graph.KillrVideoTraversal;
+import com.killrvideo.dse.graph.KillrVideoTraversalSource;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+import com.killrvideo.utils.FutureUtils;
+
+/**
+ * Background job merging duplicate "rated" edges, written when ratings were only appended (replayed events,
+ * users rating again). New ratings are upserted, see {@link KillrVideoTraversal#rated(UUID, Integer)}.
+ *
+ * Videos are read from table 'video_ratings_by_user' a page at a time, duplicates of each video are dropped
+ * (see {@link KillrVideoTraversal#compactRatings()}) and the edge kept gets the rating of the table.
+ * A pass over all videos is started every 'passIntervalHours'.
+ *
+ * The edge kept is the same whatever the instance, concurrent passes are safe but redundant: enable the job
+ * ('ratedCompaction.enabled') on a single instance.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Repository
+public class RatedEdgesCompactor extends DseDaoSupport {
+
+    /** Logger for that class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RatedEdgesCompactor.class);
+
+    /** Table and columns. */
+    public static final String TABLENAME_VIDEO_RATINGS_BY_USER = "video_ratings_by_user";
+    public static final String COLUMN_VIDEOID = "videoid";
+    public static final String COLUMN_USERID  = "userid";
+    public static final String COLUMN_RATING  = "rating";
+
+    @Value("${killrvideo.suggestedvideos.ratedCompaction.enabled: false}")
+    private boolean enabled;
+
+    @Value("${killrvideo.suggestedvideos.ratedCompaction.intervalMillis: 1000}")
+    private long intervalMillis;
+
+    @Value("${killrvideo.suggestedvideos.ratedCompaction.batchSize: 50}")
+    private int batchSize;
+
+    @Value("${killrvideo.suggestedvideos.ratedCompaction.passIntervalHours: 24}")
+    private long passIntervalHours;
+
+    @Autowired
+    private KillrVideoTraversalSource traversalSource;
+
+    @Autowired
+    private SuggestedVideosDseDao suggestedVideosDseDao;
+
+    /** Precompile statements to speed up queries. */
+    private PreparedStatement findRating;
+
+    /** Position in the table, null at the start of a pass. */
+    private PagingState pagingState;
+
+    /** Start of the next pass, 0 when a pass is running. */
+    private long nextPassMillis;
+
+    /** Compaction job. */
+    private ScheduledExecutorService compactor;
+
+    /** Counters. */
+    private final AtomicLong videoCounter     = new AtomicLong();
+    private final AtomicLong duplicateCounter = new AtomicLong();
+    private final AtomicLong passCounter      = new AtomicLong();
+
+    /**
+     * Default constructor.
+     */
+    public RatedEdgesCompactor() {
+        super();
+    }
+
+    /**
+     * Allow explicit intialization for test purpose.
+     */
+    public RatedEdgesCompactor(DseSession dseSession) {
+        super(dseSession);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void initialize() {
+        findRating = dseSession.prepare(QueryBuilder
+                .select(COLUMN_RATING)
+                .from(KILLRVIDEO_KEYSPACE, TABLENAME_VIDEO_RATINGS_BY_USER)
+                .where(QueryBuilder.eq(COLUMN_VIDEOID, QueryBuilder.bindMarker()))
+                .and(QueryBuilder.eq(COLUMN_USERID, QueryBuilder.bindMarker())));
+        if (enabled) {
+            long interval = Math.max(10, intervalMillis);
+            compactor = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+            compactor.scheduleWithFixedDelay(this::compactNextVideos, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop compaction job.
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+    }
+
+    /**
+     * Counters for monitoring.
+     *
+     * @return
+     *      counters as a String
+     */
+    public String getCompactionStats() {
+        return "passes=" + passCounter.get() + ", videos=" + videoCounter.get() + ", duplicates=" + duplicateCounter.get();
+    }
+
+    /**
+     * Next page of videos, one at a time so that graph load stays low.
+     */
+    private void compactNextVideos() {
+        if (System.currentTimeMillis() < nextPassMillis) {
+            return;
+        }
+        try {
+            Statement page = QueryBuilder.select(COLUMN_VIDEOID).distinct()
+                    .from(KILLRVIDEO_KEYSPACE, TABLENAME_VIDEO_RATINGS_BY_USER)
+                    .setFetchSize(Math.max(1, batchSize))
+                    .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+            if (pagingState != null) {
+                page.setPagingState(pagingState);
+            }
+            ResultSet rs = dseSession.execute(page);
+            List<UUID> videoids = new ArrayList<>();
+            for (Row row : rs) {
+                videoids.add(row.getUUID(COLUMN_VIDEOID));
+                if (rs.getAvailableWithoutFetching() == 0) {
+                    break;
+                }
+            }
+            for (UUID videoid : videoids) {
+                compactVideo(videoid).join();
+                videoCounter.incrementAndGet();
+            }
+            pagingState = rs.getExecutionInfo().getPagingState();
+            if (pagingState == null) {
+                passCounter.incrementAndGet();
+                nextPassMillis = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(Math.max(1, passIntervalHours));
+                LOGGER.info("Pass of rated edges compaction done: {}", getCompactionStats());
+            } else {
+                nextPassMillis = 0;
+            }
+        } catch (RuntimeException e) {
+            // Same page is retried at next run, scheduled executor stops on first exception
+            LOGGER.warn("Cannot compact rated edges, will retry", e);
+        }
+    }
+
+    /**
+     * Drop duplicates of a video then restore the rating of the users concerned.
+     */
+    @SuppressWarnings("rawtypes")
+    private CompletableFuture<Void> compactVideo(UUID videoid) {
+        KillrVideoTraversal traversal = traversalSource.videos(videoid.toString()).compactRatings();
+        return FutureUtils.asCompletableFuture(dseSession.executeGraphAsync(DseGraph.statementFromTraversal(traversal)))
+                .thenCompose(rs -> {
+                    List<CompletableFuture<Void>> fixes = new ArrayList<>();
+                    rs.all().forEach(node -> {
+                        UUID userid = node.as(UUID.class);
+                        duplicateCounter.incrementAndGet();
+                        fixes.add(FutureUtils.asCompletableFuture(dseSession.executeAsync(findRating.bind(videoid, userid)))
+                                .thenCompose(ratingRs -> {
+                                    Row row = ratingRs.one();
+                                    if (row == null) {
+                                        return CompletableFuture.completedFuture(null);
+                                    }
+                                    return suggestedVideosDseDao.updateGraphNewUserRating(videoid.toString(), userid, row.getInt(COLUMN_RATING));
+                                }));
+                    });
+                    return CompletableFuture.allOf(fixes.toArray(new CompletableFuture[0]));
+                });
+    }
+
+}
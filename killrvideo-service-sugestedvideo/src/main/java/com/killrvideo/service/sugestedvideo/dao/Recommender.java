@@ -0,0 +1,44 @@
+package com.killrvideo.service.sugestedvideo.dao;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Engine computing videos suggested to a user: DSE Graph traversal (default, precomputed in
+ * {@link VideoRecommendationsDao}) or item-to-item collaborative filtering in memory ({@link ItemItemRecommender}).
+ * Selected with 'killrvideo.suggestedvideos.recommender'.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public interface Recommender {
+
+    /** Values for 'killrvideo.suggestedvideos.recommender'. */
+    String RECOMMENDER_GRAPH     = "graph";
+    String RECOMMENDER_ITEM_ITEM = "itemItem";
+
+    /**
+     * Videos suggested to a user.
+     *
+     * @param userid
+     *      current user
+     * @return
+     *      videos, best first
+     */
+    CompletableFuture < List<Video> > getRecommendationsAsync(UUID userid);
+
+    /**
+     * A rating has been recorded (graph edge written).
+     *
+     * @param userid
+     *      user who rated
+     * @param videoid
+     *      rated video
+     * @param rating
+     *      rating
+     */
+    void onUserRatedVideo(UUID userid, UUID videoid, int rating);
+
+}
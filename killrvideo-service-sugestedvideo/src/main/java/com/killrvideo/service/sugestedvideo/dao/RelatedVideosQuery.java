@@ -0,0 +1,167 @@
+package com.killrvideo.service.sugestedvideo.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Terms of a video (tags, then words of name, then words of description) and the 'solr_query' looking for
+ * videos sharing them. Computed once per video and cached, as videos are not updated.
+ *
+ * Immutable.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class RelatedVideosQuery {
+
+    /** Words of name and description. */
+    private static final Pattern EACH_WORD = Pattern.compile("[^\\w]");
+
+    /** Chars with a meaning in Lucene query syntax (tags are free text). */
+    private static final String SOLR_SPECIAL_CHARS = "+-&|!(){}[]^\"~*?:\\/";
+
+    /** Source video. */
+    private final UUID videoid;
+
+    /** Terms kept, escaped, most significant first. */
+    private final List<String> terms;
+
+    /** Value of 'solr_query', null if there is no term. */
+    private final String solrQuery;
+
+    /**
+     * Use {@link #of(Video, Set, int)}.
+     */
+    private RelatedVideosQuery(UUID videoid, List<String> terms) {
+        this.videoid   = videoid;
+        this.terms     = Collections.unmodifiableList(terms);
+        this.solrQuery = terms.isEmpty() ? null : render(terms);
+    }
+
+    /**
+     * Extract terms of a video.
+     *
+     * @param video
+     *      source video
+     * @param ignoredWords
+     *      lowercase words to drop
+     * @param maxTerms
+     *      bound of the number of clauses of the query
+     * @return
+     *      query for related videos
+     */
+    public static RelatedVideosQuery of(Video video, Set<String> ignoredWords, int maxTerms) {
+        Set<String> termSet = new LinkedHashSet<>();
+        if (video.getTags() != null) {
+            for (String tag : video.getTags()) {
+                String term = tag.trim().toLowerCase(Locale.ROOT);
+                if (!term.isEmpty() && !ignoredWords.contains(term)) {
+                    // Multi-words tags are searched as phrases
+                    String escaped = escape(term);
+                    termSet.add(term.indexOf(' ') < 0 ? escaped : "\\\"" + escaped.replaceAll("\\s+", " ") + "\\\"");
+                }
+            }
+        }
+        addWords(video.getName(), ignoredWords, termSet);
+        addWords(video.getDescription(), ignoredWords, termSet);
+
+        List<String> terms = new ArrayList<>(termSet);
+        if (terms.size() > maxTerms) {
+            terms = new ArrayList<>(terms.subList(0, Math.max(1, maxTerms)));
+        }
+        return new RelatedVideosQuery(video.getVideoid(), terms);
+    }
+
+    /**
+     * Getter for attribute 'videoid'.
+     *
+     * @return
+     *       source video
+     */
+    public UUID getVideoid() {
+        return videoid;
+    }
+
+    /**
+     * Getter for attribute 'terms'.
+     *
+     * @return
+     *       escaped terms
+     */
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    /**
+     * Getter for attribute 'solrQuery'.
+     *
+     * @return
+     *       value for 'solr_query' column, null if there is no term
+     */
+    public String getSolrQuery() {
+        return solrQuery;
+    }
+
+    /**
+     * Tell if nothing can be searched.
+     *
+     * @return
+     *      true if no term
+     */
+    public boolean isEmpty() {
+        return terms.isEmpty();
+    }
+
+    /**
+     * Same boosts as before: tags, then name, then description.
+     * "paging":"driver" enables paging regardless of nodes dse.yaml setting.
+     */
+    private static String render(List<String> terms) {
+        String delimitedTermList = String.join(",", terms);
+        return "{\"q\":\"name:(" + delimitedTermList + ")^2 tags:(" + delimitedTermList + ")^4 description:("
+                + delimitedTermList + ")\", \"paging\":\"driver\"}";
+    }
+
+    private static void addWords(String text, Set<String> ignoredWords, Set<String> termSet) {
+        if (text == null) {
+            return;
+        }
+        for (String word : EACH_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty() && !ignoredWords.contains(word)) {
+                termSet.add(word);
+            }
+        }
+    }
+
+    /**
+     * Backslash for Solr, doubled for the JSON string.
+     */
+    private static String escape(String tag) {
+        StringBuilder sb = new StringBuilder(tag.length() + 4);
+        for (int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            if (Character.isISOControl(c)) {
+                continue;
+            }
+            if (SOLR_SPECIAL_CHARS.indexOf(c) >= 0) {
+                sb.append(c == '"' || c == '\\' ? "\\\\\\" : "\\\\");
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return solrQuery;
+    }
+
+}
@@ -1,17 +1,20 @@
 package com.killrvideo.service.sugestedvideo.dao;
 
 import java.time.Instant;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.apache.tinkerpop.gremlin.process.traversal.Bindings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,10 +31,12 @@ import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.dse.graph.GraphNode;
 import com.datastax.driver.dse.graph.GraphResultSet;
 import com.datastax.driver.dse.graph.GraphStatement;
+import com.datastax.driver.dse.graph.SimpleGraphStatement;
 import com.datastax.driver.dse.graph.Vertex;
 import com.datastax.driver.mapping.Mapper;
-import com.datastax.driver.mapping.Result;
 import com.datastax.dse.graph.api.DseGraph;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 import com.killrvideo.dse.dao.DseDaoSupport;
 import com.killrvideo.dse.dto.ResultListPage;
@@ -53,6 +58,15 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
     
     /** Logger for DAO. */
     private static final Logger LOGGER = LoggerFactory.getLogger(SuggestedVideosDseDao.class);
+    
+    /** Parameters of the recommendation traversal (number of videos is 'forUser.candidates'). */
+    private static final int RECOMMEND_MIN_RATING          = 4;
+    private static final int RECOMMEND_RATINGS_TO_SAMPLE   = 1000;
+    private static final int RECOMMEND_LOCAL_RATINGS       = 5;
+    
+    /** Name of the parameter of the recommendation script, and the value bound to it when translating the traversal. */
+    private static final String PARAM_USER_ID       = "userId";
+    private static final String USER_ID_PLACEHOLDER = "__killrvideo_userId__";
 
     /** Mapper to ease queries. */
     protected Mapper< Video > mapperVideo;
@@ -63,13 +77,13 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
     @Autowired
     private KillrVideoTraversalSource traversalSource;
     
-    /**
-     * Wrap search queries with "paging":"driver" to dynamically enable
-     * paging to ensure we pull back all available results in the application.
-     * https://docs.datastax.com/en/dse/6.0/cql/cql/cql_using/search_index/cursorsDeepPaging.html#cursorsDeepPaging__using-paging-with-cql-solr-queries-solrquery-Rim2GsbY
-     */
-    private String pagingDriverStart = "{\"q\":\"";
-    private String pagingDriverEnd = "\", \"paging\":\"driver\"}";
+    /** Mutations from events are sent by batches. */
+    @Autowired
+    private GraphMutationBatcher graphMutationBatcher;
+    
+    /** Tag and user vertices known to exist. */
+    @Autowired
+    private GraphVertexCache graphVertexCache;
     
     /**
      * Create a set of sentence conjunctions and other "undesirable"
@@ -80,6 +94,44 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
     @Value("#{'${killrvideo.search.ignoredWords}'.split(',')}")
     private Set<String> ignoredWords = new HashSet<>();
     
+    /** Bound of the number of clauses in the related videos query. */
+    @Value("${killrvideo.suggestedvideos.related.maxTerms: 50}")
+    private int relatedMaxTerms;
+    
+    @Value("${killrvideo.suggestedvideos.related.terms.maxSize: 10000}")
+    private long relatedTermsMaxSize;
+    
+    @Value("${killrvideo.suggestedvideos.related.terms.ttlSeconds: 3600}")
+    private long relatedTermsTtlSeconds;
+    
+    @Value("${killrvideo.suggestedvideos.related.firstPage.maxSize: 10000}")
+    private long relatedFirstPageMaxSize;
+    
+    @Value("${killrvideo.suggestedvideos.related.firstPage.ttlSeconds: 300}")
+    private long relatedFirstPageTtlSeconds;
+    
+    /** Terms and rendered query by video, videos are not updated. */
+    private Cache < UUID, CompletableFuture < RelatedVideosQuery > > relatedQueries;
+    
+    /** First page of related videos by video (most calls, from the video page). */
+    private Cache < RelatedPageKey, CompletableFuture < ResultListPage<Video> > > relatedFirstPages;
+    
+    /** Videos returned by the traversal, reranked then cut (see SuggestionsReranker). */
+    @Value("${killrvideo.suggestedvideos.forUser.candidates: 20}")
+    private int recommendCandidates;
+    
+    @Value("${killrvideo.suggestedvideos.forUser.maxSize: 10000}")
+    private long forUserMaxSize;
+    
+    @Value("${killrvideo.suggestedvideos.forUser.ttlSeconds: 30}")
+    private long forUserTtlSeconds;
+    
+    /** Recommendation traversal translated once to a script taking parameter 'userId', null if not available. */
+    private String recommendScript;
+    
+    /** Live recommendations by user, short lived (reloads and retries of the same page). */
+    private Cache < UUID, CompletableFuture < List<Video> > > suggestionsForUser;
+    
     /**
      * Default constructor.
      */
@@ -105,39 +157,147 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
                 .from(keyspaceVideo, tableNameVideo)
                 .where(QueryBuilder.eq(SOLR_QUERY, QueryBuilder.bindMarker()));
         findRelatedVideos = dseSession.prepare(queryFindRelatedVideos);
+        
+        // Called from test constructor before field initializers: sizes are guarded
+        relatedQueries = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, relatedTermsMaxSize))
+                .expireAfterWrite(Math.max(1, relatedTermsTtlSeconds), TimeUnit.SECONDS)
+                .build();
+        relatedFirstPages = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, relatedFirstPageMaxSize))
+                .expireAfterWrite(Math.max(1, relatedFirstPageTtlSeconds), TimeUnit.SECONDS)
+                .build();
+        suggestionsForUser = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, forUserMaxSize))
+                .expireAfterWrite(Math.max(1, forUserTtlSeconds), TimeUnit.SECONDS)
+                .build();
+        recommendScript = compileRecommendScript();
+    }
+    
+    /**
+     * Translate the recommendation traversal to Groovy once, user id becomes a parameter of the script so that
+     * the statement text is the same for all users (compiled once and cached by DSE Graph). The user id is a binding
+     * of the traversal, translated as the variable 'userId' instead of a literal.
+     */
+    @SuppressWarnings("rawtypes")
+    private String compileRecommendScript() {
+        if (traversalSource == null) {
+            // Explicit initialization (tests), traversal is built per call
+            return null;
+        }
+        KillrVideoTraversal graphTraversal = traversalSource.V()
+                .hasLabel(VERTEX_USER)
+                .has(KEY_USER_ID, Bindings.instance().of(PARAM_USER_ID, USER_ID_PLACEHOLDER))
+                .recommendByUserRating(Math.max(1, recommendCandidates), RECOMMEND_MIN_RATING, RECOMMEND_RATINGS_TO_SAMPLE, RECOMMEND_LOCAL_RATINGS);
+        String script = DseUtils.displayGraphTranserval(graphTraversal);
+        if (script.contains(USER_ID_PLACEHOLDER)) {
+            LOGGER.warn("Cannot parameterize recommendation traversal, it will be built for each call: {}", script);
+            return null;
+        }
+        LOGGER.info("Recommendation traversal compiled as : {}", script);
+        return script;
     }
     
     /**
      * Get Pageable result for related video.
+     * 
+     * Terms of the video are extracted once and cached, first page is cached (next pages depend on a paging state).
      **/
     public CompletableFuture< ResultListPage<Video> > getRelatedVideos(UUID videoId, int fetchSize, Optional<String> pagingState) {
-        CompletableFuture<Result<Video>> relatedVideosFuture = findVideoById(videoId).thenCompose(video -> {
-            BoundStatement stmt = createStatementToSearchVideos(video, fetchSize, pagingState);
-            return FutureUtils.asCompletableFuture(mapperVideo.mapAsync(dseSession.executeAsync(stmt)));
+        Assert.notNull(videoId, "videoid is required to search related videos");
+        if (pagingState.isPresent()) {
+            return executeRelatedVideos(videoId, fetchSize, pagingState);
+        }
+        return getOrLoad(relatedFirstPages, new RelatedPageKey(videoId, fetchSize), 
+                () -> executeRelatedVideos(videoId, fetchSize, Optional.empty()));
+    }
+    
+    /**
+     * Query DSE Search with the terms of the video.
+     */
+    private CompletableFuture< ResultListPage<Video> > executeRelatedVideos(UUID videoId, int fetchSize, Optional<String> pagingState) {
+        return getRelatedVideosQuery(videoId).thenCompose(query -> {
+            if (query.isEmpty()) {
+                return CompletableFuture.completedFuture(new ResultListPage<Video>());
+            }
+            BoundStatement stmt = createStatementToSearchVideos(query, fetchSize, pagingState);
+            // so far I got a Result<Video> async, need to fetch only expected page and save paging state
+            return FutureUtils.asCompletableFuture(mapperVideo.mapAsync(dseSession.executeAsync(stmt)))
+                              .< ResultListPage<Video> > thenApply(ResultListPage::new);
         });
-        // so far I got a Result<Video> async, need to fetch only expected page and save paging state
-        return relatedVideosFuture.< ResultListPage<Video> > thenApply(ResultListPage::new);
     }
     
     /**
-     * Search for videos.
+     * Terms of a video, read and parsed once.
+     */
+    private CompletableFuture< RelatedVideosQuery > getRelatedVideosQuery(UUID videoId) {
+        return getOrLoad(relatedQueries, videoId, () -> findVideoById(videoId).thenApply(video -> {
+            if (video == null) {
+                throw new IllegalArgumentException("Video " + videoId + " does not exist");
+            }
+            RelatedVideosQuery query = RelatedVideosQuery.of(video, ignoredWords, relatedMaxTerms);
+            LOGGER.debug("Related videos query for {} is {}", videoId, query);
+            return query;
+        }));
+    }
+    
+    /**
+     * Concurrent callers of the same key share the future, failures are not cached.
+     */
+    private < K, V > CompletableFuture< V > getOrLoad(Cache < K, CompletableFuture< V > > cache, K key, Supplier < CompletableFuture < V > > loader) {
+        try {
+            return cache.get(key, () -> {
+                CompletableFuture< V > future = loader.get();
+                future.whenComplete((value, error) -> {
+                    if (error != null) {
+                        cache.asMap().remove(key, future);
+                    }
+                });
+                return future;
+            });
+        } catch (ExecutionException e) {
+            CompletableFuture< V > failed = new CompletableFuture<>();
+            failed.completeExceptionally(e.getCause());
+            return failed;
+        }
+    }
+    
+    /**
+     * Recommendations computed live with the graph (see {@link VideoRecommendationsDao} for precomputed ones),
+     * cached per user for a few seconds.
      *
      * @param userid
      *      current userid,
      * @return
      *         Async Page
      */
-    @SuppressWarnings({"rawtypes", "unchecked"})
     public CompletableFuture< List<Video> > getSuggestedVideosForUser(UUID userid) {
+        Assert.notNull(userid, "userid is required to compute recommendations");
+        return getOrLoad(suggestionsForUser, userid, () -> computeSuggestedVideosForUser(userid));
+    }
+    
+    /**
+     * Recommendations computed live with the graph, without cache (refresh after a rating).
+     *
+     * @param userid
+     *      current userid,
+     * @return
+     *         Async Page
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public CompletableFuture< List<Video> > computeSuggestedVideosForUser(UUID userid) {
         
         // Parameters validation
-        Assert.notNull(userid, "videoid is required to update statistics");
+        Assert.notNull(userid, "userid is required to compute recommendations");
         
-        // Build statement
-        KillrVideoTraversal graphTraversal = traversalSource.users(userid.toString()).recommendByUserRating(5, 4, 1000, 5);
-        GraphStatement graphStatement = DseGraph.statementFromTraversal(graphTraversal);
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Recommend TRAVERSAL is {} ",  DseUtils.displayGraphTranserval(graphTraversal));
+        // Build statement, only binding the user when the traversal has been compiled
+        GraphStatement graphStatement;
+        if (recommendScript != null) {
+            graphStatement = new SimpleGraphStatement(recommendScript).set(PARAM_USER_ID, userid.toString());
+        } else {
+            KillrVideoTraversal graphTraversal = traversalSource.users(userid.toString())
+                    .recommendByUserRating(Math.max(1, recommendCandidates), RECOMMEND_MIN_RATING, RECOMMEND_RATINGS_TO_SAMPLE, RECOMMEND_LOCAL_RATINGS);
+            graphStatement = DseGraph.statementFromTraversal(graphTraversal);
         }
         
         // Execute Sync
@@ -212,28 +372,44 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
      *              .property("name","ff4j")
      *              .property("tagged_date",Thu Aug 09 11:00:44 CEST 2018))
      *              .addE("taggedWith").from("^video").inV()))
+     * 
+     * Tags and users known to exist (see {@link GraphVertexCache}) skip the lookup by key, the edge is added to
+     * the vertex read by its id:
+     *       .sideEffect(
+     *         __.as("^video").coalesce(
+     *           __.out("taggedWith").hasLabel("tag").has("name","ff4j"),
+     *           __.V(tagVertexId).addE("taggedWith").from("^video").inV()))
+     *
+     * @return
+     *      completes when the video is written
      */
     @SuppressWarnings({"rawtypes","unchecked"})
-    public void updateGraphNewVideo(Video video) {
+    public CompletableFuture<Void> updateGraphNewVideo(Video video) {
         final KillrVideoTraversal traversal =
           // Add video Node
           traversalSource.video(video.getVideoid(), video.getName(), new Date(), video.getDescription(), video.getPreviewImageLocation())
           // Add Uploaded Edge
-          .add(__.uploaded(video.getUserid()));
+          .add(uploadedEdge(video.getUserid()));
           // Add Tags Nodes and edges
-          Sets.newHashSet(video.getTags()).forEach(tag -> {
-            traversal.add(__.taggedWith(tag,  new Date()));
+          Set<String> tags = Sets.newHashSet(video.getTags());
+          tags.forEach(tag -> {
+            Object tagVertexId = graphVertexCache.getTagVertexId(tag);
+            if (tagVertexId != null) {
+                traversal.add(__.taggedWithExisting(tag, tagVertexId));
+            } else {
+                traversal.add(__.taggedWith(tag,  new Date()));
+            }
           });
 
         /**
          * Now that our video is successfully applied lets
          * insert that video into our graph for the recommendation engine
          */
-        GraphStatement gStatement = DseGraph.statementFromTraversal(traversal);
         LOGGER.info("Traversal for 'updateGraphNewVideo' : {}", DseUtils.displayGraphTranserval(traversal));
-        FutureUtils.asCompletableFuture(dseSession.executeGraphAsync(gStatement)).whenComplete((graphResultSet, ex) -> {
-            if (graphResultSet != null) {
-                LOGGER.debug("Added video vertex, uploaded, and taggedWith edges: " + graphResultSet.all());
+        return graphMutationBatcher.submit(traversal).whenComplete((v, ex) -> {
+            if (ex == null) {
+                graphVertexCache.addTags(tags);
+                LOGGER.debug("Added video vertex, uploaded, and taggedWith edges for {}", video.getVideoid());
             }  else {
                 //TODO: Potentially add some robustness code here
                 LOGGER.warn("Error handling YouTubeVideoAdded for graph: " + ex);
@@ -241,6 +417,11 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
         });
     }
     
+    private KillrVideoTraversal<?, ?> uploadedEdge(UUID userId) {
+        Object userVertexId = graphVertexCache.getUserVertexId(userId);
+        return (userVertexId != null) ? __.uploadedByExisting(userId, userVertexId) : __.uploaded(userId);
+    }
+    
     /**
      * Subscription is done in dedicated service 
      * {@link EventConsumerService}. (killrvideo-messaging)
@@ -249,15 +430,22 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
      * 
      * @param user
      *      current user
+     * @return
+     *      completes when the user is written
      */
     @SuppressWarnings({"rawtypes","unchecked"})
-    public void updateGraphNewUser(UUID userId, String email, Date userCreation) {
+    public CompletableFuture<Void> updateGraphNewUser(UUID userId, String email, Date userCreation) {
+        if (graphVertexCache.getUserVertexId(userId) != null) {
+            // Replayed event, user properties are never updated
+            LOGGER.debug("User vertex {} already exists", userId);
+            return CompletableFuture.completedFuture(null);
+        }
         final KillrVideoTraversal traversal = traversalSource.user(userId, email, userCreation);
-        GraphStatement gStatement = DseGraph.statementFromTraversal(traversal);
         LOGGER.info("Executed transversal for 'updateGraphNewUser' : {}", DseUtils.displayGraphTranserval(traversal));
-        FutureUtils.asCompletableFuture(dseSession.executeGraphAsync(gStatement)).whenComplete((graphResultSet, ex) -> {
-            if (graphResultSet != null) {
-                LOGGER.debug("Added user vertex: " + graphResultSet.one());
+        return graphMutationBatcher.submit(traversal).whenComplete((v, ex) -> {
+            if (ex == null) {
+                graphVertexCache.addUser(userId);
+                LOGGER.debug("Added user vertex: {}", userId);
             } else {
                 LOGGER.warn("Error creating user vertex: " + ex);
             }
@@ -272,15 +460,19 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
      * the rating will not be applied nor will the user or video be
      * automatically created in this case.  This assumes both the user and video
      * already exist.
+     * 
+     * @return
+     *      completes when the edge is written (recommendations can be refreshed)
      */
     @SuppressWarnings({"rawtypes","unchecked"})
-    public void updateGraphNewUserRating(String videoId, UUID userId, int rate) {
+    public CompletableFuture<Void> updateGraphNewUserRating(String videoId, UUID userId, int rate) {
         final KillrVideoTraversal traversal = traversalSource.videos(videoId).add(__.rated(userId, rate));
-        GraphStatement gStatement = DseGraph.statementFromTraversal(traversal);
         LOGGER.info("Executed transversal for 'updateGraphNewUserRating' : {}", DseUtils.displayGraphTranserval(traversal));
-        FutureUtils.asCompletableFuture(dseSession.executeGraphAsync(gStatement)).whenComplete((graphResultSet, ex) -> {
-            if (graphResultSet != null) {
-                LOGGER.debug("Added rating between user and video: " + graphResultSet.one());
+        return graphMutationBatcher.submit(traversal).whenComplete((v, ex) -> {
+            if (ex == null) {
+                // Own recommendations changed
+                suggestionsForUser.invalidate(userId);
+                LOGGER.debug("Added rating between user {} and video {}", userId, videoId);
             } else {
                 //TODO: Potentially add some robustness code here
                 LOGGER.warn("Error Adding rating between user and video: " + ex);
@@ -288,6 +480,47 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
         });
     }
     
+    /**
+     * Users sharing the taste of a user (see {@link KillrVideoTraversal#similarUsers(int, int)}).
+     *
+     * @param userid
+     *      current user
+     * @param minRating
+     *      ratings considered as 'like'
+     * @param limit
+     *      maximum number of users
+     * @return
+     *      ids of similar users
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public CompletableFuture< List<UUID> > findSimilarUsers(UUID userid, int minRating, int limit) {
+        KillrVideoTraversal graphTraversal = traversalSource.users(userid.toString()).similarUsers(minRating, limit);
+        GraphStatement graphStatement = DseGraph.statementFromTraversal(graphTraversal);
+        return FutureUtils.asCompletableFuture(dseSession.executeGraphAsync(graphStatement)).thenApply(rs -> 
+            rs.all().stream()
+              .map(node -> node.asVertex().getId().get(KEY_USER_ID).as(UUID.class))
+              .collect(Collectors.toList()));
+    }
+    
+    /**
+     * Read videos by their ids, in parallel.
+     *
+     * @param videoids
+     *      list of video ids
+     * @return
+     *      videos in the same order, those not found are skipped
+     */
+    public CompletableFuture< List<Video> > findVideosByIds(List<UUID> videoids) {
+        List<CompletableFuture<Video>> reads = videoids.stream()
+                .map(this::findVideoById)
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v ->
+            reads.stream()
+                 .map(CompletableFuture::join)
+                 .filter(Objects::nonNull)
+                 .collect(Collectors.toList()));
+    }
+    
     private Video mapGraphNode2Video(GraphNode node) {
         Vertex v = node.get(VERTEX_VIDEO).asVertex();
         Vertex u = node.get(VERTEX_USER).asVertex();
@@ -308,39 +541,47 @@ public class SuggestedVideosDseDao extends DseDaoSupport implements KillrVideoTr
     /**
      * Perform a query using DSE Search to find other videos that are similar
      * to the "request" video using terms parsed from the name, tags,
-     * and description columns of the "request" video.
-     *
-     * The regex below will help us parse out individual words that we add to our
-     * set. The set will automatically handle any duplicates that we parse out.
-     * We can then use the end result termSet to query across the name, tags, and
-     * description columns to find similar videos.
+     * and description columns of the "request" video (see {@link RelatedVideosQuery}).
      */
-    private BoundStatement createStatementToSearchVideos(Video video, int fetchSize, Optional<String> pagingState) {
-        final String space = " ";
-        final String eachWordRegEx = "[^\\w]";
-        final String eachWordPattern = Pattern.compile(eachWordRegEx).pattern();
-
-        final HashSet<String> termSet = new HashSet<>(50);
-        Collections.addAll(termSet, video.getName().toLowerCase().split(eachWordPattern));
-        Collections.addAll(video.getTags()); // getTags already returns a set
-        Collections.addAll(termSet, video.getDescription().toLowerCase().split(eachWordPattern));
-        termSet.removeAll(ignoredWords);
-        termSet.removeIf(String::isEmpty);
-
-        final String delimitedTermList = termSet.stream().map(Object::toString).collect(Collectors.joining(","));
-        LOGGER.debug("delimitedTermList is : " + delimitedTermList);
-       
-        final StringBuilder solrQuery = new StringBuilder();
-        solrQuery.append(pagingDriverStart);
-        solrQuery.append("name:(").append(delimitedTermList).append(")^2").append(space);
-        solrQuery.append("tags:(").append(delimitedTermList).append(")^4").append(space);
-        solrQuery.append("description:").append(delimitedTermList);
-        solrQuery.append(pagingDriverEnd);
-        
-        BoundStatement statement = findRelatedVideos.bind().setString(SOLR_QUERY, solrQuery.toString());
+    private BoundStatement createStatementToSearchVideos(RelatedVideosQuery query, int fetchSize, Optional<String> pagingState) {
+        LOGGER.debug("delimitedTermList is : {}", query.getTerms());
+        BoundStatement statement = findRelatedVideos.bind().setString(SOLR_QUERY, query.getSolrQuery());
         pagingState.ifPresent( x -> statement.setPagingState(PagingState.fromString(x)));
         statement.setFetchSize(fetchSize);
         return statement;
     }
+    
+    /**
+     * Key of the first page cache.
+     */
+    private static final class RelatedPageKey {
+        
+        private final UUID videoid;
+        private final int  fetchSize;
+        
+        private RelatedPageKey(UUID videoid, int fetchSize) {
+            this.videoid   = videoid;
+            this.fetchSize = fetchSize;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RelatedPageKey)) {
+                return false;
+            }
+            RelatedPageKey other = (RelatedPageKey) o;
+            return fetchSize == other.fetchSize && videoid.equals(other.videoid);
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return Objects.hash(videoid, fetchSize);
+        }
+    }
   
 }
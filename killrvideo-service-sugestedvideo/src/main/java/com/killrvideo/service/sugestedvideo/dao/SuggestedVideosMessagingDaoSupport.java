@@ -4,6 +4,7 @@ import static com.killrvideo.service.sugestedvideo.grpc.SuggestedVideosServiceGr
 
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,20 +29,37 @@ public abstract class SuggestedVideosMessagingDaoSupport {
     @Autowired
     protected SuggestedVideosDseDao sugestedVideoDseDao;
     
+    @Autowired
+    protected VideoRecommendationsDao videoRecommendationsDao;
+    
     /**
      * Message is consumed from specialized class but treatment is the same, updating graph.
      * 
      * @param userVideoRated
      *      a user has rated a video event
+     * @return
+     *      completes when the graph is updated
      */
-    protected void onVideoRatingMessage(UserRatedVideo userVideoRated) {
+    protected CompletableFuture<Void> onVideoRatingMessage(UserRatedVideo userVideoRated) {
         String videoId = userVideoRated.getVideoId().getValue();
         UUID   userId  = UUID.fromString(userVideoRated.getUserId().getValue());
         int rating     = userVideoRated.getRating();
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("[NewUserEvent] Processing rating with user {} and video {}", userId, videoId);
         }
-        sugestedVideoDseDao.updateGraphNewUserRating(videoId, userId, rating);
+        return sugestedVideoDseDao.updateGraphNewUserRating(videoId, userId, rating)
+                           .thenRun(() -> videoRecommendationsDao.onUserRatedVideo(userId, UUID.fromString(videoId), rating));
+    }
+    
+    /**
+     * Message is consumed by every node (not a share of partitions), updating in-memory recommenders.
+     * 
+     * @param userVideoRated
+     *      a user has rated a video event
+     */
+    protected void onVideoRatingLocally(UserRatedVideo userVideoRated) {
+        videoRecommendationsDao.onUserRatedVideoLocally(UUID.fromString(userVideoRated.getUserId().getValue()),
+                UUID.fromString(userVideoRated.getVideoId().getValue()), userVideoRated.getRating());
     }
     
     /**
@@ -49,15 +67,17 @@ public abstract class SuggestedVideosMessagingDaoSupport {
      * 
      * @param userCreationMessage
      *      a user has been created
+     * @return
+     *      completes when the graph is updated
      */
-    protected void onUserCreatingMessage(UserCreated userCreationMessage) {
+    protected CompletableFuture<Void> onUserCreatingMessage(UserCreated userCreationMessage) {
         final UUID userId       = UUID.fromString(userCreationMessage.getUserId().getValue());
         final Date userCreation = GrpcMappingUtils.timestampToDate(userCreationMessage.getTimestamp());
         final String email      = userCreationMessage.getEmail();
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("[NewUserEvent] Processing for user {} ", userId);
         }
-        sugestedVideoDseDao.updateGraphNewUser(userId, email, userCreation);
+        return sugestedVideoDseDao.updateGraphNewUser(userId, email, userCreation);
     }
     
     /**
@@ -65,9 +85,11 @@ public abstract class SuggestedVideosMessagingDaoSupport {
      * 
      * @param videoAdded
      *      a video has been created
+     * @return
+     *      completes when the graph is updated
      */
-    protected void onYoutubeVideoAddingMessage(YouTubeVideoAdded videoAdded) {
-       sugestedVideoDseDao.updateGraphNewVideo(mapVideoAddedtoVideoDTO(videoAdded));
+    protected CompletableFuture<Void> onYoutubeVideoAddingMessage(YouTubeVideoAdded videoAdded) {
+       return sugestedVideoDseDao.updateGraphNewVideo(mapVideoAddedtoVideoDTO(videoAdded));
     }
     
 
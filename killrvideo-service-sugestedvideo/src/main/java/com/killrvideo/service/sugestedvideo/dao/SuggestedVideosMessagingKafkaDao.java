@@ -1,10 +1,10 @@
 package com.killrvideo.service.sugestedvideo.dao;
 
-import java.time.Duration;
-import java.util.Collections;
-import java.util.stream.StreamSupport;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -18,11 +18,24 @@ import org.springframework.stereotype.Repository;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.killrvideo.conf.KillrVideoConfiguration;
+import com.killrvideo.messaging.dao.KafkaConsumerLoop;
+import com.killrvideo.messaging.dao.KafkaConsumerRuntime;
+import com.killrvideo.messaging.dao.KeyedTask;
 
 import killrvideo.ratings.events.RatingsEvents.UserRatedVideo;
 import killrvideo.user_management.events.UserManagementEvents.UserCreated;
 import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
 
+/**
+ * Consume user creations, video creations and ratings to update the graph, a poll loop per topic.
+ *
+ * Records are processed in parallel on worker lanes, keyed by the id found in the payload (producers do not set
+ * record keys): events of a same user (creation, ratings) or of a same video are applied in order.
+ *
+ * Ratings are also consumed by a group of this node only, to feed in-memory recommenders with every rating.
+ *
+ * @author DataStax Developer Advocates team.
+ */
 @Repository("killrvideo.rating.dao.messaging")
 @Profile(KillrVideoConfiguration.PROFILE_MESSAGING_KAFKA)
 public class SuggestedVideosMessagingKafkaDao extends SuggestedVideosMessagingDaoSupport {
@@ -30,6 +43,26 @@ public class SuggestedVideosMessagingKafkaDao extends SuggestedVideosMessagingDa
     /** Loger for that class. */
     private static Logger LOGGER = LoggerFactory.getLogger(SuggestedVideosMessagingKafkaDao.class);
     
+    @Autowired
+    private KafkaConsumerRuntime kafkaConsumerRuntime;
+    
+    /** Poll loops, a consumer is not thread safe and used by its loop only. */
+    private KafkaConsumerLoop userCreatedLoop;
+    private KafkaConsumerLoop videoCreatedLoop;
+    private KafkaConsumerLoop videoRatedLoop;
+    private KafkaConsumerLoop videoRatedLocalLoop;
+    
+    /**
+     * Stop poll loops.
+     */
+    @PreDestroy
+    public void stopConsumers() {
+        userCreatedLoop.stop();
+        videoCreatedLoop.stop();
+        videoRatedLoop.stop();
+        videoRatedLocalLoop.stop();
+    }
+    
     // --------------------------------------------------------------------------
     // -------------------------- User Creation ---------------------------------
     // --------------------------------------------------------------------------
@@ -43,18 +76,18 @@ public class SuggestedVideosMessagingKafkaDao extends SuggestedVideosMessagingDa
     
     @PostConstruct
     public void registerConsumerUserCreated() {
-        LOGGER.info("Start consuming events from topic '{}' ..", topicUserCreated);
-        consumerUserCreatedProtobuf.subscribe(Collections.singletonList(topicUserCreated));
-        StreamSupport.stream(consumerUserCreatedProtobuf.poll(Duration.ofSeconds(2L)).spliterator(), false)
-                     .map(ConsumerRecord::value)
-                     .forEach(this::parseUserCreatedMessage);
+        userCreatedLoop = kafkaConsumerRuntime.startKeyed(consumerUserCreatedProtobuf, topicUserCreated,
+                this::parseUserCreatedMessage);
     }
     
-    public void parseUserCreatedMessage(byte[] payload) {
+    public KeyedTask parseUserCreatedMessage(ConsumerRecord<String, byte[]> record) {
         try {
-            super.onUserCreatingMessage(UserCreated.parseFrom(payload));
+            UserCreated userCreated = UserCreated.parseFrom(record.value());
+            return KeyedTask.of(UUID.fromString(userCreated.getUserId().getValue()),
+                    () -> super.onUserCreatingMessage(userCreated));
         } catch (InvalidProtocolBufferException e) {
             LOGGER.error("Cannot parse message expecting object " + UserCreated.class.getName(), e);
+            return skipped(record);
         }
     }
     
@@ -72,19 +105,19 @@ public class SuggestedVideosMessagingKafkaDao extends SuggestedVideosMessagingDa
     
     @PostConstruct
     public void registerConsumerYoutubeVideoAdded() {
-        LOGGER.info("Start consuming events from topic '{}' ..", topicVideoCreated);
-        consumerVideoCreatedProtobuf.subscribe(Collections.singletonList(topicVideoCreated));
-        StreamSupport.stream(consumerVideoCreatedProtobuf.poll(Duration.ofSeconds(2L)).spliterator(), false)
-                     .map(ConsumerRecord::value)
-                     .forEach(this::parseYoutubeVideoAddedMessage);
+        videoCreatedLoop = kafkaConsumerRuntime.startKeyed(consumerVideoCreatedProtobuf, topicVideoCreated,
+                this::parseYoutubeVideoAddedMessage);
     }
     
-    private void parseYoutubeVideoAddedMessage(byte[] payload) {
+    private KeyedTask parseYoutubeVideoAddedMessage(ConsumerRecord<String, byte[]> record) {
         try {
             // Marshall binary to Protobuf Stub
-            super.onYoutubeVideoAddingMessage(YouTubeVideoAdded.parseFrom(payload));
+            YouTubeVideoAdded videoAdded = YouTubeVideoAdded.parseFrom(record.value());
+            return KeyedTask.of(videoAdded.getVideoId().getValue(),
+                    () -> super.onYoutubeVideoAddingMessage(videoAdded));
         } catch (InvalidProtocolBufferException e) {
-            LOGGER.error("Cannot parse message expecting object " + UserCreated.class.getName(), e);
+            LOGGER.error("Cannot parse message expecting object " + YouTubeVideoAdded.class.getName(), e);
+            return skipped(record);
         }   
     }
     
@@ -102,20 +135,45 @@ public class SuggestedVideosMessagingKafkaDao extends SuggestedVideosMessagingDa
     
     @PostConstruct
     public void registerConsumerVideoRating() {
-        LOGGER.info("Start consuming events from topic '{}' ..", topicVideoRated);
-        consumerVideoRatingProtobuf.subscribe(Collections.singletonList(topicVideoRated));
-        StreamSupport.stream(consumerVideoRatingProtobuf.poll(Duration.ofSeconds(2L)).spliterator(), false)
-                     .map(ConsumerRecord::value)
-                     .forEach(this::parseVideoRatingMessage);
+        videoRatedLoop = kafkaConsumerRuntime.startKeyed(consumerVideoRatingProtobuf, topicVideoRated,
+                this::parseVideoRatingMessage);
     }
     
-    private void parseVideoRatingMessage(byte[] payload) {
+    private KeyedTask parseVideoRatingMessage(ConsumerRecord<String, byte[]> record) {
         try {
-            super.onVideoRatingMessage(UserRatedVideo.parseFrom(payload));
+            // Keyed by user: successive ratings of a user on a video are applied in order
+            UserRatedVideo userRatedVideo = UserRatedVideo.parseFrom(record.value());
+            return KeyedTask.of(UUID.fromString(userRatedVideo.getUserId().getValue()),
+                    () -> super.onVideoRatingMessage(userRatedVideo));
         } catch (InvalidProtocolBufferException e) {
-            LOGGER.error("Cannot parse message expecting object " + UserCreated.class.getName(), e);
+            LOGGER.error("Cannot parse message expecting object " + UserRatedVideo.class.getName(), e);
+            return skipped(record);
+        }
+    }
+    
+    @Autowired
+    @Qualifier("kafka.consumer.videoRating.recommendations")
+    private KafkaConsumer<String, byte[]> consumerVideoRatingLocal;
+    
+    @PostConstruct
+    public void registerConsumerVideoRatingLocal() {
+        videoRatedLocalLoop = kafkaConsumerRuntime.start(consumerVideoRatingLocal, topicVideoRated, 
+                this::onVideoRatingLocalRecord);
+    }
+    
+    private void onVideoRatingLocalRecord(ConsumerRecord<String, byte[]> record) {
+        try {
+            super.onVideoRatingLocally(UserRatedVideo.parseFrom(record.value()));
+        } catch (InvalidProtocolBufferException e) {
+            LOGGER.error("Cannot parse message expecting object " + UserRatedVideo.class.getName(), e);
         }
     }
     
+    /**
+     * Invalid record, nothing to process but its offset is committed.
+     */
+    private KeyedTask skipped(ConsumerRecord<String, byte[]> record) {
+        return KeyedTask.of(record.partition(), () -> CompletableFuture.completedFuture(null));
+    }
    
 }
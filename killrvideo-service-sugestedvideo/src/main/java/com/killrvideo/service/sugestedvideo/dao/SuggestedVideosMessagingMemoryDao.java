@@ -1,5 +1,7 @@
 package com.killrvideo.service.sugestedvideo.dao;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
@@ -22,20 +24,22 @@ public class SuggestedVideosMessagingMemoryDao extends SuggestedVideosMessagingD
     
     /** {@inheritDoc} */
     @Subscribe
-    public void onYoutubeVideoAddingMessage(YouTubeVideoAdded youTubeVideoAdded) {
-        super.onYoutubeVideoAddingMessage(youTubeVideoAdded);
+    public CompletableFuture<Void> onYoutubeVideoAddingMessage(YouTubeVideoAdded youTubeVideoAdded) {
+        return super.onYoutubeVideoAddingMessage(youTubeVideoAdded);
     }
     
     /** {@inheritDoc} */
     @Subscribe
-    public void onUserCreatingMessage(UserCreated userCreated) {
-        super.onUserCreatingMessage(userCreated);
+    public CompletableFuture<Void> onUserCreatingMessage(UserCreated userCreated) {
+        return super.onUserCreatingMessage(userCreated);
     }
     
     /** {@inheritDoc} */
     @Subscribe
-    public void onVideoRatingMessage(UserRatedVideo userRatedVideo) {
-        super.onVideoRatingMessage(userRatedVideo);
+    public CompletableFuture<Void> onVideoRatingMessage(UserRatedVideo userRatedVideo) {
+        // Single node: it sees every rating
+        super.onVideoRatingLocally(userRatedVideo);
+        return super.onVideoRatingMessage(userRatedVideo);
     }
     
 }
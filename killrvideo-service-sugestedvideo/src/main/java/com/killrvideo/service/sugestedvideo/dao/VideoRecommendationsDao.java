@@ -0,0 +1,419 @@
+package com.killrvideo.service.sugestedvideo.dao;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.killrvideo.dse.dao.DseDaoSupport;
+import com.killrvideo.dse.dto.Video;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+import com.killrvideo.service.sugestedvideo.rerank.SuggestionsReranker;
+import com.killrvideo.service.sugestedvideo.rerank.WatchedFilterStage;
+import com.killrvideo.utils.FutureUtils;
+
+/**
+ * Recommendations per user materialized in table 'video_recommendations', a single partition read per request.
+ *
+ * - a user is active when he asked for recommendations recently, cold users get the live graph traversal
+ *   (result is then materialized)
+ * - when a user rates a video his recommendations and those of active similar users (neighbourhood of the
+ *   traversal) are queued, a background job recomputes them by small batches
+ * - rows expire (TTL), recommendations of users gone inactive are not kept
+ *
+ * Rank is stored in column 'rating' (higher first), clustering of the table is by date.
+ *
+ * Whatever the source, videos go through the {@link SuggestionsReranker} pipeline before being returned.
+ *
+ * Users who never rated a video get the cold start list of {@link ColdStartRecommender} whatever the engine.
+ *
+ * When 'killrvideo.suggestedvideos.recommender' is 'itemItem', requests and ratings are delegated to
+ * {@link ItemItemRecommender} and nothing is materialized.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Repository
+public class VideoRecommendationsDao extends DseDaoSupport implements Recommender {
+
+    /** Logger for DAO. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(VideoRecommendationsDao.class);
+
+    /** Table and columns. */
+    public static final String TABLENAME_VIDEO_RECOMMENDATIONS = "video_recommendations";
+    public static final String COLUMN_USERID      = "userid";
+    public static final String COLUMN_ADDED_DATE  = "added_date";
+    public static final String COLUMN_VIDEOID     = "videoid";
+    public static final String COLUMN_RATING      = "rating";
+    public static final String COLUMN_AUTHORID    = "authorid";
+    public static final String COLUMN_NAME        = "name";
+    public static final String COLUMN_PREVIEW     = "preview_image_location";
+
+    /** Bind markers of USING clauses. */
+    private static final String BIND_TTL       = "ttl";
+    private static final String BIND_TIMESTAMP = "ts";
+
+    @Value("${killrvideo.suggestedvideos.recommender: graph}")
+    private String recommenderName;
+
+    @Value("${killrvideo.suggestedvideos.recommendations.enabled: true}")
+    private boolean enabled;
+
+    @Value("${killrvideo.suggestedvideos.recommendations.ttlSeconds: 86400}")
+    private int ttlSeconds;
+
+    /** Same as live traversal: ratings considered as 'like'. */
+    @Value("${killrvideo.suggestedvideos.recommendations.minRating: 4}")
+    private int minRating;
+
+    @Value("${killrvideo.suggestedvideos.recommendations.activeUsers.maxSize: 100000}")
+    private long activeUsersMaxSize;
+
+    @Value("${killrvideo.suggestedvideos.recommendations.activeUsers.ttlSeconds: 86400}")
+    private long activeUsersTtlSeconds;
+
+    @Value("${killrvideo.suggestedvideos.recommendations.refresh.intervalMillis: 1000}")
+    private long refreshIntervalMillis;
+
+    @Value("${killrvideo.suggestedvideos.recommendations.refresh.batchSize: 20}")
+    private int refreshBatchSize;
+
+    @Value("${killrvideo.suggestedvideos.recommendations.refresh.maxNeighbours: 100}")
+    private int refreshMaxNeighbours;
+
+    @Value("${killrvideo.suggestedvideos.recommendations.refresh.queueMaxSize: 10000}")
+    private int refreshQueueMaxSize;
+
+    @Autowired
+    private SuggestedVideosDseDao suggestedVideosDseDao;
+
+    @Autowired
+    private ItemItemRecommender itemItemRecommender;
+
+    @Autowired
+    private ColdStartRecommender coldStartRecommender;
+
+    @Autowired
+    private SuggestionsReranker suggestionsReranker;
+
+    @Autowired
+    private WatchedFilterStage watchedFilterStage;
+
+    /** Precompile statements to speed up queries. */
+    private PreparedStatement findRecommendations;
+    private PreparedStatement deleteRecommendations;
+    private PreparedStatement insertRecommendation;
+
+    /** Users who asked for recommendations recently. */
+    private Cache < UUID, Boolean > activeUsers;
+
+    /** Users to refresh, deduplicated, guarded by itself. */
+    private Set < UUID > refreshQueue;
+
+    /** Refresh job. */
+    private ScheduledExecutorService refresher;
+
+    /** Counters. */
+    private final AtomicLong precomputedCounter = new AtomicLong();
+    private final AtomicLong liveCounter        = new AtomicLong();
+    private final AtomicLong refreshCounter     = new AtomicLong();
+    private final AtomicLong droppedCounter     = new AtomicLong();
+
+    /**
+     * Default constructor.
+     */
+    public VideoRecommendationsDao() {
+        super();
+    }
+
+    /**
+     * Allow explicit intialization for test purpose.
+     */
+    public VideoRecommendationsDao(DseSession dseSession) {
+        super(dseSession);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void initialize() {
+        RegularStatement queryFindRecommendations = QueryBuilder
+                .select(COLUMN_VIDEOID, COLUMN_ADDED_DATE, COLUMN_RATING, COLUMN_AUTHORID, COLUMN_NAME, COLUMN_PREVIEW)
+                .from(KILLRVIDEO_KEYSPACE, TABLENAME_VIDEO_RECOMMENDATIONS)
+                .where(QueryBuilder.eq(COLUMN_USERID, QueryBuilder.bindMarker()));
+        findRecommendations = dseSession.prepare(queryFindRecommendations);
+
+        // Previous recommendations are removed with a timestamp lower than the new ones
+        RegularStatement queryDeleteRecommendations = QueryBuilder
+                .delete().from(KILLRVIDEO_KEYSPACE, TABLENAME_VIDEO_RECOMMENDATIONS)
+                .where(QueryBuilder.eq(COLUMN_USERID, QueryBuilder.bindMarker()))
+                .using(QueryBuilder.timestamp(QueryBuilder.bindMarker(BIND_TIMESTAMP)));
+        deleteRecommendations = dseSession.prepare(queryDeleteRecommendations);
+
+        RegularStatement queryInsertRecommendation = QueryBuilder
+                .insertInto(KILLRVIDEO_KEYSPACE, TABLENAME_VIDEO_RECOMMENDATIONS)
+                .value(COLUMN_USERID, QueryBuilder.bindMarker())
+                .value(COLUMN_ADDED_DATE, QueryBuilder.bindMarker())
+                .value(COLUMN_VIDEOID, QueryBuilder.bindMarker())
+                .value(COLUMN_RATING, QueryBuilder.bindMarker())
+                .value(COLUMN_AUTHORID, QueryBuilder.bindMarker())
+                .value(COLUMN_NAME, QueryBuilder.bindMarker())
+                .value(COLUMN_PREVIEW, QueryBuilder.bindMarker())
+                .using(QueryBuilder.ttl(QueryBuilder.bindMarker(BIND_TTL)))
+                .and(QueryBuilder.timestamp(QueryBuilder.bindMarker(BIND_TIMESTAMP)));
+        insertRecommendation = dseSession.prepare(queryInsertRecommendation);
+
+        // Called from test constructor before field initializers: sizes are guarded
+        activeUsers = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, activeUsersMaxSize))
+                .expireAfterWrite(Math.max(1, activeUsersTtlSeconds), TimeUnit.SECONDS)
+                .build();
+        refreshQueue = new LinkedHashSet<>();
+        if (enabled && !RECOMMENDER_ITEM_ITEM.equals(recommenderName)) {
+            long interval = Math.max(10, refreshIntervalMillis);
+            refresher = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+            refresher.scheduleWithFixedDelay(this::refreshPending, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop refresh job.
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Recommendations of a user, precomputed if available, else live traversal (then materialized), reranked.
+     *
+     * @param userid
+     *      current user
+     * @return
+     *      recommended videos, best first
+     */
+    @Override
+    public CompletableFuture< List<Video> > getRecommendationsAsync(UUID userid) {
+        return findRecommendationsAsync(userid).thenApply(videos -> suggestionsReranker.rerank(userid, videos));
+    }
+
+    /**
+     * Candidates before reranking (stored as is).
+     */
+    private CompletableFuture< List<Video> > findRecommendationsAsync(UUID userid) {
+        if (coldStartRecommender.isColdUser(userid)) {
+            return CompletableFuture.completedFuture(coldStartRecommender.getColdStartVideos());
+        }
+        if (itemItemRecommender.isEnabled()) {
+            return itemItemRecommender.getRecommendationsAsync(userid);
+        }
+        if (!enabled) {
+            return suggestedVideosDseDao.getSuggestedVideosForUser(userid);
+        }
+        activeUsers.put(userid, Boolean.TRUE);
+        return FutureUtils.asCompletableFuture(dseSession.executeAsync(findRecommendations.bind(userid)))
+                .thenCompose(rs -> {
+                    List<Video> precomputed = mapRecommendations(rs);
+                    if (!precomputed.isEmpty()) {
+                        precomputedCounter.incrementAndGet();
+                        return CompletableFuture.completedFuture(precomputed);
+                    }
+                    // Cold user
+                    liveCounter.incrementAndGet();
+                    return suggestedVideosDseDao.getSuggestedVideosForUser(userid).thenApply(videos -> {
+                        if (!videos.isEmpty()) {
+                            saveRecommendations(userid, videos);
+                        }
+                        return videos;
+                    });
+                });
+    }
+
+    /**
+     * A user rated a video (edge is written): his recommendations change, and those of users sharing his taste
+     * if he liked the video.
+     *
+     * @param userid
+     *      user who rated
+     * @param videoid
+     *      rated video
+     * @param rating
+     *      rating
+     */
+    @Override
+    public void onUserRatedVideo(UUID userid, UUID videoid, int rating) {
+        if (itemItemRecommender.isEnabled()) {
+            // Fed by onUserRatedVideoLocally
+            return;
+        }
+        if (!enabled) {
+            return;
+        }
+        enqueueRefresh(userid);
+        if (rating >= minRating) {
+            suggestedVideosDseDao.findSimilarUsers(userid, minRating, Math.max(1, refreshMaxNeighbours))
+                .whenComplete((neighbours, error) -> {
+                    if (error != null) {
+                        LOGGER.warn("Cannot find users similar to {}, their recommendations are not refreshed", userid, error);
+                    } else {
+                        neighbours.stream()
+                                  .filter(neighbour -> activeUsers.getIfPresent(neighbour) != null)
+                                  .forEach(this::enqueueRefresh);
+                    }
+                });
+        }
+    }
+
+    /**
+     * A user rated a video, called on every node for every rating whatever the outcome of the graph update:
+     * in-memory engines need all ratings, not the share of the node.
+     *
+     * @param userid
+     *      user who rated
+     * @param videoid
+     *      rated video
+     * @param rating
+     *      rating
+     */
+    public void onUserRatedVideoLocally(UUID userid, UUID videoid, int rating) {
+        watchedFilterStage.onVideoWatched(userid, videoid);
+        coldStartRecommender.onUserRatedVideo(userid, videoid, rating);
+        if (itemItemRecommender.isEnabled()) {
+            itemItemRecommender.onUserRatedVideo(userid, videoid, rating);
+        }
+    }
+
+    /**
+     * Counters for monitoring.
+     *
+     * @return
+     *      counters as a String
+     */
+    public String getRecommendationsStats() {
+        int pending;
+        synchronized (refreshQueue) {
+            pending = refreshQueue.size();
+        }
+        return "precomputed=" + precomputedCounter.get() + ", live=" + liveCounter.get()
+                + ", refreshed=" + refreshCounter.get() + ", pending=" + pending + ", dropped=" + droppedCounter.get();
+    }
+
+    private void enqueueRefresh(UUID userid) {
+        synchronized (refreshQueue) {
+            if (refreshQueue.size() < refreshQueueMaxSize) {
+                refreshQueue.add(userid);
+                return;
+            }
+        }
+        // Recommendations stay as they are until next rating or expiration
+        droppedCounter.incrementAndGet();
+    }
+
+    /**
+     * Recompute a batch of queued users, waits for completion so that graph load stays bounded.
+     */
+    private void refreshPending() {
+        List<UUID> batch = new ArrayList<>(refreshBatchSize);
+        synchronized (refreshQueue) {
+            Iterator<UUID> it = refreshQueue.iterator();
+            while (it.hasNext() && batch.size() < refreshBatchSize) {
+                batch.add(it.next());
+                it.remove();
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<Void>> refreshes = new ArrayList<>(batch.size());
+        for (UUID userid : batch) {
+            refreshes.add(suggestedVideosDseDao.computeSuggestedVideosForUser(userid)
+                    .thenCompose(videos -> saveRecommendations(userid, videos))
+                    .whenComplete((v, error) -> {
+                        if (error != null) {
+                            LOGGER.warn("Cannot refresh recommendations of user {}", userid, error);
+                        } else {
+                            refreshCounter.incrementAndGet();
+                        }
+                    }));
+        }
+        try {
+            CompletableFuture.allOf(refreshes.toArray(new CompletableFuture[0])).join();
+        } catch (RuntimeException e) {
+            // Logged per user above, scheduled executor stops on first exception
+        }
+        LOGGER.debug("Recommendations refreshed for {} users: {}", batch.size(), getRecommendationsStats());
+    }
+
+    /**
+     * Replace recommendations of a user (single partition batch).
+     */
+    private CompletableFuture<Void> saveRecommendations(UUID userid, List<Video> videos) {
+        long timestamp = System.currentTimeMillis() * 1000;
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        batch.add(deleteRecommendations.bind()
+                .setUUID(COLUMN_USERID, userid)
+                .setLong(BIND_TIMESTAMP, timestamp));
+        float rank = videos.size();
+        for (Video video : videos) {
+            batch.add(insertRecommendation.bind()
+                    .setUUID(COLUMN_USERID, userid)
+                    .setTimestamp(COLUMN_ADDED_DATE, video.getAddedDate() == null ? new Date(0) : video.getAddedDate())
+                    .setUUID(COLUMN_VIDEOID, video.getVideoid())
+                    .setFloat(COLUMN_RATING, rank--)
+                    .setUUID(COLUMN_AUTHORID, video.getUserid())
+                    .setString(COLUMN_NAME, video.getName())
+                    .setString(COLUMN_PREVIEW, video.getPreviewImageLocation())
+                    .setInt(BIND_TTL, Math.max(1, ttlSeconds))
+                    .setLong(BIND_TIMESTAMP, timestamp + 1));
+        }
+        batch.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        return FutureUtils.asCompletableFuture(dseSession.executeAsync(batch)).thenApply(rs -> null);
+    }
+
+    private List<Video> mapRecommendations(ResultSet rs) {
+        List<Video>      videos = new ArrayList<>();
+        Map<UUID, Float> ranks  = new HashMap<>();
+        for (Row row : rs) {
+            Video video = new Video();
+            video.setVideoid(row.getUUID(COLUMN_VIDEOID));
+            video.setAddedDate(row.getTimestamp(COLUMN_ADDED_DATE));
+            video.setUserid(row.getUUID(COLUMN_AUTHORID));
+            video.setName(row.getString(COLUMN_NAME));
+            video.setPreviewImageLocation(row.getString(COLUMN_PREVIEW));
+            videos.add(video);
+            ranks.put(video.getVideoid(), row.getFloat(COLUMN_RATING));
+        }
+        videos.sort(Comparator.comparing(video -> ranks.get(video.getVideoid()), Comparator.reverseOrder()));
+        return videos;
+    }
+
+}
@@ -21,6 +21,7 @@ import org.springframework.stereotype.Service;
 import com.killrvideo.dse.dto.ResultListPage;
 import com.killrvideo.dse.dto.Video;
 import com.killrvideo.service.sugestedvideo.dao.SuggestedVideosDseDao;
+import com.killrvideo.service.sugestedvideo.dao.VideoRecommendationsDao;
 
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
@@ -48,6 +49,9 @@ public class SuggestedVideosServiceGrpc extends SuggestedVideoServiceImplBase {
     @Autowired
     private SuggestedVideosDseDao suggestedVideosDseDao;
     
+    @Autowired
+    private VideoRecommendationsDao videoRecommendationsDao;
+    
     /** {@inheritDoc} */
     @Override
     public void getRelatedVideos(GetRelatedVideosRequest grpcReq, StreamObserver<GetRelatedVideosResponse> grpcResObserver) {
@@ -104,8 +108,8 @@ public class SuggestedVideosServiceGrpc extends SuggestedVideoServiceImplBase {
         // Mapping GRPC => Domain (Dao)
         final UUID userid = UUID.fromString(grpcReq.getUserId().getValue());
         
-        // Invoke DAO Async
-        CompletableFuture<List<Video>> futureDao = suggestedVideosDseDao.getSuggestedVideosForUser(userid);
+        // Invoke DAO Async (precomputed, live traversal for cold users)
+        CompletableFuture<List<Video>> futureDao = videoRecommendationsDao.getRecommendationsAsync(userid);
         
         // Map Result back to GRPC
         futureDao.whenComplete((videos, error) -> {
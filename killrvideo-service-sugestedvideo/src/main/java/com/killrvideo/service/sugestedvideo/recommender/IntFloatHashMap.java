@@ -0,0 +1,248 @@
+package com.killrvideo.service.sugestedvideo.recommender;
+
+import java.util.Arrays;
+
+/**
+ * Map of non negative int keys to float values without boxing: open addressing with linear probing,
+ * keys and values in two parallel arrays.
+ *
+ * Not thread safe.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class IntFloatHashMap {
+
+    /** Marker of a free slot (keys are non negative). */
+    private static final int FREE = -1;
+
+    /** Resize when this ratio of slots is used. */
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[]   keys;
+    private float[] values;
+    private int     size;
+
+    /**
+     * Visitor of entries.
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+
+        /**
+         * Visit an entry.
+         *
+         * @param key
+         *      key
+         * @param value
+         *      value
+         */
+        void visit(int key, float value);
+    }
+
+    /**
+     * Default capacity.
+     */
+    public IntFloatHashMap() {
+        this(8);
+    }
+
+    /**
+     * Expected size.
+     *
+     * @param expectedSize
+     *      number of entries without resize
+     */
+    public IntFloatHashMap(int expectedSize) {
+        allocate(tableSize(expectedSize));
+    }
+
+    /**
+     * Add to the value of a key (created with 0).
+     *
+     * @param key
+     *      key, non negative
+     * @param delta
+     *      value to add
+     * @return
+     *      new value
+     */
+    public float addTo(int key, float delta) {
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            values[slot] += delta;
+            return values[slot];
+        }
+        keys[slot]   = key;
+        values[slot] = delta;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length * 2);
+        }
+        return delta;
+    }
+
+    /**
+     * Value of a key.
+     *
+     * @param key
+     *      key
+     * @return
+     *      value, 0 if absent
+     */
+    public float get(int key) {
+        int slot = slot(key);
+        return keys[slot] == key ? values[slot] : 0f;
+    }
+
+    /**
+     * Tell if a key is present.
+     *
+     * @param key
+     *      key
+     * @return
+     *      true if present
+     */
+    public boolean containsKey(int key) {
+        return keys[slot(key)] == key;
+    }
+
+    /**
+     * Number of entries.
+     *
+     * @return
+     *      size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visit all entries, in no particular order.
+     *
+     * @param visitor
+     *      visitor
+     */
+    public void forEach(EntryVisitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                visitor.visit(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Keep only the 'limit' entries with the highest values, ties broken by lowest key: exactly 'limit' are kept.
+     *
+     * @param limit
+     *      entries to keep
+     */
+    public void retainTop(int limit) {
+        if (size <= limit) {
+            return;
+        }
+        int[]   entryKeys   = new int[size];
+        float[] entryValues = new float[size];
+        int i = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                entryKeys[i]   = keys[slot];
+                entryValues[i] = values[slot];
+                i++;
+            }
+        }
+        int kept = Math.max(0, limit);
+        select(entryKeys, entryValues, kept);
+        allocate(tableSize(kept));
+        for (i = 0; i < kept; i++) {
+            addTo(entryKeys[i], entryValues[i]);
+        }
+    }
+
+    /**
+     * Partial quickselect: move the 'count' first entries in (value desc, key asc) order to the head of the arrays.
+     */
+    private static void select(int[] entryKeys, float[] entryValues, int count) {
+        int from = 0;
+        int to   = entryKeys.length - 1;
+        while (from < to && count > from && count <= to) {
+            int middle = (from + to) >>> 1;
+            int pivotKey     = entryKeys[middle];
+            float pivotValue = entryValues[middle];
+            swap(entryKeys, entryValues, middle, to);
+            int store = from;
+            for (int i = from; i < to; i++) {
+                if (before(entryKeys[i], entryValues[i], pivotKey, pivotValue)) {
+                    swap(entryKeys, entryValues, i, store++);
+                }
+            }
+            swap(entryKeys, entryValues, store, to);
+            if (store < count) {
+                from = store + 1;
+            } else {
+                to = store - 1;
+            }
+        }
+    }
+
+    private static boolean before(int key, float value, int otherKey, float otherValue) {
+        return value > otherValue || (value == otherValue && key < otherKey);
+    }
+
+    private static void swap(int[] entryKeys, float[] entryValues, int i, int j) {
+        int   key   = entryKeys[i];
+        float value = entryValues[i];
+        entryKeys[i]   = entryKeys[j];
+        entryValues[i] = entryValues[j];
+        entryKeys[j]   = key;
+        entryValues[j] = value;
+    }
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newLength) {
+        int[]   oldKeys   = keys;
+        float[] oldValues = values;
+        allocate(newLength);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != FREE) {
+                int target = slot(oldKeys[slot]);
+                keys[target]   = oldKeys[slot];
+                values[target] = oldValues[slot];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int length) {
+        keys   = new int[length];
+        values = new float[length];
+        size   = 0;
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * Power of 2 able to hold expected size under load factor.
+     */
+    private static int tableSize(int expectedSize) {
+        int length = 8;
+        while (length * LOAD_FACTOR < Math.max(1, expectedSize)) {
+            length <<= 1;
+        }
+        return length;
+    }
+
+    /**
+     * Ids are sequential, spread them over the table.
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.killrvideo.service.sugestedvideo.recommender;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Item-to-item collaborative filtering in memory.
+ *
+ * - each user keeps his last 'recentRatings' ratings
+ * - when a user likes a video (rating &gt;= 'minRating'), the co-like count of this video with every other video
+ *   liked in his history is incremented, in both directions. When he lowers his rating below 'minRating' the
+ *   like count and the co-like counts with videos still in his history are decremented
+ * - similarity is the co-like count normalized by popularity: co(i, j) / sqrt(likes(i) * likes(j))
+ * - neighbours of a video are bounded to the 'maxNeighbours' most similar
+ * - recommendations of a user: videos similar to those he liked recently, weighted by his rating,
+ *   excluding videos he rated
+ *
+ * Videos are mapped to compact int ids. Thread safe: single writer, concurrent readers.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class ItemItemIndex {
+
+    /** Settings. */
+    private final int minRating;
+    private final int recentRatings;
+    private final int maxNeighbours;
+    private final int maxUsers;
+
+    /** Video by id and id by video. */
+    private final List<UUID>         items     = new ArrayList<>();
+    private final Map<UUID, Integer> idsByItem = new HashMap<>();
+
+    /** By item id: number of likes and co-like counts with other items. */
+    private int[]             likeCounts = new int[1024];
+    private IntFloatHashMap[] neighbours = new IntFloatHashMap[1024];
+
+    /** Recent ratings by user, least recently updated first (evicted first). */
+    private final LinkedHashMap<UUID, UserHistory> users;
+
+    /** Guard structures. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor with settings.
+     *
+     * @param minRating
+     *      ratings considered as 'like'
+     * @param recentRatings
+     *      ratings kept per user
+     * @param maxNeighbours
+     *      similar videos kept per video
+     * @param maxUsers
+     *      users kept, least recently active are evicted
+     */
+    public ItemItemIndex(int minRating, int recentRatings, int maxNeighbours, int maxUsers) {
+        this.minRating     = minRating;
+        this.recentRatings = Math.max(1, recentRatings);
+        this.maxNeighbours = Math.max(1, maxNeighbours);
+        this.maxUsers      = Math.max(1, maxUsers);
+        this.users = new LinkedHashMap<UUID, UserHistory>() {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, UserHistory> eldest) {
+                return size() > ItemItemIndex.this.maxUsers;
+            }
+        };
+    }
+
+    /**
+     * Record a rating.
+     *
+     * @param userid
+     *      user
+     * @param videoid
+     *      video
+     * @param rating
+     *      rating
+     */
+    public void addRating(UUID userid, UUID videoid, int rating) {
+        lock.writeLock().lock();
+        try {
+            int item = idOf(videoid);
+            // Re-inserted: most recently active user
+            UserHistory history = users.remove(userid);
+            if (history == null) {
+                history = new UserHistory(recentRatings);
+            }
+            users.put(userid, history);
+
+            int pos = history.indexOf(item);
+            boolean alreadyLiked = pos >= 0 && history.ratings[pos] >= minRating;
+            if (rating >= minRating && !alreadyLiked) {
+                likeCounts[item]++;
+                for (int i = 0; i < history.size; i++) {
+                    int other = history.items[i];
+                    if (other != item && history.ratings[i] >= minRating) {
+                        addCoLike(item, other);
+                        addCoLike(other, item);
+                    }
+                }
+            } else if (rating < minRating && alreadyLiked) {
+                likeCounts[item] = Math.max(0, likeCounts[item] - 1);
+                for (int i = 0; i < history.size; i++) {
+                    int other = history.items[i];
+                    if (other != item && history.ratings[i] >= minRating) {
+                        removeCoLike(item, other);
+                        removeCoLike(other, item);
+                    }
+                }
+            }
+            if (pos >= 0) {
+                history.ratings[pos] = (byte) rating;
+            } else {
+                history.add(item, rating);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Top videos for a user.
+     *
+     * @param userid
+     *      user
+     * @param limit
+     *      number of videos
+     * @return
+     *      videos, best first, empty if user liked nothing recently
+     */
+    public List<UUID> recommend(UUID userid, int limit) {
+        lock.readLock().lock();
+        try {
+            UserHistory history = users.get(userid);
+            if (history == null) {
+                return Collections.emptyList();
+            }
+            IntFloatHashMap rated = new IntFloatHashMap(history.size);
+            for (int i = 0; i < history.size; i++) {
+                rated.addTo(history.items[i], 1f);
+            }
+            IntFloatHashMap scores = new IntFloatHashMap(maxNeighbours);
+            for (int i = 0; i < history.size; i++) {
+                final int item = history.items[i];
+                if (history.ratings[i] < minRating || neighbours[item] == null || likeCounts[item] <= 0) {
+                    continue;
+                }
+                final float weight = history.ratings[i] - minRating + 1;
+                neighbours[item].forEach((other, coLikes) -> {
+                    // Counts decremented to zero are kept until pruned
+                    if (coLikes > 0 && likeCounts[other] > 0 && !rated.containsKey(other)) {
+                        double similarity = coLikes / Math.sqrt((double) likeCounts[item] * likeCounts[other]);
+                        scores.addTo(other, (float) (weight * similarity));
+                    }
+                });
+            }
+            return top(scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of videos.
+     *
+     * @return
+     *      videos with at least one rating
+     */
+    public int getItemCount() {
+        lock.readLock().lock();
+        try {
+            return items.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of users.
+     *
+     * @return
+     *      users with a history
+     */
+    public int getUserCount() {
+        lock.readLock().lock();
+        try {
+            return users.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int idOf(UUID videoid) {
+        Integer id = idsByItem.get(videoid);
+        if (id == null) {
+            id = items.size();
+            items.add(videoid);
+            idsByItem.put(videoid, id);
+            if (id >= likeCounts.length) {
+                likeCounts = Arrays.copyOf(likeCounts, likeCounts.length * 2);
+                neighbours = Arrays.copyOf(neighbours, neighbours.length * 2);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Neighbours are pruned when twice the bound, to amortize the cost of pruning.
+     */
+    private void addCoLike(int item, int other) {
+        IntFloatHashMap coLikes = neighbours[item];
+        if (coLikes == null) {
+            coLikes = new IntFloatHashMap();
+            neighbours[item] = coLikes;
+        }
+        coLikes.addTo(other, 1f);
+        if (coLikes.size() > 2 * maxNeighbours) {
+            coLikes.retainTop(maxNeighbours);
+        }
+    }
+
+    /**
+     * Co-likes recorded before the other video left the history cannot be found, they are kept.
+     */
+    private void removeCoLike(int item, int other) {
+        IntFloatHashMap coLikes = neighbours[item];
+        if (coLikes != null && coLikes.get(other) > 0) {
+            coLikes.addTo(other, -1f);
+        }
+    }
+
+    private List<UUID> top(IntFloatHashMap scores, int limit) {
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, limit) + 1, Comparator.comparingDouble(scores::get));
+        scores.forEach((item, score) -> {
+            heap.offer(item);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        });
+        List<UUID> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(items.get(heap.poll()));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Ring of last ratings of a user.
+     */
+    private static final class UserHistory {
+
+        private final int[]  items;
+        private final byte[] ratings;
+        private int size;
+        private int next;
+
+        private UserHistory(int capacity) {
+            this.items   = new int[capacity];
+            this.ratings = new byte[capacity];
+        }
+
+        private int indexOf(int item) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == item) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Oldest rating is replaced when full.
+         */
+        private void add(int item, int rating) {
+            items[next]   = item;
+            ratings[next] = (byte) rating;
+            next = (next + 1) % items.length;
+            size = Math.min(size + 1, items.length);
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.killrvideo.service.sugestedvideo.rerank;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Post-processing step of suggested videos (see {@link SuggestionsReranker}).
+ *
+ * Stages are Spring beans, those listed in 'killrvideo.suggestedvideos.rerank.stages' are applied in that order.
+ * Input is bounded by the pipeline, a stage must not block.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public interface RerankStage {
+
+    /**
+     * Name used in configuration and metrics.
+     *
+     * @return
+     *      stage name
+     */
+    String getName();
+
+    /**
+     * Reorder or filter videos.
+     *
+     * @param userid
+     *      user the videos are suggested to
+     * @param videos
+     *      videos, best first, not to be modified
+     * @return
+     *      videos, best first
+     */
+    List<Video> rerank(UUID userid, List<Video> videos);
+
+}
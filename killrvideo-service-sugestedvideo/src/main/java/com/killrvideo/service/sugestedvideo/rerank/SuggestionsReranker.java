@@ -0,0 +1,141 @@
+package com.killrvideo.service.sugestedvideo.rerank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Pipeline applied to videos suggested to a user: stages listed in 'killrvideo.suggestedvideos.rerank.stages',
+ * in that order (empty disables reranking).
+ *
+ * - at most 'maxCandidates' videos enter the pipeline and 'limit' videos are returned
+ * - each stage is timed (count, total, max)
+ * - a failing stage is skipped, its input goes to the next stage
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Component
+public class SuggestionsReranker {
+
+    /** Logger for that class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SuggestionsReranker.class);
+
+    @Value("#{'${killrvideo.suggestedvideos.rerank.stages: watchedFilter,uploaderDedup,tagDiversity}'.split(',')}")
+    private List<String> stageNames;
+
+    @Value("${killrvideo.suggestedvideos.rerank.maxCandidates: 50}")
+    private int maxCandidates;
+
+    @Value("${killrvideo.suggestedvideos.rerank.limit: 5}")
+    private int limit;
+
+    @Autowired
+    private List<RerankStage> availableStages;
+
+    /** Stages applied, in order. */
+    private List<RerankStage> stages;
+
+    /** Timings by stage name. */
+    private final Map<String, StageTimer> timers = new LinkedHashMap<>();
+
+    /**
+     * Resolve stages from their names.
+     */
+    @PostConstruct
+    public void init() {
+        stages = new ArrayList<>();
+        for (String name : stageNames) {
+            if (name.trim().isEmpty()) {
+                continue;
+            }
+            RerankStage stage = availableStages.stream()
+                    .filter(s -> s.getName().equals(name.trim()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown rerank stage '" + name.trim()
+                            + "', expecting one of " + Arrays.toString(availableStages.stream().map(RerankStage::getName).toArray())));
+            stages.add(stage);
+            timers.put(stage.getName(), new StageTimer());
+        }
+        LOGGER.info("Suggested videos rerank stages: {}", timers.keySet());
+    }
+
+    /**
+     * Apply stages.
+     *
+     * @param userid
+     *      user the videos are suggested to
+     * @param videos
+     *      videos, best first
+     * @return
+     *      at most 'limit' videos
+     */
+    public List<Video> rerank(UUID userid, List<Video> videos) {
+        List<Video> current = videos.size() > maxCandidates ? videos.subList(0, Math.max(1, maxCandidates)) : videos;
+        for (RerankStage stage : stages) {
+            long top = System.nanoTime();
+            try {
+                current = stage.rerank(userid, current);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Rerank stage '{}' failed, skipped", stage.getName(), e);
+            }
+            timers.get(stage.getName()).record(System.nanoTime() - top);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Reranked {} videos for user {}, stages: {}", videos.size(), userid, getStats());
+        }
+        return current.size() > limit ? new ArrayList<>(current.subList(0, Math.max(1, limit))) : current;
+    }
+
+    /**
+     * Timings for monitoring.
+     *
+     * @return
+     *      timings as a String
+     */
+    public String getStats() {
+        StringBuilder sb = new StringBuilder();
+        timers.forEach((name, timer) -> sb.append(sb.length() == 0 ? "" : ", ").append(name).append("=").append(timer));
+        return sb.toString();
+    }
+
+    /**
+     * Execution times of a stage.
+     */
+    private static final class StageTimer {
+
+        private final AtomicLong count      = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos   = new AtomicLong();
+
+        private void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            long calls = count.get();
+            return String.format("[calls=%d, avgMicros=%d, maxMicros=%d]", calls,
+                    calls == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / calls),
+                    TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.killrvideo.service.sugestedvideo.rerank;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Maximal Marginal Relevance: videos are picked one at a time maximizing
+ * lambda * relevance - (1 - lambda) * (max similarity with videos already picked).
+ *
+ * Relevance is given by the input rank, similarity is the Jaccard index of the features of the videos: tags
+ * when known (graph results have none) and words of the name, so that near-duplicate titles are spread.
+ * Quadratic in the number of videos, bounded by the pipeline.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Component
+public class TagDiversityStage implements RerankStage {
+
+    /** Name in configuration. */
+    public static final String NAME = "tagDiversity";
+
+    /** Words of the name. */
+    private static final Pattern EACH_WORD = Pattern.compile("[^\\w]+");
+
+    /** 1 keeps input order, 0 only looks for diversity. */
+    @Value("${killrvideo.suggestedvideos.rerank.tagDiversity.lambda: 0.7}")
+    private double lambda;
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Video> rerank(UUID userid, List<Video> videos) {
+        int n = videos.size();
+        List<Set<String>> features = new ArrayList<>(n);
+        videos.forEach(video -> features.add(features(video)));
+
+        List<Video> result  = new ArrayList<>(n);
+        boolean[]   picked  = new boolean[n];
+        double[]    maxSim  = new double[n];
+        for (int round = 0; round < n; round++) {
+            int    best      = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (!picked[i]) {
+                    double relevance = 1.0 - (double) i / n;
+                    double score = lambda * relevance - (1 - lambda) * maxSim[i];
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best      = i;
+                    }
+                }
+            }
+            picked[best] = true;
+            result.add(videos.get(best));
+            for (int i = 0; i < n; i++) {
+                if (!picked[i]) {
+                    maxSim[i] = Math.max(maxSim[i], jaccard(features.get(i), features.get(best)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> features(Video video) {
+        Set<String> features = new HashSet<>();
+        if (video.getTags() != null) {
+            video.getTags().forEach(tag -> features.add("#" + tag.trim().toLowerCase(Locale.ROOT)));
+        }
+        if (video.getName() != null) {
+            for (String word : EACH_WORD.split(video.getName().toLowerCase(Locale.ROOT))) {
+                if (word.length() > 2) {
+                    features.add(word);
+                }
+            }
+        }
+        return features;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int common = 0;
+        for (String feature : a) {
+            if (b.contains(feature)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.killrvideo.service.sugestedvideo.rerank;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * At most 'maxPerUploader' videos of a same uploader in the head of the list, the others are moved to the tail
+ * (kept to fill the list when there are not enough uploaders).
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Component
+public class UploaderDedupStage implements RerankStage {
+
+    /** Name in configuration. */
+    public static final String NAME = "uploaderDedup";
+
+    @Value("${killrvideo.suggestedvideos.rerank.uploaderDedup.maxPerUploader: 1}")
+    private int maxPerUploader;
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Video> rerank(UUID userid, List<Video> videos) {
+        Map<UUID, Integer> countByUploader = new HashMap<>();
+        List<Video> head = new ArrayList<>(videos.size());
+        List<Video> tail = new ArrayList<>();
+        for (Video video : videos) {
+            if (video.getUserid() == null || countByUploader.merge(video.getUserid(), 1, Integer::sum) <= Math.max(1, maxPerUploader)) {
+                head.add(video);
+            } else {
+                tail.add(video);
+            }
+        }
+        head.addAll(tail);
+        return head;
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.killrvideo.service.sugestedvideo.rerank;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.killrvideo.dse.dto.Video;
+
+/**
+ * Removes videos already watched (rated, as in the graph) by the user, even when suggestions were computed before
+ * (materialized, cached, cold start). Videos watched are kept in memory in a Bloom filter per user, fed on every node
+ * with all 'UserRatedVideo' events: a false positive only hides a video.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Component
+public class WatchedFilterStage implements RerankStage {
+
+    /** Name in configuration. */
+    public static final String NAME = "watchedFilter";
+
+    /** Hash of a video id. */
+    private static final Funnel<UUID> UUID_FUNNEL = (uuid, into) ->
+        into.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+
+    @Value("${killrvideo.suggestedvideos.rerank.watchedFilter.maxUsers: 100000}")
+    private long maxUsers;
+
+    @Value("${killrvideo.suggestedvideos.rerank.watchedFilter.ttlSeconds: 86400}")
+    private long ttlSeconds;
+
+    /** Size of a filter. */
+    @Value("${killrvideo.suggestedvideos.rerank.watchedFilter.expectedVideos: 500}")
+    private int expectedVideos;
+
+    @Value("${killrvideo.suggestedvideos.rerank.watchedFilter.falsePositiveRate: 0.01}")
+    private double falsePositiveRate;
+
+    /** Filters of recently active users, each guarded by itself. */
+    private Cache < UUID, BloomFilter<UUID> > watchedByUser;
+
+    /**
+     * Create cache.
+     */
+    @PostConstruct
+    public void init() {
+        watchedByUser = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, maxUsers))
+                .expireAfterAccess(Math.max(1, ttlSeconds), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * A user watched (rated) a video.
+     *
+     * @param userid
+     *      user
+     * @param videoid
+     *      video
+     */
+    public void onVideoWatched(UUID userid, UUID videoid) {
+        try {
+            BloomFilter<UUID> watched = watchedByUser.get(userid,
+                    () -> BloomFilter.create(UUID_FUNNEL, Math.max(1, expectedVideos), falsePositiveRate));
+            synchronized (watched) {
+                watched.put(videoid);
+            }
+        } catch (ExecutionException e) {
+            // Loader does not throw
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Video> rerank(UUID userid, List<Video> videos) {
+        BloomFilter<UUID> watched = (userid == null) ? null : watchedByUser.getIfPresent(userid);
+        if (watched == null) {
+            return videos;
+        }
+        synchronized (watched) {
+            return videos.stream()
+                         .filter(video -> !watched.mightContain(video.getVideoid()))
+                         .collect(Collectors.toList());
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+package com.killrvideo.service.user.dao;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.killrvideo.dse.dao.DseDaoSupport;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+import com.killrvideo.service.user.dto.User;
+import com.killrvideo.service.user.dto.UserCredentials;
+import com.killrvideo.utils.FutureUtils;
+
+/**
+ * Signup writes 'user_credentials' (conditional) then 'users' (plain insert). If the process dies in between,
+ * credentials without user remain and the email cannot be used anymore. This job scans 'user_credentials'
+ * periodically and releases credentials older than a grace period whose user does not exist.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Repository
+public class UserCredentialsReconciler extends DseDaoSupport {
+
+    /** Logger for DAO. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserCredentialsReconciler.class);
+
+    @Value("${killrvideo.users.reconciliation.enabled: true}")
+    private boolean enabled;
+
+    @Value("${killrvideo.users.reconciliation.intervalMinutes: 360}")
+    private long intervalMinutes;
+
+    /** Signups younger than this may still be in progress. */
+    @Value("${killrvideo.users.reconciliation.graceMinutes: 10}")
+    private long graceMinutes;
+
+    @Value("${killrvideo.users.reconciliation.maxConcurrency: 32}")
+    private int maxConcurrency;
+
+    /** Used to release credentials (and evict caches). */
+    @Autowired
+    private UserDseDao userDseDao;
+
+    /** Precompile statements to speed up queries. */
+    private PreparedStatement findAllCredentialsStatement;
+    private PreparedStatement findUserIdStatement;
+
+    /** Periodic job. */
+    private ScheduledExecutorService scheduler;
+
+    /** Metrics of last run. */
+    private final AtomicLong lastRunScanned  = new AtomicLong();
+    private final AtomicLong lastRunReleased = new AtomicLong();
+
+    /**
+     * Default constructor.
+     */
+    public UserCredentialsReconciler() {
+        super();
+    }
+
+    /**
+     * Allow explicit intialization for test purpose.
+     */
+    public UserCredentialsReconciler(DseSession dseSession, UserDseDao userDseDao) {
+        super(dseSession);
+        this.userDseDao = userDseDao;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void initialize() {
+        // Write time of 'userid' is the signup time (column never updated)
+        RegularStatement stmt1 = QueryBuilder.select()
+                .column(UserCredentials.COLUMN_EMAIL)
+                .column(UserCredentials.COLUMN_USERID)
+                .writeTime(UserCredentials.COLUMN_USERID)
+                .from(KILLRVIDEO_KEYSPACE, UserDseDao.TABLENAME_USER_CREDENTIALS);
+        findAllCredentialsStatement = dseSession.prepare(stmt1);
+        findAllCredentialsStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        RegularStatement stmt2 = QueryBuilder.select().column(User.COLUMN_USERID)
+                .from(KILLRVIDEO_KEYSPACE, UserDseDao.TABLENAME_USERS)
+                .where(QueryBuilder.eq(User.COLUMN_USERID, QueryBuilder.bindMarker()));
+        findUserIdStatement = dseSession.prepare(stmt2);
+        findUserIdStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+            scheduler.scheduleWithFixedDelay(this::reconcileSafely, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+            LOGGER.info("Orphan credentials reconciliation scheduled every {} minutes", intervalMinutes);
+        }
+    }
+
+    /**
+     * Stop job.
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Scheduled executor stops on first exception.
+     */
+    private void reconcileSafely() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            LOGGER.error("Orphan credentials reconciliation failed", e);
+        }
+    }
+
+    /**
+     * Scan all credentials and release orphans.
+     *
+     * @return
+     *      number of credentials released
+     */
+    public long reconcile() {
+        long top = System.currentTimeMillis();
+        long olderThanMicros = TimeUnit.MILLISECONDS.toMicros(top - TimeUnit.MINUTES.toMillis(graceMinutes));
+        final Semaphore  inFlight = new Semaphore(Math.max(1, maxConcurrency));
+        final AtomicLong released = new AtomicLong();
+        long scanned = 0;
+
+        BoundStatement scan = findAllCredentialsStatement.bind();
+        scan.setFetchSize(1000);
+        for (Row row : dseSession.execute(scan)) {
+            scanned++;
+            if (row.isNull(2) || row.getLong(2) > olderThanMicros) {
+                continue;
+            }
+            final String email  = row.getString(0);
+            final UUID   userid = row.getUUID(1);
+            inFlight.acquireUninterruptibly();
+            FutureUtils.asCompletableFuture(dseSession.executeAsync(findUserIdStatement.bind(userid)))
+                .thenCompose(rs -> {
+                    if (rs.one() != null) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    LOGGER.warn("Releasing orphan credentials {} (user {} does not exist)", email, userid);
+                    return userDseDao.deleteCredentialsAsync(email, userid);
+                })
+                .whenComplete((deleted, error) -> {
+                    if (error != null) {
+                        LOGGER.error("Cannot reconcile credentials {}", email, error);
+                    } else if (deleted) {
+                        released.incrementAndGet();
+                    }
+                    inFlight.release();
+                });
+        }
+        inFlight.acquireUninterruptibly(Math.max(1, maxConcurrency));
+        inFlight.release(Math.max(1, maxConcurrency));
+
+        lastRunScanned.set(scanned);
+        lastRunReleased.set(released.get());
+        LOGGER.info("Orphan credentials reconciliation: {} scanned, {} released in {} millis",
+                scanned, released.get(), System.currentTimeMillis() - top);
+        return released.get();
+    }
+
+    /**
+     * Getter for attribute 'lastRunScanned'.
+     *
+     * @return
+     *       credentials scanned by last run
+     */
+    public long getLastRunScanned() {
+        return lastRunScanned.get();
+    }
+
+    /**
+     * Getter for attribute 'lastRunReleased'.
+     *
+     * @return
+     *       orphan credentials released by last run
+     */
+    public long getLastRunReleased() {
+        return lastRunReleased.get();
+    }
+
+}
@@ -1,27 +1,59 @@
 package com.killrvideo.service.user.dao;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
 import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.ResultSet;
-import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.QueryValidationException;
+import com.datastax.driver.core.exceptions.UnavailableException;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.Result;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
 import com.killrvideo.dse.dao.DseDaoSupport;
 import com.killrvideo.service.user.dto.User;
 import com.killrvideo.service.user.dto.UserCredentials;
@@ -50,6 +82,67 @@ public class UserDseDao extends DseDaoSupport {
     private PreparedStatement insertCredentialsStatement;
     private PreparedStatement insertUserStatement;
     private PreparedStatement findUsersByIdsStatement;
+    private PreparedStatement findUserByIdStatement;
+    private PreparedStatement updatePasswordStatement;
+    private PreparedStatement findAllEmailsStatement;
+    private PreparedStatement deleteCredentialsStatement;
+    
+    /** Maximum number of ids in the IN clause of a single sub-query. */
+    @Value("${killrvideo.users.profiles.maxIdsPerQuery: 10}")
+    private int profilesMaxIdsPerQuery = 10;
+    
+    /** Size of the profile near cache. */
+    @Value("${killrvideo.users.profiles.cache.maxSize: 50000}")
+    private long profilesCacheMaxSize = 50000;
+    
+    /** Time to live of profiles in near cache. */
+    @Value("${killrvideo.users.profiles.cache.ttlSeconds: 300}")
+    private long profilesCacheTtlSeconds = 300;
+    
+    /** Near cache for profiles, users are never updated once created. */
+    private Cache<UUID, User> profilesCache;
+    
+    /** Size of the credentials cache. */
+    @Value("${killrvideo.users.credentials.cache.maxSize: 100000}")
+    private long credentialsCacheMaxSize = 100000;
+    
+    /** Time to live of credentials in cache. */
+    @Value("${killrvideo.users.credentials.cache.ttlSeconds: 600}")
+    private long credentialsCacheTtlSeconds = 600;
+    
+    /** Expected number of accounts, sizing the Bloom filter. */
+    @Value("${killrvideo.users.credentials.bloom.expectedEmails: 10000000}")
+    private int bloomExpectedEmails = 10000000;
+    
+    /** False positive probability of the Bloom filter. */
+    @Value("${killrvideo.users.credentials.bloom.fpp: 0.01}")
+    private double bloomFpp = 0.01;
+    
+    /** 
+     * Accounts created by other instances come from UserCreated events, the Bloom filter is rebuilt from the table
+     * as a safety net only (events lost, filter saturated), each instance at its own time.
+     */
+    @Value("${killrvideo.users.credentials.bloom.refreshHours: 24}")
+    private long bloomRefreshHours = 24;
+    
+    /** Attempts of the (idempotent) insert in 'users' during a signup. */
+    @Value("${killrvideo.users.signup.userInsertAttempts: 3}")
+    private int userInsertAttempts = 3;
+    
+    /** Credentials recently read or created. */
+    private Cache<String, UserCredentials> credentialsCache;
+    
+    /** Every existing email, null until first load has completed (no negative answer before). */
+    private volatile BloomFilter<CharSequence> knownEmails;
+    
+    /** Emails created while the Bloom filter is being rebuilt. */
+    private volatile Set<String> emailsCreatedDuringRebuild;
+    
+    /** Guava BloomFilter is not thread safe for concurrent put and mightContain. */
+    private ReadWriteLock knownEmailsLock;
+    
+    /** Bloom filter refresh. */
+    private ScheduledExecutorService knownEmailsScheduler;
    
     /**
      * Default constructor.
@@ -92,8 +185,7 @@ public class UserDseDao extends DseDaoSupport {
                 .value(User.COLUMN_FIRSTNAME, QueryBuilder.bindMarker())
                 .value(User.COLUMN_LASTNAME,  QueryBuilder.bindMarker())
                 .value(User.COLUMN_EMAIL, QueryBuilder.bindMarker())
-                .value(User.COLUMN_CREATE, QueryBuilder.bindMarker())
-                .ifNotExists(); // use lightweight transaction
+                .value(User.COLUMN_CREATE, QueryBuilder.bindMarker()); // idempotent, the email is reserved by the credentials
         insertUserStatement = dseSession.prepare(stmt2);
         insertUserStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
         
@@ -104,10 +196,144 @@ public class UserDseDao extends DseDaoSupport {
                 .where(QueryBuilder.in(User.COLUMN_USERID, QueryBuilder.bindMarker()));
         findUsersByIdsStatement = dseSession.prepare(stmt3);
         findUsersByIdsStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        // Find single User profile, routed to a replica by the token aware policy
+        RegularStatement stmt4 =  QueryBuilder.select().all()
+                .from(mapperUsers.getTableMetadata().getKeyspace().getName(), 
+                      mapperUsers.getTableMetadata().getName())
+                .where(QueryBuilder.eq(User.COLUMN_USERID, QueryBuilder.bindMarker()));
+        findUserByIdStatement = dseSession.prepare(stmt4);
+        findUserByIdStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        // Replace password hash, only if not changed meanwhile
+        RegularStatement stmt5 = QueryBuilder.update(
+                mapperUserCredentials.getTableMetadata().getKeyspace().getName(), 
+                mapperUserCredentials.getTableMetadata().getName())
+                .with(QueryBuilder.set(UserCredentials.COLUMN_PASSWORD, QueryBuilder.bindMarker()))
+                .where(QueryBuilder.eq(UserCredentials.COLUMN_EMAIL, QueryBuilder.bindMarker()))
+                .onlyIf(QueryBuilder.eq(UserCredentials.COLUMN_PASSWORD, QueryBuilder.bindMarker()));
+        updatePasswordStatement = dseSession.prepare(stmt5);
+        updatePasswordStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        // Scan emails to build the negative cache
+        RegularStatement stmt6 = QueryBuilder.select().column(UserCredentials.COLUMN_EMAIL)
+                .from(mapperUserCredentials.getTableMetadata().getKeyspace().getName(), 
+                      mapperUserCredentials.getTableMetadata().getName());
+        findAllEmailsStatement = dseSession.prepare(stmt6);
+        findAllEmailsStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+        
+        // Release an email reserved by a signup which did not complete
+        RegularStatement stmt7 = QueryBuilder.delete().from(
+                mapperUserCredentials.getTableMetadata().getKeyspace().getName(), 
+                mapperUserCredentials.getTableMetadata().getName())
+                .where(QueryBuilder.eq(UserCredentials.COLUMN_EMAIL, QueryBuilder.bindMarker()))
+                .onlyIf(QueryBuilder.eq(UserCredentials.COLUMN_USERID, QueryBuilder.bindMarker()));
+        deleteCredentialsStatement = dseSession.prepare(stmt7);
+        deleteCredentialsStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        
+        profilesCache = CacheBuilder.newBuilder()
+                .maximumSize(profilesCacheMaxSize)
+                .expireAfterWrite(profilesCacheTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        credentialsCache = CacheBuilder.newBuilder()
+                .maximumSize(credentialsCacheMaxSize)
+                .expireAfterWrite(credentialsCacheTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        
+        // First load runs in background, lookups go to Cassandra until it completes. Rebuilds are spread 
+        // over a quarter of the period so that instances do not scan the table at the same time.
+        knownEmailsLock      = new ReentrantReadWriteLock();
+        knownEmailsScheduler = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+        long refreshMinutes  = TimeUnit.HOURS.toMinutes(Math.max(1, bloomRefreshHours));
+        refreshMinutes      += ThreadLocalRandom.current().nextLong(refreshMinutes / 4 + 1);
+        knownEmailsScheduler.execute(this::loadKnownEmails);
+        knownEmailsScheduler.scheduleWithFixedDelay(this::loadKnownEmails, refreshMinutes, refreshMinutes, TimeUnit.MINUTES);
+    }
+    
+    /**
+     * Stop refresh of Bloom filter.
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (knownEmailsScheduler != null) {
+            knownEmailsScheduler.shutdownNow();
+        }
+    }
+    
+    /**
+     * Build a new Bloom filter with all emails of 'user_credentials' then replace current one. Emails created 
+     * meanwhile (created here or received with events) are tracked and added before the swap.
+     */
+    private void loadKnownEmails() {
+        try {
+            long top = System.currentTimeMillis();
+            emailsCreatedDuringRebuild = ConcurrentHashMap.newKeySet();
+            BloomFilter<CharSequence> filter = BloomFilter.create(
+                    Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(1000, bloomExpectedEmails), bloomFpp);
+            BoundStatement scan = findAllEmailsStatement.bind();
+            scan.setFetchSize(5000);
+            long count = 0;
+            for (Row row : dseSession.execute(scan)) {
+                filter.put(row.getString(0));
+                count++;
+            }
+            knownEmailsLock.writeLock().lock();
+            try {
+                emailsCreatedDuringRebuild.forEach(filter::put);
+                emailsCreatedDuringRebuild = null;
+                knownEmails = filter;
+            } finally {
+                knownEmailsLock.writeLock().unlock();
+            }
+            LOGGER.info("Known emails filter loaded with {} emails in {} millis", count, System.currentTimeMillis() - top);
+        } catch (RuntimeException e) {
+            emailsCreatedDuringRebuild = null;
+            LOGGER.error("Cannot load known emails filter, keeping previous one", e);
+        }
+    }
+    
+    /**
+     * Register a new email in the Bloom filter, account created by this instance or another one (UserCreated event).
+     *
+     * @param email
+     *      email of an existing account
+     */
+    public void rememberEmail(String email) {
+        knownEmailsLock.writeLock().lock();
+        try {
+            if (knownEmails != null) {
+                knownEmails.put(email);
+            }
+            Set<String> pending = emailsCreatedDuringRebuild;
+            if (pending != null) {
+                pending.add(email);
+            }
+        } finally {
+            knownEmailsLock.writeLock().unlock();
+        }
     }
     
     /**
-     * Create user Asynchronously composing things. (with Mappers)
+     * Negative answer of the Bloom filter is definitive, email does not exist (or its UserCreated event has 
+     * not been received yet).
+     */
+    private boolean mightBeKnownEmail(String email) {
+        knownEmailsLock.readLock().lock();
+        try {
+            return knownEmails == null || knownEmails.mightContain(email);
+        } finally {
+            knownEmailsLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Create user Asynchronously composing things.
+     * 
+     * Only one lightweight transaction is used: the conditional insert in 'user_credentials' reserves the email. 
+     * Then the row in 'users' is a plain insert, safe to replay as the userid belongs to this signup: it is retried 
+     * up to 'userInsertAttempts' times. The credentials are released (best effort) only if every attempt has 
+     * definitely not been applied; after a timeout of any attempt the user may exist, credentials are kept and 
+     * {@link UserCredentialsReconciler} removes them later if the user row is really missing.
      * 
      * @param user
      *      user Management
@@ -124,30 +350,94 @@ public class UserDseDao extends DseDaoSupport {
                 .setString(UserCredentials.COLUMN_PASSWORD, hashedPassword)
                 .setUUID(UserCredentials.COLUMN_USERID, user.getUserid());
         
-        // Create Record in user_Credentials if not already exist
-        CompletableFuture<ResultSet> future1 = FutureUtils.asCompletableFuture(dseSession.executeAsync(insertCredentialsQuery)); 
-        
-        // Execute user creation only if credentials did no exist
-        CompletableFuture<ResultSet> future2 = future1.thenCompose(rs -> {
-            if (rs != null && rs.wasApplied()) {
-                final BoundStatement insertUserQuery = insertUserStatement.bind()
-                                .setUUID(User.COLUMN_USERID, user.getUserid())
-                                .setString(User.COLUMN_FIRSTNAME, user.getFirstname()).setString(User.COLUMN_LASTNAME, user.getLastname())
-                                .setString(User.COLUMN_EMAIL, user.getEmail()).setTimestamp(User.COLUMN_CREATE, new Date());
-                    return FutureUtils.asCompletableFuture(dseSession.executeAsync(insertUserQuery));
-            }
-            return future1;
-        });
-
-        /**
-         * ThenAccept in the same thread pool (not using thenAcceptAsync())
-         */
-        return future2.thenAccept(rs -> {
-            if (rs != null && !rs.wasApplied()) {
+        final BoundStatement insertUserQuery = insertUserStatement.bind()
+                .setUUID(User.COLUMN_USERID, user.getUserid())
+                .setString(User.COLUMN_FIRSTNAME, user.getFirstname()).setString(User.COLUMN_LASTNAME, user.getLastname())
+                .setString(User.COLUMN_EMAIL, user.getEmail()).setTimestamp(User.COLUMN_CREATE, new Date());
+        insertUserQuery.setIdempotent(true);
+        
+        // Create Record in user_Credentials if not already exist, then user (no condition)
+        return FutureUtils.asCompletableFuture(dseSession.executeAsync(insertCredentialsQuery)).thenCompose(rs -> {
+            if (!rs.wasApplied()) {
                 LOGGER.error(errMsg);
                 throw new CompletionException(errMsg, new IllegalArgumentException(errMsg));
             }
+            AtomicBoolean mayBeApplied = new AtomicBoolean(false);
+            return insertUserAsync(insertUserQuery, Math.max(1, userInsertAttempts), mayBeApplied).whenComplete((rsUser, error) -> {
+                if (error == null) {
+                    return;
+                }
+                if (!mayBeApplied.get()) {
+                    LOGGER.error("Cannot create user {}, releasing email {}", user.getUserid(), user.getEmail(), error);
+                    deleteCredentialsAsync(user.getEmail(), user.getUserid());
+                } else {
+                    LOGGER.error("Creation of user {} may have failed, email {} kept until reconciliation", 
+                            user.getUserid(), user.getEmail(), error);
+                }
+            });
+        }).thenAccept(rs -> {
+            rememberEmail(user.getEmail());
+            credentialsCache.put(user.getEmail(), new UserCredentials(user.getEmail(), hashedPassword, user.getUserid()));
+        });
+    }
+    
+    /**
+     * Insert in 'users', retried on any error (statement is idempotent). The outcome is uncertain as soon as one
+     * attempt failed with an error which is not surely 'not applied' (see {@link #isNotApplied(Throwable)}), even
+     * if later attempts are rejected.
+     */
+    private CompletableFuture<ResultSet> insertUserAsync(BoundStatement insertUserQuery, int attempts, AtomicBoolean mayBeApplied) {
+        CompletableFuture<ResultSet> result = new CompletableFuture<>();
+        FutureUtils.asCompletableFuture(dseSession.executeAsync(insertUserQuery)).whenComplete((rs, error) -> {
+            if (error != null && !isNotApplied(error)) {
+                mayBeApplied.set(true);
+            }
+            if (error == null) {
+                result.complete(rs);
+            } else if (attempts > 1) {
+                LOGGER.warn("Insert of user failed, retrying: {}", error.getMessage());
+                insertUserAsync(insertUserQuery, attempts - 1, mayBeApplied).whenComplete((rsRetry, errorRetry) -> {
+                    if (errorRetry == null) {
+                        result.complete(rsRetry);
+                    } else {
+                        result.completeExceptionally(errorRetry);
+                    }
+                });
+            } else {
+                result.completeExceptionally(error);
+            }
         });
+        return result;
+    }
+    
+    /**
+     * Errors raised before any replica applied the write: rejected by the coordinator or invalid. Timeouts and 
+     * failures reported by replicas are uncertain, the write may have been applied.
+     */
+    private static boolean isNotApplied(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof UnavailableException 
+                || cause instanceof OverloadedException 
+                || cause instanceof QueryValidationException;
+    }
+    
+    /**
+     * Delete credentials if they still belong to expected user.
+     *
+     * @param email
+     *      user email
+     * @param userid
+     *      user owning these credentials
+     * @return
+     *      true if credentials have been removed
+     */
+    public CompletableFuture< Boolean > deleteCredentialsAsync(String email, UUID userid) {
+        credentialsCache.invalidate(email);
+        return FutureUtils.asCompletableFuture(dseSession.executeAsync(deleteCredentialsStatement.bind(email, userid)))
+                          .thenApply(ResultSet::wasApplied);
     }
 
     /**
@@ -156,18 +446,134 @@ public class UserDseDao extends DseDaoSupport {
      * @return
      */
     public CompletableFuture< UserCredentials > getUserCredentialAsync(String email) {
-        return FutureUtils.asCompletableFuture(mapperUserCredentials.getAsync(email));
+        // Unknown emails (credential stuffing) never reach Cassandra
+        if (!mightBeKnownEmail(email)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        UserCredentials cached = credentialsCache.getIfPresent(email);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return FutureUtils.asCompletableFuture(mapperUserCredentials.getAsync(email)).thenApply(credentials -> {
+            if (credentials != null) {
+                credentialsCache.put(email, credentials);
+            }
+            return credentials;
+        });
+    }
+    
+    /**
+     * Upgrade password hash (new format or work factor) after a successful login.
+     *
+     * @param email
+     *      user email
+     * @param previousHash
+     *      hash verified at login
+     * @param newHash
+     *      replacing hash
+     * @return
+     *      true if the hash has been replaced
+     */
+    public CompletableFuture< Boolean > updatePasswordHashAsync(String email, String previousHash, String newHash) {
+        BoundStatement stmt = updatePasswordStatement.bind(newHash, email, previousHash);
+        return FutureUtils.asCompletableFuture(dseSession.executeAsync(stmt)).thenApply(rs -> {
+            if (rs.wasApplied()) {
+                credentialsCache.asMap().computeIfPresent(email, (key, credentials) -> 
+                    new UserCredentials(email, newHash, credentials.getUserid()));
+            }
+            return rs.wasApplied();
+        });
     }
     
     /**
      * Retrieve user profiles.
+     * 
+     * Profiles found in near cache are served directly. Other ids are grouped by replica set (i.e by token range) 
+     * and each group is read with its own query routed to one of these replicas, with at most 'maxIdsPerQuery' ids 
+     * per query. Sub-queries run in parallel, no coordinator has to fan out to the whole cluster.
      *
      * @param userids
+     *      list of user identifiers
      * @return
+     *      profiles found, in the order of the request (without duplicates)
      */
     public CompletableFuture < List < User > > getUserProfilesAsync(List < UUID > userids) {
-        Statement stmt = findUsersByIdsStatement.bind().setList(0, userids, UUID.class);
-        return FutureUtils.asCompletableFuture(mapperUsers.mapAsync(dseSession.executeAsync(stmt))).thenApply(Result::all);
+        final Map<UUID, User> profiles = new ConcurrentHashMap<>();
+        final Set<UUID>       missing  = new LinkedHashSet<>();
+        for (UUID userid : userids) {
+            User cached = profilesCache.getIfPresent(userid);
+            if (cached != null) {
+                profiles.put(userid, cached);
+            } else {
+                missing.add(userid);
+            }
+        }
+        
+        List<CompletableFuture<Void>> subQueries = new ArrayList<>();
+        for (List<UUID> replicaGroup : groupByReplicas(missing)) {
+            for (List<UUID> ids : Lists.partition(replicaGroup, Math.max(1, profilesMaxIdsPerQuery))) {
+                subQueries.add(FutureUtils.asCompletableFuture(mapperUsers.mapAsync(dseSession.executeAsync(buildStatementFindUsers(ids))))
+                        .thenAccept(result -> {
+                            for (User user : result) {
+                                profiles.put(user.getUserid(), user);
+                                profilesCache.put(user.getUserid(), user);
+                            }
+                        }));
+            }
+        }
+        
+        return CompletableFuture.allOf(subQueries.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<User> users = new ArrayList<>(profiles.size());
+            for (UUID userid : new LinkedHashSet<>(userids)) {
+                User user = profiles.get(userid);
+                if (user != null) {
+                    users.add(user);
+                }
+            }
+            return users;
+        });
+    }
+    
+    /**
+     * Group user identifiers owned by the same replicas.
+     * 
+     * @param userids
+     *      user identifiers (distinct)
+     * @return
+     *      groups of identifiers
+     */
+    private Collection<List<UUID>> groupByReplicas(Set<UUID> userids) {
+        if (userids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Metadata metadata = dseSession.getCluster().getMetadata();
+        final String   keyspace = mapperUsers.getTableMetadata().getKeyspace().getName();
+        Map<Set<Host>, List<UUID>> groups = new HashMap<>();
+        for (UUID userid : userids) {
+            groups.computeIfAbsent(metadata.getReplicas(keyspace, serializeUserId(userid)), k -> new ArrayList<>()).add(userid);
+        }
+        return groups.values();
+    }
+    
+    /**
+     * Single partition read for one id, otherwise IN query with routing key set explicitly (the token aware 
+     * policy cannot compute it from a list) so that it is sent to a replica owning these ids.
+     */
+    private BoundStatement buildStatementFindUsers(List<UUID> userids) {
+        if (userids.size() == 1) {
+            return findUserByIdStatement.bind(userids.get(0));
+        }
+        BoundStatement stmt = findUsersByIdsStatement.bind().setList(0, userids, UUID.class);
+        stmt.setRoutingKey(serializeUserId(userids.get(0)));
+        return stmt;
+    }
+    
+    /**
+     * Partition key as serialized by the driver.
+     */
+    private ByteBuffer serializeUserId(UUID userid) {
+        ProtocolVersion protocolVersion = dseSession.getCluster().getConfiguration().getProtocolOptions().getProtocolVersion();
+        return TypeCodec.uuid().serialize(userid, protocolVersion);
     }
        
 }
@@ -0,0 +1,35 @@
+package com.killrvideo.service.user.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import killrvideo.user_management.events.UserManagementEvents.UserCreated;
+
+/**
+ * Message processing for user service, keeping the filter of known emails complete on every instance.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public abstract class UserMessagingDaoSupport {
+    
+    /** Loger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(UserMessagingDaoSupport.class);
+    
+    @Autowired
+    protected UserDseDao userDseDao;
+    
+    /**
+     * Message is consumed from specialized class but treatment is the same, registering the email.
+     * 
+     * @param userCreated
+     *      a user has been created (by any instance)
+     */
+    protected void onUserCreatingMessage(UserCreated userCreated) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("[NewUserEvent] Registering email of user {}", userCreated.getUserId().getValue());
+        }
+        userDseDao.rememberEmail(userCreated.getEmail());
+    }
+    
+}
@@ -0,0 +1,70 @@
+package com.killrvideo.service.user.dao;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.killrvideo.conf.KillrVideoConfiguration;
+import com.killrvideo.messaging.dao.KafkaConsumerLoop;
+import com.killrvideo.messaging.dao.KafkaConsumerRuntime;
+
+import killrvideo.user_management.events.UserManagementEvents.UserCreated;
+
+/**
+ * Consume user creations with a consumer group per node: every instance must know every email, 
+ * whichever instance created the account.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Repository("killrvideo.user.dao.messaging")
+@Profile(KillrVideoConfiguration.PROFILE_MESSAGING_KAFKA)
+public class UserMessagingKafkaDao extends UserMessagingDaoSupport {
+    
+    /** Loger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(UserMessagingKafkaDao.class);
+    
+    @Value("${killrvideo.messaging.destination.userCreated : topic-kv-userCreation}")
+    private String topicUserCreated;
+    
+    @Autowired
+    @Qualifier("kafka.consumer.userCreating.users")
+    private KafkaConsumer<String, byte[]> consumerUserCreatedProtobuf;
+    
+    @Autowired
+    private KafkaConsumerRuntime kafkaConsumerRuntime;
+    
+    /** Poll loop, consumer is not thread safe and used by its thread only. */
+    private KafkaConsumerLoop userCreatedLoop;
+    
+    @PostConstruct
+    public void registerConsumerUserCreated() {
+        userCreatedLoop = kafkaConsumerRuntime.start(consumerUserCreatedProtobuf, topicUserCreated, 
+                record -> parseUserCreatedMessage(record.value()));
+    }
+    
+    /**
+     * Stop poll loop.
+     */
+    @PreDestroy
+    public void stopConsumers() {
+        userCreatedLoop.stop();
+    }
+    
+    private void parseUserCreatedMessage(byte[] payload) {
+        try {
+            super.onUserCreatingMessage(UserCreated.parseFrom(payload));
+        } catch (InvalidProtocolBufferException e) {
+            LOGGER.error("Cannot parse message expecting object " + UserCreated.class.getName(), e);
+        }   
+    }
+    
+}
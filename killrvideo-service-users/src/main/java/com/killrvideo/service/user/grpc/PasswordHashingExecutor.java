@@ -0,0 +1,222 @@
+package com.killrvideo.service.user.grpc;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.killrvideo.messaging.conf.KillrVideoThreadFactory;
+import com.killrvideo.utils.HashUtils;
+
+/**
+ * Password hashing is CPU bound and slow on purpose: it is executed on a dedicated bounded pool and never
+ * on GRPC or driver threads. When the queue is full the task is rejected (load shedding) and callers
+ * should answer RESOURCE_EXHAUSTED instead of piling up requests.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    /** Loger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(PasswordHashingExecutor.class);
+
+    @Value("${killrvideo.users.hashing.threads: 4}")
+    private int threads;
+
+    @Value("${killrvideo.users.hashing.queueSize: 256}")
+    private int queueSize;
+
+    @Value("${killrvideo.users.hashing.iterations: 120000}")
+    private int iterations;
+
+    /** Threads dedicated to imports, so that migrations never shed interactive logins. */
+    @Value("${killrvideo.users.import.hashingThreads: 4}")
+    private int importThreads;
+
+    /** Bounded pool. */
+    private ThreadPoolExecutor executor;
+
+    /** Pool for imports, its queue is bounded by the in-flight limit of imports. */
+    private ThreadPoolExecutor importExecutor;
+
+    /** Tasks refused because the queue was full. */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Create pool.
+     */
+    @PostConstruct
+    public void initialize() {
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new KillrVideoThreadFactory(),
+                (task, pool) -> {
+                    if (rejectedCount.incrementAndGet() % 100 == 1) {
+                        LOGGER.warn("Password hashing queue is full ({} tasks), {} requests rejected so far",
+                                pool.getQueue().size(), rejectedCount.get());
+                    }
+                    throw new RejectedExecutionException("Password hashing queue is full");
+                });
+        importExecutor = new ThreadPoolExecutor(importThreads, importThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new KillrVideoThreadFactory());
+        LOGGER.info("Password hashing pool started with {} threads, queue size {} and {} iterations", threads, queueSize, iterations);
+    }
+
+    /**
+     * Stop pool.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (importExecutor != null) {
+            importExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Hash a password in current format.
+     *
+     * @param password
+     *      clear text password
+     * @return
+     *      hash, or failed future with {@link RejectedExecutionException} if overloaded
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> HashUtils.hashPassword(password, iterations));
+    }
+
+    /**
+     * Execute a task (validation and hashing of an imported record) on the import pool.
+     *
+     * @param task
+     *      task to execute
+     * @return
+     *      result of the task
+     */
+    public <T> CompletableFuture<T> submitImport(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, importExecutor);
+    }
+
+    /**
+     * Hash a password in current format, on the calling thread.
+     *
+     * @param password
+     *      clear text password
+     * @return
+     *      hash
+     */
+    public String hash(String password) {
+        return HashUtils.hashPassword(password, iterations);
+    }
+
+    /**
+     * Verify a password against stored hash (any supported format).
+     *
+     * @param password
+     *      clear text password
+     * @param hash
+     *      stored hash
+     * @return
+     *      if password is valid, or failed future with {@link RejectedExecutionException} if overloaded
+     */
+    public CompletableFuture<Boolean> verifyAsync(String password, String hash) {
+        return submit(() -> HashUtils.isPasswordValid(password, hash));
+    }
+
+    /**
+     * Tell if a stored hash should be upgraded to current format and work factor.
+     *
+     * @param hash
+     *      stored hash
+     * @return
+     *      true if hash should be replaced
+     */
+    public boolean needsRehash(String hash) {
+        return HashUtils.needsRehash(hash, iterations);
+    }
+
+    /**
+     * Check if an error is caused by load shedding.
+     *
+     * @param error
+     *      error raised by a future
+     * @return
+     *      true if the hashing task has been rejected
+     */
+    public static boolean isRejected(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof RejectedExecutionException;
+    }
+
+    /**
+     * Submit task, rejection is returned as a failed future.
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException rejected) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(rejected);
+            return failed;
+        }
+    }
+
+    /**
+     * Number of tasks waiting for a thread.
+     *
+     * @return
+     *       current queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Number of threads currently hashing.
+     *
+     * @return
+     *       active threads
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Number of tasks executed.
+     *
+     * @return
+     *       completed tasks
+     */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Number of tasks refused because of load.
+     *
+     * @return
+     *       rejected tasks
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.killrvideo.service.user.grpc;
+
+import static com.killrvideo.service.user.grpc.UserManagementServiceGrpcMapper.mapUserRequest2User;
+import static com.killrvideo.service.user.grpc.UserManagementServiceGrpcValidator.validateImportRecord;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.killrvideo.messaging.dao.MessagingDao;
+import com.killrvideo.service.user.dao.UserDseDao;
+import com.killrvideo.service.user.dto.User;
+import com.killrvideo.utils.GrpcMappingUtils;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import killrvideo.user_management.UserManagementServiceOuterClass.CreateUserRequest;
+import killrvideo.user_management.UserManagementServiceOuterClass.ImportUserRequest;
+import killrvideo.user_management.UserManagementServiceOuterClass.ImportUserResult;
+import killrvideo.user_management.events.UserManagementEvents.UserCreated;
+
+/**
+ * Handle one 'ImportUsers' call. Inbound flow control is manual: at most 'maxInFlight' records are requested
+ * from the client and a new one is requested each time a record completes, so memory, the hashing queue and
+ * the number of concurrent writes stay bounded whatever the client sends.
+ *
+ * For each record: validation and hashing run on the import pool of {@link PasswordHashingExecutor}, then
+ * {@link UserDseDao#createUserAsync(User, String)}. Failures are reported in the record result and do not
+ * stop the stream. 'UserCreated' events are buffered and published in batches.
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class UserImportStreamObserver implements StreamObserver<ImportUserRequest> {
+
+    /** Loger for that class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(UserImportStreamObserver.class);
+
+    /** Dependencies. */
+    private final ServerCallStreamObserver<ImportUserResult> responseObserver;
+    private final UserDseDao              userDseDao;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final MessagingDao            messagingDao;
+    private final String                  topicUserCreated;
+
+    /** Limits. */
+    private final int maxInFlight;
+    private final int eventBatchSize;
+
+    /** State of the import. */
+    private final AtomicLong    recordCounter    = new AtomicLong();
+    private final AtomicLong    importedCounter  = new AtomicLong();
+    private final AtomicLong    failedCounter    = new AtomicLong();
+    private final AtomicInteger inFlight         = new AtomicInteger();
+    private final AtomicBoolean finished         = new AtomicBoolean(false);
+    private volatile boolean    inputCompleted   = false;
+    private final Instant       starts           = Instant.now();
+
+    /** Events waiting to be published. */
+    private List<Object> pendingEvents;
+
+    /**
+     * Constructor with dependencies.
+     */
+    public UserImportStreamObserver(StreamObserver<ImportUserResult> responseObserver,
+            UserDseDao userDseDao, PasswordHashingExecutor passwordHashingExecutor,
+            MessagingDao messagingDao, String topicUserCreated, int maxInFlight, int eventBatchSize) {
+        this.responseObserver        = (ServerCallStreamObserver<ImportUserResult>) responseObserver;
+        this.userDseDao              = userDseDao;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.messagingDao            = messagingDao;
+        this.topicUserCreated        = topicUserCreated;
+        this.maxInFlight             = Math.max(1, maxInFlight);
+        this.eventBatchSize          = Math.max(1, eventBatchSize);
+        this.pendingEvents           = new ArrayList<>(this.eventBatchSize);
+        // Must be done before the service method returns
+        this.responseObserver.disableAutoInboundFlowControl();
+        this.responseObserver.request(this.maxInFlight);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onNext(ImportUserRequest record) {
+        final long recordNumber = recordCounter.getAndIncrement();
+        inFlight.incrementAndGet();
+        final CreateUserRequest userRequest = record.getUser();
+
+        passwordHashingExecutor.submitImport(() -> {
+            String error = validateImportRecord(record);
+            if (error != null) {
+                throw new CompletionException(new IllegalArgumentException(error));
+            }
+            return StringUtils.isBlank(record.getPasswordHash()) ?
+                    passwordHashingExecutor.hash(userRequest.getPassword().trim()) : record.getPasswordHash();
+        })
+        .thenCompose(hashedPassword -> userDseDao.createUserAsync(mapUserRequest2User(userRequest), hashedPassword))
+        .whenComplete((result, error) -> {
+            ImportUserResult.Builder res = ImportUserResult.newBuilder()
+                    .setRecordNumber(recordNumber)
+                    .setUserId(userRequest.getUserId())
+                    .setEmail(userRequest.getEmail());
+            if (error != null) {
+                failedCounter.incrementAndGet();
+                Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+                res.setImported(false).setError(String.valueOf(cause.getMessage()));
+            } else {
+                importedCounter.incrementAndGet();
+                res.setImported(true);
+                bufferEvent(UserCreated.newBuilder()
+                        .setEmail(userRequest.getEmail())
+                        .setFirstName(userRequest.getFirstName())
+                        .setLastName(userRequest.getLastName())
+                        .setUserId(userRequest.getUserId())
+                        .setTimestamp(GrpcMappingUtils.instantToTimeStamp(Instant.now()))
+                        .build());
+            }
+            send(res.build());
+            inFlight.decrementAndGet();
+            if (!inputCompleted) {
+                responseObserver.request(1);
+            }
+            completeIfDone();
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onError(Throwable t) {
+        // Client cancelled: records in flight still complete, their events are published
+        LOGGER.warn("Import of users interrupted by client after {} records : {}", recordCounter.get(), t.getMessage());
+        inputCompleted = true;
+        completeIfDone();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onCompleted() {
+        inputCompleted = true;
+        completeIfDone();
+    }
+
+    /**
+     * Close the call when the client has sent everything and every record is processed.
+     */
+    private void completeIfDone() {
+        if (inputCompleted && inFlight.get() == 0 && finished.compareAndSet(false, true)) {
+            flushEvents();
+            synchronized (responseObserver) {
+                if (!responseObserver.isCancelled()) {
+                    responseObserver.onCompleted();
+                }
+            }
+            LOGGER.info("Import of users completed in {} millis: {} imported, {} failed",
+                    Instant.now().toEpochMilli() - starts.toEpochMilli(), importedCounter.get(), failedCounter.get());
+        }
+    }
+
+    /**
+     * Results are produced by several threads, the observer is not thread safe.
+     */
+    private void send(ImportUserResult result) {
+        synchronized (responseObserver) {
+            if (!responseObserver.isCancelled()) {
+                responseObserver.onNext(result);
+            }
+        }
+    }
+
+    /**
+     * Add event to batch, publish when full.
+     */
+    private void bufferEvent(UserCreated event) {
+        List<Object> batch = null;
+        synchronized (this) {
+            pendingEvents.add(event);
+            if (pendingEvents.size() >= eventBatchSize) {
+                batch = pendingEvents;
+                pendingEvents = new ArrayList<>(eventBatchSize);
+            }
+        }
+        if (batch != null) {
+            publish(batch);
+        }
+    }
+
+    /**
+     * Publish remaining events.
+     */
+    private void flushEvents() {
+        List<Object> batch;
+        synchronized (this) {
+            batch = pendingEvents;
+            pendingEvents = new ArrayList<>(eventBatchSize);
+        }
+        if (!batch.isEmpty()) {
+            publish(batch);
+        }
+    }
+
+    /**
+     * Users are created, a failure to publish is logged only.
+     */
+    private void publish(List<Object> batch) {
+        messagingDao.sendEvents(topicUserCreated, batch).whenComplete((v, error) -> {
+            if (error != null) {
+                LOGGER.error("Cannot publish {} UserCreated events for imported users", batch.size(), error);
+            }
+        });
+    }
+
+}
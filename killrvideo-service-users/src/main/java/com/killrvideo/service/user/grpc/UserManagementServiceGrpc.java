@@ -25,7 +25,6 @@ import com.killrvideo.messaging.dao.MessagingDao;
 import com.killrvideo.service.user.dao.UserDseDao;
 import com.killrvideo.service.user.dto.User;
 import com.killrvideo.service.user.dto.UserCredentials;
-import com.killrvideo.utils.HashUtils;
 
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
@@ -34,6 +33,8 @@ import killrvideo.user_management.UserManagementServiceOuterClass.CreateUserRequ
 import killrvideo.user_management.UserManagementServiceOuterClass.CreateUserResponse;
 import killrvideo.user_management.UserManagementServiceOuterClass.GetUserProfileRequest;
 import killrvideo.user_management.UserManagementServiceOuterClass.GetUserProfileResponse;
+import killrvideo.user_management.UserManagementServiceOuterClass.ImportUserRequest;
+import killrvideo.user_management.UserManagementServiceOuterClass.ImportUserResult;
 import killrvideo.user_management.UserManagementServiceOuterClass.VerifyCredentialsRequest;
 import killrvideo.user_management.UserManagementServiceOuterClass.VerifyCredentialsResponse;
 import killrvideo.user_management.events.UserManagementEvents.UserCreated;
@@ -55,12 +56,21 @@ public class UserManagementServiceGrpc extends UserManagementServiceImplBase {
     @Value("${killrvideo.discovery.services.user : UserManagementService}")
     private String serviceKey;
     
+    @Value("${killrvideo.users.import.maxInFlight: 256}")
+    private int importMaxInFlight;
+    
+    @Value("${killrvideo.users.import.eventBatchSize: 500}")
+    private int importEventBatchSize;
+    
     @Autowired
     private UserDseDao userDseDao;
     
     @Autowired
     private MessagingDao messagingDao;
     
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+    
      /** {@inheritDoc} */
     @Override
     public void createUser(
@@ -75,14 +85,20 @@ public class UserManagementServiceGrpc extends UserManagementServiceImplBase {
         
         // Mapping GRPC => Domain (Dao)
         User user = mapUserRequest2User(grpcReq);
-        final String hashedPassword = HashUtils.hashPassword(grpcReq.getPassword().trim());
         
-         // Invoke DAO Async
-        userDseDao.createUserAsync(user, hashedPassword).whenComplete((result, error) -> {
+        // Hash on dedicated pool then invoke DAO Async
+        passwordHashingExecutor.hashAsync(grpcReq.getPassword().trim())
+                               .thenCompose(hashedPassword -> userDseDao.createUserAsync(user, hashedPassword))
+                               .whenComplete((result, error) -> {
             if (error != null ) {
                 traceError("createUser", starts, error);
-                grpcResObserver.onError(Status.INVALID_ARGUMENT.augmentDescription(error.getMessage())
-                               .asRuntimeException());
+                if (PasswordHashingExecutor.isRejected(error)) {
+                    grpcResObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription("Too many requests, retry later")
+                                   .asRuntimeException());
+                } else {
+                    grpcResObserver.onError(Status.INVALID_ARGUMENT.augmentDescription(error.getMessage())
+                                   .asRuntimeException());
+                }
             } else {
                 traceSuccess("createUser", starts);
                 messagingDao.sendEvent(topicUserCreated, UserCreated.newBuilder()
@@ -112,26 +128,59 @@ public class UserManagementServiceGrpc extends UserManagementServiceImplBase {
         // Mapping GRPC => Domain (Dao)
         String email = grpcReq.getEmail();
         
-        // Invoke Async
-        CompletableFuture<UserCredentials> futureCredential = userDseDao.getUserCredentialAsync(email);
+        // Invoke Async, password is checked on hashing pool (null means invalid credentials)
+        CompletableFuture<UserCredentials> futureCredential = userDseDao.getUserCredentialAsync(email).thenCompose(credential -> {
+            if (credential == null) {
+                return CompletableFuture.<UserCredentials>completedFuture(null);
+            }
+            return passwordHashingExecutor.verifyAsync(grpcReq.getPassword(), credential.getPassword())
+                                          .thenApply(valid -> valid ? credential : null);
+        });
         
         // Map back as GRPC (if correct invalid credential otherwize)
         futureCredential.whenComplete((credential, error) -> {
             if (error != null ) {
                 traceError("verifyCredentials", starts, error);
-                if (!HashUtils.isPasswordValid(grpcReq.getPassword(), credential.getPassword())) {
-                    grpcResObserver.onError(Status.INVALID_ARGUMENT
-                                   .withDescription("Email address or password are not correct").asRuntimeException());
+                if (PasswordHashingExecutor.isRejected(error)) {
+                    grpcResObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription("Too many requests, retry later")
+                                   .asRuntimeException());
                 } else {
                     grpcResObserver.onError(Status.INTERNAL.withCause(error).asRuntimeException());
                 }
+            } else if (credential == null) {
+                grpcResObserver.onError(Status.INVALID_ARGUMENT
+                               .withDescription("Email address or password are not correct").asRuntimeException());
             } else {
                 traceSuccess("verifyCredentials", starts);
                 grpcResObserver.onNext(mapResponseVerifyCredentials(credential.getUserid()));
                 grpcResObserver.onCompleted();
+                if (passwordHashingExecutor.needsRehash(credential.getPassword())) {
+                    upgradePasswordHash(credential, grpcReq.getPassword());
+                }
             }
         });
     }
+    
+    /**
+     * Password is known in clear text only at login: replace legacy hash (or weaker work factor) in background.
+     * Failure is not an issue, upgrade will be attempted at next login.
+     *
+     * @param credential
+     *      verified credentials
+     * @param password
+     *      clear text password
+     */
+    private void upgradePasswordHash(UserCredentials credential, String password) {
+        passwordHashingExecutor.hashAsync(password.trim())
+            .thenCompose(newHash -> userDseDao.updatePasswordHashAsync(credential.getEmail(), credential.getPassword(), newHash))
+            .whenComplete((applied, error) -> {
+                if (error != null) {
+                    LOGGER.warn("Cannot upgrade password hash for {} : {}", credential.getEmail(), error.getMessage());
+                } else if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Password hash upgraded for {} : {}", credential.getEmail(), applied);
+                }
+            });
+    }
 
     /** {@inheritDoc} */
     @Override
@@ -182,6 +231,14 @@ public class UserManagementServiceGrpc extends UserManagementServiceImplBase {
         }
     }
     
+    /** {@inheritDoc} */
+    @Override
+    public StreamObserver<ImportUserRequest> importUsers(final StreamObserver<ImportUserResult> grpcResObserver) {
+        LOGGER.info("Starting import of users (max {} records in flight)", importMaxInFlight);
+        return new UserImportStreamObserver(grpcResObserver, userDseDao, passwordHashingExecutor, 
+                messagingDao, topicUserCreated, importMaxInFlight, importEventBatchSize);
+    }
+    
     /**
      * Utility to TRACE.
      *
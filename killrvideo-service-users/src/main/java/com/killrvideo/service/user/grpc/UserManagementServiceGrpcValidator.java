@@ -2,6 +2,8 @@ package com.killrvideo.service.user.grpc;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
+import java.util.UUID;
+
 import org.slf4j.Logger;
 import org.springframework.util.Assert;
 
@@ -9,11 +11,14 @@ import io.grpc.stub.StreamObserver;
 import killrvideo.common.CommonTypes;
 import killrvideo.user_management.UserManagementServiceOuterClass.CreateUserRequest;
 import killrvideo.user_management.UserManagementServiceOuterClass.GetUserProfileRequest;
+import killrvideo.user_management.UserManagementServiceOuterClass.ImportUserRequest;
 import killrvideo.user_management.UserManagementServiceOuterClass.VerifyCredentialsRequest;
 
 import static com.killrvideo.utils.ValidationUtils.initErrorString;
 import static com.killrvideo.utils.ValidationUtils.validate;
 
+import com.killrvideo.utils.HashUtils;
+
 /**
  * Validate GRPC parameters.
  *
@@ -81,4 +86,40 @@ public class UserManagementServiceGrpcValidator {
         Assert.isTrue(validate(logger, streamObserver, errorMessage, isValid), "Invalid parameter for 'getUserProfile'");
     }
 
+    /**
+     * Validate a record of an import, no error is sent to the stream (other records go on).
+     *
+     * @param request
+     *      current record
+     * @return
+     *      error message or null if record is valid
+     */
+    public static String validateImportRecord(ImportUserRequest request) {
+        final StringBuilder errorMessage = new StringBuilder();
+        CreateUserRequest user = request.getUser();
+        if (!request.hasUser()) {
+            return "user should be provided for import user request";
+        }
+        if (!user.hasUserId() || isBlank(user.getUserId().getValue())) {
+            errorMessage.append("user id should be provided for import user request. ");
+        } else {
+            try {
+                UUID.fromString(user.getUserId().getValue());
+            } catch (IllegalArgumentException invalidUuid) {
+                errorMessage.append("user id should be a valid UUID for import user request. ");
+            }
+        }
+        if (isBlank(user.getEmail())) {
+            errorMessage.append("email should be provided for import user request. ");
+        }
+        if (isBlank(request.getPasswordHash()) && isBlank(user.getPassword())) {
+            errorMessage.append("password or password hash should be provided for import user request. ");
+        }
+        if (!isBlank(request.getPasswordHash()) && !HashUtils.isWellFormedHash(request.getPasswordHash())) {
+            errorMessage.append("password hash should be '" + HashUtils.PBKDF2_PREFIX 
+                    + "<iterations>$<salt>$<key>' with a 256 bits key for import user request. ");
+        }
+        return errorMessage.length() == 0 ? null : errorMessage.toString().trim();
+    }
+
 }
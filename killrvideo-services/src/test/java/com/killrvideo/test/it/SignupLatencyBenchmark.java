@@ -0,0 +1,118 @@
+package com.killrvideo.test.it;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.dse.DseCluster;
+import com.datastax.driver.dse.DseSession;
+import com.killrvideo.utils.FutureUtils;
+
+/**
+ * Compare signup write paths against a running DSE, in the scratch keyspace 'killrvideo_bench' (created with the
+ * signup tables of the killrvideo schema and dropped at the end, killrvideo data is never touched):
+ * - before : 'INSERT ... IF NOT EXISTS' in user_credentials then 'INSERT ... IF NOT EXISTS' in users (2 Paxos rounds)
+ * - after  : 'INSERT ... IF NOT EXISTS' in user_credentials then plain 'INSERT' in users (1 Paxos round)
+ *
+ * Usage: SignupLatencyBenchmark [contactPoint] [signups] [concurrency] [replicationFactor]
+ *
+ * @author DataStax Developer Advocates team.
+ */
+public class SignupLatencyBenchmark {
+
+    private static final String KEYSPACE = "killrvideo_bench";
+    
+    private static final String CREATE_KEYSPACE = 
+            "CREATE KEYSPACE IF NOT EXISTS " + KEYSPACE + " WITH replication = {'class': 'SimpleStrategy', 'replication_factor': %d}";
+    private static final String CREATE_CREDENTIALS = 
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE + ".user_credentials (email text PRIMARY KEY, password text, userid uuid)";
+    private static final String CREATE_USERS = 
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE + ".users (userid uuid PRIMARY KEY, firstname text, lastname text, email text, created_date timestamp)";
+    private static final String DROP_KEYSPACE = 
+            "DROP KEYSPACE IF EXISTS " + KEYSPACE;
+    
+    private static final String INSERT_CREDENTIALS =
+            "INSERT INTO " + KEYSPACE + ".user_credentials (email, password, userid) VALUES (?,?,?) IF NOT EXISTS";
+    private static final String INSERT_USER_LWT =
+            "INSERT INTO " + KEYSPACE + ".users (userid, firstname, lastname, email, created_date) VALUES (?,?,?,?,?) IF NOT EXISTS";
+    private static final String INSERT_USER =
+            "INSERT INTO " + KEYSPACE + ".users (userid, firstname, lastname, email, created_date) VALUES (?,?,?,?,?)";
+
+    public static void main(String[] args) throws Exception {
+        String contactPoint = args.length > 0 ? args[0] : "localhost";
+        int    signups      = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int    concurrency  = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int    replication  = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        try (DseCluster cluster = DseCluster.builder().addContactPoint(contactPoint).build()) {
+            DseSession session = cluster.connect();
+            session.execute(String.format(CREATE_KEYSPACE, replication));
+            try {
+                session.execute(CREATE_CREDENTIALS);
+                session.execute(CREATE_USERS);
+                PreparedStatement insertCredentials = prepare(session, INSERT_CREDENTIALS);
+                PreparedStatement insertUserLwt     = prepare(session, INSERT_USER_LWT);
+                PreparedStatement insertUser        = prepare(session, INSERT_USER);
+
+                // Warm up connections and prepared statements
+                run(session, insertCredentials, insertUserLwt, signups / 10, concurrency);
+                run(session, insertCredentials, insertUser, signups / 10, concurrency);
+
+                report("before (2 LWT)       ", run(session, insertCredentials, insertUserLwt, signups, concurrency));
+                report("after  (LWT + insert)", run(session, insertCredentials, insertUser, signups, concurrency));
+            } finally {
+                session.execute(DROP_KEYSPACE);
+            }
+        }
+    }
+
+    private static PreparedStatement prepare(DseSession session, String cql) {
+        PreparedStatement ps = session.prepare(cql);
+        ps.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+        return ps;
+    }
+
+    /**
+     * Execute signups with bounded concurrency and return latencies in micros.
+     */
+    private static long[] run(DseSession session, PreparedStatement credentials, PreparedStatement user, int signups, int concurrency) {
+        final long[]    latencies = new long[signups];
+        final Semaphore inFlight  = new Semaphore(concurrency);
+        List<CompletableFuture<ResultSet>> futures = new ArrayList<>(signups);
+        for (int i = 0; i < signups; i++) {
+            final int    idx    = i;
+            final UUID   userid = UUID.randomUUID();
+            final String email  = "bench-" + userid + "@killrvideo.com";
+            inFlight.acquireUninterruptibly();
+            final long start = System.nanoTime();
+            futures.add(FutureUtils.asCompletableFuture(session.executeAsync(credentials.bind(email, "bench", userid)))
+                .thenCompose(rs -> FutureUtils.asCompletableFuture(session.executeAsync(
+                        user.bind(userid, "bench", "bench", email, new Date()))))
+                .whenComplete((rs, error) -> {
+                    latencies[idx] = (System.nanoTime() - start) / 1000;
+                    inFlight.release();
+                }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return latencies;
+    }
+
+    private static void report(String label, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.println(String.format("%s : p50=%6d us  p95=%6d us  p99=%6d us  max=%6d us", label,
+                percentile(latencies, 0.50), percentile(latencies, 0.95),
+                percentile(latencies, 0.99), latencies[latencies.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+}